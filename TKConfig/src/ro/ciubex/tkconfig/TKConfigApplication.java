@@ -20,21 +20,49 @@ package ro.ciubex.tkconfig;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Calendar;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import ro.ciubex.tkconfig.models.Command;
+import ro.ciubex.tkconfig.models.CommandIndex;
+import ro.ciubex.tkconfig.models.CommandPackReader;
 import ro.ciubex.tkconfig.models.Constants;
 import ro.ciubex.tkconfig.models.ContactChooseHandler;
 import ro.ciubex.tkconfig.models.ContactModel;
 import ro.ciubex.tkconfig.models.GpsContact;
 import ro.ciubex.tkconfig.models.History;
+import ro.ciubex.tkconfig.models.HistoryRetention;
+import ro.ciubex.tkconfig.models.RestoredState;
+import ro.ciubex.tkconfig.models.SortedCommandList;
+import ro.ciubex.tkconfig.models.StateSnapshot;
+import ro.ciubex.tkconfig.models.Tracing;
+import ro.ciubex.tkconfig.models.Utilities;
+import ro.ciubex.tkconfig.receivers.ScheduledBackupReceiver;
+import ro.ciubex.tkconfig.store.CommandStore;
+import ro.ciubex.tkconfig.store.GpsContactStore;
+import ro.ciubex.tkconfig.store.HistoryStore;
+import ro.ciubex.tkconfig.store.LegacyMigration;
+import ro.ciubex.tkconfig.store.ParameterStore;
+import ro.ciubex.tkconfig.store.RestoreStaging;
+import ro.ciubex.tkconfig.store.PersistenceQueue;
+import ro.ciubex.tkconfig.store.SnapshotStore;
+import ro.ciubex.tkconfig.tasks.HistoryEvictionAsyncTask;
+import ro.ciubex.tkconfig.tasks.LegacyMigrationAsyncTask;
 
 import android.annotation.TargetApi;
+import android.app.AlarmManager;
 import android.app.Application;
 import android.app.PendingIntent;
 import android.app.ProgressDialog;
@@ -44,7 +72,9 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.content.pm.PackageManager;
+import android.database.SQLException;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Environment;
 import android.preference.PreferenceManager;
 import android.telephony.SmsManager;
@@ -57,15 +87,48 @@ import android.widget.Toast;
  *
  * @author Claudiu Ciobotariu
  */
-public class TKConfigApplication extends Application {
+public class TKConfigApplication extends Application implements
+        HistoryEvictionAsyncTask.Responder, LegacyMigrationAsyncTask.Responder {
     private final static String TAG = TKConfigApplication.class.getName();
+    private static final String COMMAND_PACKS_FOLDER = "commands/";
+    private static final String COMMAND_PACK_EXTENSION = ".pack";
     private static Context mContext;
     private ProgressDialog progressDialog;
     private List<Command> commands;
-    private List<History> histories;
+    private CommandIndex commandIndex;
+    private PersistenceQueue persistenceQueue;
+    private ParameterStore parameterStore;
+    private CommandStore commandStore;
+    private HistoryStore historyStore;
+    private GpsContactStore contactStore;
+    private SnapshotStore snapshotStore;
+    private volatile List<Command> coldCommands;
+    private volatile List<GpsContact> coldContacts;
+    private final AtomicBoolean snapshotDirty = new AtomicBoolean();
+    private final Runnable snapshotWrite = new Runnable() {
+        @Override
+        public void run() {
+            writeSnapshot();
+        }
+    };
+    private LegacyMigration legacyMigration;
+    private LegacyMigration.Dataset<Command> legacyCommands;
+    private LegacyMigration.Dataset<GpsContact> legacyContacts;
+    private LegacyMigration.Dataset<History> legacyHistories;
+    private LegacyMigrationAsyncTask legacyMigrationTask;
+    private HistoryEvictionAsyncTask historyEvictionTask;
+    private boolean historyEvictionPending;
+    private int historiesAddedSinceEviction;
+    private boolean historiesEvictedOnStart;
     private List<GpsContact> contacts;
     private Locale defaultLocale;
-    private boolean mustReloadCommands;
+    private boolean commandsLoaded;
+    private boolean contactsLoaded;
+    private int commandsGeneration;
+    private int contactsGeneration;
+    private int historiesGeneration;
+    private int stateGeneration;
+    private volatile RestoredState restoredState;
     private SmsManager smsManager;
     private ContactChooseHandler contactChooseHandler;
     private List<ContactModel> phoneContacts;
@@ -87,6 +150,17 @@ public class TKConfigApplication extends Application {
     public static final String PERMISSION_FOR_WRITE_EXTERNAL_STORAGE = "android.permission.WRITE_EXTERNAL_STORAGE";
 
     public static final String KEY_APP_THEME = "appTheme";
+    public static final String KEY_PARAMETERS_SCOPE = "parametersScope";
+    public static final String KEY_HISTORY_MAX_ENTRIES = "historyMaxEntries";
+    public static final String KEY_HISTORY_MAX_AGE = "historyMaxAge";
+    public static final String KEY_HISTORY_MAX_PER_TRACKER = "historyMaxPerTracker";
+    public static final String KEY_TRACING_ENABLED = "tracingEnabled";
+    public static final String KEY_SCHEDULED_BACKUP = "scheduledBackup";
+    private static final String KEY_HISTORY_EVICTED_BY_AGE = "historyEvictedByAge";
+    private static final String KEY_HISTORY_EVICTED_BY_TRACKER = "historyEvictedByTracker";
+    private static final String KEY_HISTORY_EVICTED_BY_ENTRIES = "historyEvictedByEntries";
+    private static final String KEY_HISTORY_COMPACTIONS = "historyCompactions";
+    private static final long PERSISTENCE_FLUSH_TIMEOUT = 2000;
 
     public static final List<String> FUNCTIONAL_PERMISSIONS = Arrays.asList(
             PERMISSION_FOR_READ_CONTACTS,
@@ -104,27 +178,48 @@ public class TKConfigApplication extends Application {
      */
     @Override
     public void onCreate() {
+        long span = System.nanoTime();
         super.onCreate();
         TKConfigApplication.mContext = getApplicationContext();
         mSdkInt = android.os.Build.VERSION.SDK_INT;
         mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        Log.i(TAG, "TKConfigApplication started!");
-        commands = new ArrayList<Command>() {
-            private static final long serialVersionUID = 8883327862834322486L;
-
-            public boolean add(Command mt) {
-                int index = Collections.binarySearch(this, mt);
-                if (index < 0)
-                    index = ~index;
-                super.add(index, mt);
-                return true;
+        Tracing.setEnabled(mSharedPreferences.getBoolean(KEY_TRACING_ENABLED, false));
+        persistenceQueue = new PersistenceQueue(mSharedPreferences);
+        parameterStore = new ParameterStore(mSharedPreferences, persistenceQueue);
+        commandStore = new CommandStore(this);
+        historyStore = new HistoryStore(this);
+        contactStore = new GpsContactStore(this);
+        snapshotStore = new SnapshotStore(this);
+        legacyMigration = new LegacyMigration(mSharedPreferences);
+        createLegacyDatasets();
+        if (legacyMigration.isPending(legacyHistories)) {
+            persistenceQueue.enqueue(null, new Runnable() {
+                @Override
+                public void run() {
+                    legacyMigration.reserve(legacyHistories);
+                }
+            });
+        }
+        if (!legacyMigration.isPending(legacyCommands)
+                && !legacyMigration.isPending(legacyContacts)) {
+            long snapshotSpan = Tracing.begin();
+            StateSnapshot snapshot = snapshotStore.load();
+            if (snapshot != null) {
+                coldCommands = snapshot.getCommands();
+                coldContacts = snapshot.getContacts();
             }
-        };
-        histories = new ArrayList<>();
+            Tracing.end("snapshotLoad", snapshotSpan);
+        }
+        Log.i(TAG, "TKConfigApplication started!");
+        commands = new SortedCommandList();
+        commandIndex = new CommandIndex();
         contacts = new ArrayList<>();
         defaultLocale = Locale.getDefault();
         smsManager = SmsManager.getDefault();
-        contactsLoad();
+        updateBackupSchedule();
+        if (Tracing.isEnabled()) {
+            Tracing.end("Application.onCreate", span);
+        }
     }
 
     public static Context getAppContext() {
@@ -140,6 +235,38 @@ public class TKConfigApplication extends Application {
         return defaultLocale;
     }
 
+    /**
+     * Format the date time information into a human readable format.
+     *
+     * @param dateTime The date time information in milliseconds.
+     * @return The formated date time.
+     */
+    public String formatDateTime(long dateTime) {
+        Calendar today = Calendar.getInstance();
+        Calendar yesterday = Calendar.getInstance();
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(dateTime);
+        yesterday.add(Calendar.DATE, -1);
+        DateFormat dateFormatter = new SimpleDateFormat(
+                getString(R.string.date_format), defaultLocale);
+        DateFormat timeFormatter = new SimpleDateFormat(
+                getString(R.string.time_format), defaultLocale);
+        String date = "";
+
+        if (calendar.get(Calendar.YEAR) == today.get(Calendar.YEAR)
+                && calendar.get(Calendar.DAY_OF_YEAR) == today
+                .get(Calendar.DAY_OF_YEAR)) {
+            date = getString(R.string.today);
+        } else if (calendar.get(Calendar.YEAR) == yesterday.get(Calendar.YEAR)
+                && calendar.get(Calendar.DAY_OF_YEAR) == yesterday
+                .get(Calendar.DAY_OF_YEAR)) {
+            date = getString(R.string.yesterday);
+        } else {
+            date = dateFormatter.format(calendar.getTime());
+        }
+        return date + " " + timeFormatter.format(calendar.getTime());
+    }
+
     /**
      * Get the command list.
      *
@@ -149,164 +276,222 @@ public class TKConfigApplication extends Application {
         return commands;
     }
 
+    /**
+     * Get the search index over the command list.
+     *
+     * @return The command search index.
+     */
+    public CommandIndex getCommandIndex() {
+        return commandIndex;
+    }
+
+    /**
+     * Reset the command list to the commands from the packs of the selected
+     * trackers models.
+     */
     public void populateDefaultCommands() {
         if (commands.size() > 0) {
             commands.clear();
         }
-        commands.add(new Command(
-                "Initialization",
-                "begin?password?",
-                "Send \"begin+password\" in SMS to the unit, it will reply \"begin ok\" and initialize all the settings."));
-        commands.add(new Command("Change the password",
-                "password?password? ?new-password?",
-                "Send SMS password+old password+space+new password to change the password."));
-        commands.add(new Command(
-                "Authorization",
-                "admin?password? ?admin-phone?",
-                "Send SMS admin+password+space+cell phone number to set up a authorized number."));
-        commands.add(new Command(
-                "Auto Track",
-                "t030s***n?password?",
-                "Send SMS t030s***n+password to the unit, it will reply SMS heaps of times. Remark: the interval must not be less than 20s."));
-        commands.add(new Command("Cancel Auto Track", "notn?password?",
-                "Send notn+password to delete the auto track."));
-        commands.add(new Command(
-                "Swtich to Monitor",
-                "monitor?password?",
-                "Send SMS monitor+password to the unit, and it will reply \"monitor ok !\" and switch to \"monitor\" mode."));
-        commands.add(new Command(
-                "Swtich to Track",
-                "tracker?password?",
-                "Send SMS tracker+password to the unit, and it will reply \"tracker ok !\" and switch to \"track\" mode."));
-        commands.add(new Command(
-                "Geo-fence",
-                "stockade?password? ?longitudeEW?,?latitudeNS?; ?longitudeEW?,?latitudeNS?",
-                "Set up a geo-fence for the unit to restrict its movements within a district. The unit will send the message to the authorized numbers when it breaches the district."));
-        commands.add(new Command("Cancel Geo-fence", "nostockade?password?",
-                "Send SMS nostockade+password to deactivate the Geo-fence function."));
-        commands.add(new Command(
-                "Movement alert",
-                "move?password?",
-                "When the unit stays immobile in a place for 3-10 minutes, the user can send SMS move+password to the unit, then the unit will reply \"move ok\"."));
-        commands.add(new Command("Cancel Movement alert", "nomove?password?",
-                "Send SMS nomove+password to deactivate the movement alert."));
-        commands.add(new Command(
-                "Overspeed alert",
-                "speed?password? ?speed?",
-                "Send SMS speed+password+space+080 to the unit (suppose the speed is 80km/h), and it will reply \"speed ok\"."));
-        commands.add(new Command("Cancel Overspeed alert", "nospeed?password?",
-                "Send SMS nospeed+password to deactivate the overspeed alert."));
-        commands.add(new Command("IMEI checking", "imei?password?",
-                "Send SMS imei+password to the unit to check the IMEI number."));
-        commands.add(new Command("SMS center",
-                "adminsms?password? ?phone-number?",
-                "Send SMS adminsms+password+space+cell phone number to set the SMS center."));
-        commands.add(new Command("Cancel SMS center", "noadminsms?password?",
-                "Send SMS noadminsms+password to cancel the SMS center."));
-        commands.add(new Command(
-                "GPRS: Set server address",
-                "adminip?password? ?server-ip? ?server-port?",
-                "Send SMS adminip+password+space+IP address+space+port. If setup successful, the tracker will reply SMS \"adminip ok\"."));
-        commands.add(new Command("Cancel GPRS", "noadminip?password?",
-                "Send SMS noadminip+password"));
-        commands.add(new Command(
-                "Set APN",
-                "apn?password? ?apn-name?",
-                "Send SMS apn+password+space+specify apn. If setup successful, the tracker will reply SMS \"APN ok\"."));
-        // TK102 b
-        commands.add(new Command(
-                "Low battery alert ON",
-                "lowbattery?password? on",
-                "TK102-2: Tracker will send SMS \"low battery+latitude/longitude\" to authorized numbers 2 times in total in 15 minutes interval when voltage of battery is going to be about 3.55V"));
-        commands.add(new Command(
-                "Low battery alert OFF",
-                "lowbattery?password? off",
-                "TK102-2: Tracker will stop send SMS \"low battery\" allerts."));
-        commands.add(new Command(
-                "State checking",
-                "check?password?",
-                "TK102-2: Check tracker status for GSM, GPS, GPRS and battery."));
-        commands.add(new Command(
-                "Version Checking",
-                "version?password?",
-                "TK102-2: Check tracker version."));
-        commands.add(new Command(
-                "Motion sensor ON",
-                "shake?password? ?sensitive?",
-                "TK102-2: This command will enable shake sensor to send alerts when the tracker is shaked, the ?sensitive? parameter should have a value between 1, for the least sensitive degree and 10 for the most sensitive degree."));
-        commands.add(new Command(
-                "SD storing data ON",
-                "sdlog?password? 1",
-                "TK102-2: Activate the function of storing data in SD card."));
-        commands.add(new Command(
-                "SD storing data OFF",
-                "sdlog?password? 0",
-                "TK102-2: Deactivate the function of storing data in SD card."));
-        commands.add(new Command(
-                "SD send data to the GPRS server ON",
-                "readsd?password? 1",
-                "TK102-2: Activate the function to send data from the SD card to the GPRS server."));
-        commands.add(new Command(
-                "SD send data to the GPRS server OFF",
-                "readsd?password? 0",
-                "TK102-2: Deactivate the function to send data from the SD card to the GPRS server."));
-        commands.add(new Command(
-                "SMS position link",
-                "smslink?password?",
-                "TK102-2: Turn tracker messages with the tracker positions as links."));
-        commands.add(new Command(
-                "SMS position text",
-                "smstext?password?",
-                "TK102-2: Turn tracker back to text messages, default format messages."));
-        commands.add(new Command(
-                "SMS link once",
-                "smslinkone?password?",
-                "TK102-2: Tracker will send one messages with the position as a link."));
-        commands.add(new Command(
-                "Set APN user",
-                "apnuser?password? ?username?",
-                "TK102-2: Set the APN user name."));
-        commands.add(new Command(
-                "Set APN password",
-                "apnuser?password? ?apnpassword?",
-                "TK102-2: Set the APN password."));
-        commands.add(new Command(
-                "Set Time Zone",
-                "time zone?password? ?timezone?",
-                "TK102-2: Set the tracker reports time zone."));
-        commands.add(new Command(
-                "Tlimit function ON",
-                "tlimit?password? ?distance?",
-                "TK102-2: Activate the limited distance for autor reporting mode (t030s***n...). Distance can be a numeric value between 50 and 5999 meters."));
-        commands.add(new Command(
-                "Tlimit function OFF",
-                "tlimit?password? 0",
-                "TK102-2: Deactivate Tlimit function."));
-        commands.add(new Command(
-                "Set GPRS MODE-UDP",
-                "gprsmode?password? 1",
-                "TK102-2: Set GPRS MODE to UDP protocol."));
-        commands.add(new Command(
-                "Set GPRS MODE-TCP",
-                "gprsmode?password? 0",
-                "TK102-2: Set GPRS MODE to TCP protocol. (default protocol)"));
+        Set<String> loadedPacks = new HashSet<>();
+        mergeCommands(loadCommandPacks(loadedPacks));
+        final List<CommandStore.Row> rows = CommandStore.Row.of(commands);
+        persistenceQueue.enqueue(null, new Runnable() {
+            @Override
+            public void run() {
+                snapshotStore.invalidate();
+                try {
+                    commandStore.replaceAll(rows);
+                } catch (SQLException e) {
+                    Log.e(TAG, "populateDefaultCommands: " + e.getMessage(), e);
+                }
+            }
+        });
+        markSnapshotDirty();
+        saveLoadedCommandPacks(loadedPacks);
+        commandIndex.rebuild(commands);
+        commandsGeneration++;
+    }
+
+    /**
+     * Load the command packs of the selected trackers models which were not
+     * loaded yet, and add the commands which are not already defined.
+     *
+     * @return True if new commands were added.
+     */
+    public boolean loadTrackerCommandPacks() {
+        Set<String> loadedPacks = getLoadedCommandPacks();
+        int count = loadedPacks.size();
+        final List<Command> added = mergeCommands(loadCommandPacks(loadedPacks));
+        if (loadedPacks.size() != count) {
+            saveLoadedCommandPacks(loadedPacks);
+        }
+        if (added.isEmpty()) {
+            return false;
+        }
+        for (Command command : added) {
+            commandIndex.add(command);
+        }
+        commandsGeneration++;
+        final List<CommandStore.Row> rows = CommandStore.Row.of(added);
+        persistenceQueue.enqueue(null, new Runnable() {
+            @Override
+            public void run() {
+                snapshotStore.invalidate();
+                try {
+                    commandStore.insertAll(rows);
+                } catch (SQLException e) {
+                    Log.e(TAG, "loadTrackerCommandPacks: " + e.getMessage(), e);
+                }
+            }
+        });
+        markSnapshotDirty();
+        return true;
+    }
+
+    /**
+     * Obtain the command packs names of the selected trackers, or the default
+     * tracker model pack if there are no trackers selected.
+     *
+     * @return The command packs names.
+     */
+    private Set<String> getTrackerCommandPacks() {
+        Set<String> packs = new HashSet<>();
+        for (GpsContact contact : contacts) {
+            if (contact.isSelected() && !Utilities.isEmpty(contact.getModel())) {
+                packs.add(contact.getModel());
+            }
+        }
+        if (packs.isEmpty()) {
+            packs.add(Constants.DEFAULT_TRACKER_MODEL);
+        }
+        return packs;
+    }
+
+    /**
+     * Read the commands from the trackers command packs, without the packs
+     * already loaded.
+     *
+     * @param loadedPacks The names of the loaded packs, updated with the packs
+     *                    read now.
+     * @return The read commands.
+     */
+    private List<Command> loadCommandPacks(Set<String> loadedPacks) {
+        List<Command> found = new ArrayList<>();
+        for (String pack : getTrackerCommandPacks()) {
+            loadCommandPack(pack, loadedPacks, found);
+        }
+        return found;
+    }
+
+    /**
+     * Read the commands from a command pack asset file and from the packs
+     * extended by it.
+     *
+     * @param pack        The pack name.
+     * @param loadedPacks The names of the loaded packs.
+     * @param found       The list where are added the read commands.
+     */
+    private void loadCommandPack(String pack, Set<String> loadedPacks, List<Command> found) {
+        if (!loadedPacks.add(pack)) {
+            return;
+        }
+        CommandPackReader reader = null;
+        List<String> extendedPacks = null;
+        try {
+            reader = new CommandPackReader(new InputStreamReader(getAssets().open(
+                    COMMAND_PACKS_FOLDER + pack + COMMAND_PACK_EXTENSION), "UTF-8"));
+            Command command;
+            while ((command = reader.next()) != null) {
+                found.add(command);
+            }
+            extendedPacks = reader.getExtendedPacks();
+        } catch (IOException e) {
+            Log.e(TAG, "Command pack " + pack + " could not be loaded: " + e.getMessage(), e);
+            loadedPacks.remove(pack);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Command pack " + pack + " close error: " + e.getMessage(), e);
+                }
+            }
+        }
+        if (extendedPacks != null) {
+            for (String extendedPack : extendedPacks) {
+                loadCommandPack(extendedPack, loadedPacks, found);
+            }
+        }
+    }
+
+    /**
+     * Add to the command list only the commands which are not already
+     * defined, using the command equals key.
+     *
+     * @param found The commands to be added.
+     * @return The added commands.
+     */
+    private List<Command> mergeCommands(List<Command> found) {
+        List<Command> added = new ArrayList<>();
+        if (!found.isEmpty()) {
+            Set<Command> known = new HashSet<>(commands);
+            for (Command command : found) {
+                if (known.add(command)) {
+                    added.add(command);
+                }
+            }
+            commands.addAll(added);
+        }
+        return added;
+    }
+
+    /**
+     * Obtain the names of the command packs already merged on the command list.
+     *
+     * @return The loaded command packs names.
+     */
+    private Set<String> getLoadedCommandPacks() {
+        Set<String> packs = new HashSet<>();
+        String value = mSharedPreferences.getString("command_packs", "");
+        for (String pack : value.split(",")) {
+            if (pack.length() > 0) {
+                packs.add(pack);
+            }
+        }
+        return packs;
+    }
+
+    /**
+     * Save the names of the command packs merged on the command list.
+     *
+     * @param packs The loaded command packs names.
+     */
+    private void saveLoadedCommandPacks(Set<String> packs) {
+        StringBuilder sb = new StringBuilder();
+        for (String pack : packs) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(pack);
+        }
+        saveStringValue("command_packs", sb.toString());
     }
 
     /**
      * This method should be used to prepare the initial parameters of specified
-     * command. The parameters are taken from the application preferences.
+     * command. The parameters are taken from the parameters store.
      *
      * @param command The command to be prepared.
      */
     public void prepareCommandParameters(Command command) {
         if (command.hasParameters()) {
-            String parameterValue;
+            GpsContact tracker = getParametersTracker();
             for (String parameterName : command.getParameters()) {
                 // skip if is the password
                 if (!Constants.PASSWORD.equals(parameterName)) {
-                    parameterValue = mSharedPreferences.getString(parameterName,
-                            parameterName);
-                    command.setParameterValue(parameterName, parameterValue);
+                    command.setParameterValue(parameterName,
+                            parameterStore.get(command, tracker, parameterName));
                 }
             }
         }
@@ -322,109 +507,618 @@ public class TKConfigApplication extends Application {
     }
 
     /**
-     * Save the command parameters value to the application preferences.
+     * Save the command parameters value to the parameters store, using the
+     * scope chosen on the settings.
      *
-     * @param command The command which parameters should to be saved to the
-     *                application preferences.
+     * @param command The command which parameters should to be saved.
      */
     public void saveCommandParameters(Command command) {
         if (command.hasParameters()) {
             String parameterValue;
-            SharedPreferences.Editor editor = mSharedPreferences.edit();
+            GpsContact tracker = getParametersTracker();
+            ParameterStore.Scope scope = ParameterStore.Scope.fromValue(
+                    mSharedPreferences.getString(KEY_PARAMETERS_SCOPE, "global"));
             for (String parameterName : command.getParameters()) {
                 // skip if is the password
                 if (!Constants.PASSWORD.equals(parameterName)) {
                     parameterValue = command.getParameterValue(parameterName);
                     if (parameterValue != null) {
-                        editor.putString(parameterName, parameterValue);
+                        parameterStore.put(scope, command, tracker, parameterName,
+                                parameterValue);
                     }
                 }
             }
-            editor.commit();
         }
     }
 
+    /**
+     * Obtain the tracker used for the per tracker parameter values, which is
+     * the selected tracker if only one is selected.
+     *
+     * @return The selected tracker or null.
+     */
+    private GpsContact getParametersTracker() {
+        GpsContact tracker = null;
+        for (GpsContact contact : contacts) {
+            if (contact.isSelected()) {
+                if (tracker != null) {
+                    return null;
+                }
+                tracker = contact;
+            }
+        }
+        return tracker;
+    }
+
+    /**
+     * Get the command parameters store.
+     *
+     * @return The parameters store.
+     */
+    public ParameterStore getParameterStore() {
+        return parameterStore;
+    }
+
     /**
      * Method used when the application should be closed.
      */
     public void onClose() {
         phoneContacts = null;
+        flushPersistence();
         hideProgressDialog();
     }
 
     /**
-     * Method used to save the commands to the application preferences.
+     * Obtain the single writer used to persist the application data.
+     *
+     * @return The persistence queue.
      */
-    public void commandsSave() {
-        SharedPreferences.Editor editor = mSharedPreferences.edit();
-        editor.putInt("commands", commands.size());
-        int i = 0;
-        for (Command command : commands) {
-            editor.putString("command_" + i + "_name", command.getName());
-            editor.putString("command_" + i + "_cmd", command.getCommand());
-            editor.putString("command_" + i + "_desc", command.getDescription());
-            i++;
+    public PersistenceQueue getPersistenceQueue() {
+        return persistenceQueue;
+    }
+
+    /**
+     * Wait for the pending writes, invoked when an activity is paused. The
+     * state snapshot is written here, if the commands or the contacts were
+     * changed since the last one.
+     *
+     * @return True if the pending writes were done before the timeout.
+     */
+    public boolean flushPersistence() {
+        if (snapshotDirty.getAndSet(false)) {
+            persistenceQueue.enqueue("snapshot", snapshotWrite);
         }
-        editor.commit();
+        return persistenceQueue.flush(PERSISTENCE_FLUSH_TIMEOUT);
     }
 
     /**
-     * Method used to load the commands from the application preferences.
+     * Define the datasets saved by the older versions on the application
+     * preferences, with one key per field, and the stores where they are
+     * moved. The legacy commands and contacts replace the stored ones, they
+     * are moved before they are loaded. The legacy histories are moved while
+     * new events are sent, so they are staged and then published with row ids
+     * below the new events.
      */
-    public void commandsLoad() {
-        int count = mSharedPreferences.getInt("commands", 0);
-        int i = 0;
+    private void createLegacyDatasets() {
+        legacyCommands = new LegacyMigration.Dataset<Command>("commands", commandStore) {
+            @Override
+            protected int legacyCount(SharedPreferences prefs) {
+                return prefs.getInt("commands", 0);
+            }
+
+            @Override
+            protected Command read(SharedPreferences prefs, int index) {
+                return readPreferencesCommand(index);
+            }
+
+            @Override
+            protected boolean isLegacyKey(String key) {
+                return isLegacyCommandKey(key);
+            }
+
+            @Override
+            protected void clear() {
+                commandStore.deleteAll();
+            }
+
+            @Override
+            protected void insert(Command record) {
+                commandStore.insert(new CommandStore.Row(record));
+            }
+
+            @Override
+            protected int stagedCount() {
+                return commandStore.count();
+            }
+        };
+        legacyContacts = new LegacyMigration.Dataset<GpsContact>("contacts", contactStore) {
+            @Override
+            protected int legacyCount(SharedPreferences prefs) {
+                int count = prefs.getInt("contacts", 0);
+                if (count < 1 && getGPSPhoneNumber().length() > 0
+                        && contactStore.count() < 1) {
+                    count = 1;
+                }
+                return count;
+            }
+
+            @Override
+            protected GpsContact read(SharedPreferences prefs, int index) {
+                if (prefs.getInt("contacts", 0) < 1) {
+                    String phone = getGPSPhoneNumber();
+                    return new GpsContact(phone, phone, prefs.getString(
+                            "password", "123456"), true);
+                }
+                return readPreferencesContact(index);
+            }
+
+            @Override
+            protected boolean isLegacyKey(String key) {
+                return "contacts".equals(key) || key.startsWith("contact_")
+                        || "gpsPhoneNumber".equals(key) || "password".equals(key);
+            }
+
+            @Override
+            protected void clear() {
+                contactStore.deleteAll();
+            }
+
+            @Override
+            protected void insert(GpsContact record) {
+                contactStore.insert(new GpsContactStore.Row(record));
+            }
+
+            @Override
+            protected int stagedCount() {
+                return contactStore.count();
+            }
+        };
+        legacyHistories = new LegacyMigration.Dataset<History>("histories", historyStore) {
+            @Override
+            protected int legacyCount(SharedPreferences prefs) {
+                return prefs.getInt("histories", 0);
+            }
+
+            @Override
+            protected History read(SharedPreferences prefs, int index) {
+                return readPreferencesHistory(index);
+            }
+
+            @Override
+            protected boolean isLegacyKey(String key) {
+                return "histories".equals(key) || key.startsWith(KEY_PREFIX_HISTORY);
+            }
+
+            @Override
+            protected void clear() {
+                historyStore.clearStaged();
+            }
+
+            @Override
+            protected void insert(History record) {
+                historyStore.stage(record);
+            }
+
+            @Override
+            protected int stagedCount() {
+                return historyStore.countStaged();
+            }
+
+            @Override
+            protected void publish() {
+                historyStore.publishStaged();
+            }
+
+            @Override
+            protected void reserve(int count) {
+                historyStore.reserveIds(count);
+            }
+        };
+    }
+
+    /**
+     * Mark the state snapshot to be written again by the next
+     * {@link #flushPersistence()}, after the pending changes of the commands
+     * and contacts stores. The stores writes invalidate the old snapshot.
+     */
+    private void markSnapshotDirty() {
+        snapshotDirty.set(true);
+    }
+
+    /**
+     * Write the state snapshot from the commands and contacts stores. This is
+     * invoked on the persistence thread.
+     */
+    private void writeSnapshot() {
+        try {
+            snapshotStore.save(new StateSnapshot(commandStore.loadAll(),
+                    contactStore.loadAll()));
+        } catch (SQLException e) {
+            Log.e(TAG, "writeSnapshot: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Save a new or edited command. Only the row of this command is written.
+     *
+     * @param command The command to be saved.
+     */
+    public void saveCommand(Command command) {
+        commandsGeneration++;
+        final CommandStore.Row row = new CommandStore.Row(command);
+        persistenceQueue.enqueue(null, new Runnable() {
+            @Override
+            public void run() {
+                snapshotStore.invalidate();
+                try {
+                    commandStore.save(row);
+                } catch (SQLException e) {
+                    Log.e(TAG, "saveCommand: " + e.getMessage(), e);
+                }
+            }
+        });
+        markSnapshotDirty();
+    }
+
+    /**
+     * Delete a command from the command list, the search index and the
+     * commands store.
+     *
+     * @param command The command to be deleted.
+     */
+    public void deleteCommand(final Command command) {
+        commands.remove(command);
+        commandIndex.remove(command);
+        parameterStore.remove(command);
+        commandsGeneration++;
+        persistenceQueue.enqueue(null, new Runnable() {
+            @Override
+            public void run() {
+                snapshotStore.invalidate();
+                try {
+                    commandStore.delete(command);
+                } catch (SQLException e) {
+                    Log.e(TAG, "deleteCommand: " + e.getMessage(), e);
+                }
+            }
+        });
+        markSnapshotDirty();
+    }
+
+    /**
+     * Method used to read the commands from the commands store. The commands
+     * found on the application preferences, saved by older versions or
+     * restored from a backup, are moved first on the store. At the first load
+     * after the application start, the commands from the state snapshot are
+     * used instead. This method is invoked on a background thread, the
+     * commands list is changed by {@link #setLoadedCommands(List)} on the main
+     * thread.
+     *
+     * @return The stored commands.
+     */
+    public List<Command> readCommands() {
+        long span = Tracing.begin();
+        List<Command> snapshot = coldCommands;
+        coldCommands = null;
+        if (snapshot != null) {
+            Tracing.end("commandsLoad", span);
+            return snapshot;
+        }
+        List<Command> loaded;
+        try {
+            if (legacyMigration.isPending(legacyCommands)) {
+                snapshotStore.invalidate();
+                legacyMigration.migrate(legacyCommands);
+            }
+            loaded = commandStore.loadAll();
+            if (!snapshotStore.isPresent()) {
+                markSnapshotDirty();
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "readCommands: " + e.getMessage(), e);
+            loaded = readPreferencesCommands();
+        }
+        Tracing.end("commandsLoad", span);
+        return loaded;
+    }
+
+    /**
+     * Replace the commands list with the commands read from the store, or
+     * with the default commands if there are no stored commands.
+     *
+     * @param loaded The commands read by {@link #readCommands()}.
+     */
+    public void setLoadedCommands(List<Command> loaded) {
         if (commands.size() > 0) {
             commands.clear();
         }
-        while (i < count) {
-            commands.add(new Command(mSharedPreferences.getString("command_" + i
-                    + "_name", ""), mSharedPreferences.getString("command_" + i
-                    + "_cmd", ""), mSharedPreferences.getString("command_" + i
-                    + "_desc", "")));
-            i++;
-        }
-        if (i == 0) {
+        commands.addAll(loaded);
+        if (loaded.isEmpty()) {
             populateDefaultCommands();
+        } else {
+            commandIndex.rebuild(commands);
         }
+        parameterStore.migrateLegacy(commands);
+        commandsLoaded = true;
+        commandsGeneration++;
     }
 
     /**
-     * Remove the commands stored on the application preferences.
+     * Read the commands saved on the application preferences.
+     *
+     * @return The commands from the application preferences.
      */
-    public void commandsStoreCleanup() {
+    private List<Command> readPreferencesCommands() {
         int count = mSharedPreferences.getInt("commands", 0);
+        List<Command> loaded = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            loaded.add(readPreferencesCommand(i));
+        }
+        return loaded;
+    }
+
+    /**
+     * Read a command saved on the application preferences.
+     *
+     * @param i The command index.
+     * @return The command from the application preferences.
+     */
+    private Command readPreferencesCommand(int i) {
+        return new Command(mSharedPreferences.getString("command_" + i
+                + "_name", ""), mSharedPreferences.getString("command_" + i
+                + "_cmd", ""), mSharedPreferences.getString("command_" + i
+                + "_desc", ""), mSharedPreferences.getString("command_" + i
+                + "_params", null));
+    }
+
+    /**
+     * Check if a key is used by the commands stored on the application
+     * preferences.
+     *
+     * @param key The preferences key.
+     * @return True if is a legacy command key.
+     */
+    public static boolean isLegacyCommandKey(String key) {
+        return "commands".equals(key) || (key.startsWith("command_")
+                && key.length() > 8 && Character.isDigit(key.charAt(8)));
+    }
+
+    /**
+     * Remove the commands stored on the application preferences, including
+     * the keys left by the older versions after a command was deleted.
+     */
+    public void commandsStoreCleanup() {
         SharedPreferences.Editor editor = mSharedPreferences.edit();
-        int i = 0;
-        while (i < count) {
-            editor.remove("command_" + i + "_name");
-            editor.remove("command_" + i + "_cmd");
-            editor.remove("command_" + i + "_desc");
-            i++;
+        boolean found = false;
+        for (String key : mSharedPreferences.getAll().keySet()) {
+            if (isLegacyCommandKey(key)) {
+                editor.remove(key);
+                found = true;
+            }
         }
-        if (i > 0) {
-            editor.remove("commands");
+        if (found) {
             editor.commit();
         }
     }
 
     /**
-     * Check if should be reloaded the command list adapter.
+     * Check if the commands were loaded from the commands store.
+     *
+     * @return True if the commands list is loaded.
+     */
+    public boolean isCommandsLoaded() {
+        return commandsLoaded;
+    }
+
+    /**
+     * Obtain the commands generation, changed each time when the commands
+     * list is changed. A screen should rebind the commands only when the
+     * generation is not the one already shown.
      *
-     * @return True, if should be reloaded the command list adapter.
+     * @return The commands generation.
      */
-    public boolean isMustReloadCommands() {
-        return mustReloadCommands;
+    public int getCommandsGeneration() {
+        return commandsGeneration + stateGeneration;
     }
 
     /**
-     * Set the reload command list adapter flag.
+     * Obtain the GPS contacts generation, changed each time when the contacts
+     * list is changed.
      *
-     * @param mustReloadCommands Boolean flag to be set to the reload command list adapter
-     *                           flag.
+     * @return The GPS contacts generation.
      */
-    public void setMustReloadCommands(boolean mustReloadCommands) {
-        this.mustReloadCommands = mustReloadCommands;
+    public int getContactsGeneration() {
+        return contactsGeneration + stateGeneration;
+    }
+
+    /**
+     * Obtain the histories generation, changed each time when history events
+     * are added or deleted.
+     *
+     * @return The histories generation.
+     */
+    public int getHistoriesGeneration() {
+        return historiesGeneration + stateGeneration;
+    }
+
+    /**
+     * Write a decoded restore. This is invoked on the restore thread and
+     * waits while the restored data is written on the persistence thread,
+     * after the pending writes, so no queued write is interleaved with it.
+     * The in-memory state is not changed here, the restored state is swapped
+     * in by {@link #onDataRestored()} only if all of it was written.
+     *
+     * @param state The restored state, decoded without any write.
+     * @throws IOException  If the restored preferences could not be saved.
+     * @throws SQLException If the restored records could not be stored.
+     */
+    public void applyRestoredState(final RestoredState state)
+            throws IOException, SQLException {
+        restoredState = null;
+        try {
+            persistenceQueue.call(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    writeRestoredState(state);
+                    return null;
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The restore was interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+        restoredState = state;
+    }
+
+    /**
+     * Write the restored state, on the persistence thread. The restored
+     * datasets are staged first, without changing the stored records, then
+     * each store swaps in its staged records keeping the old ones. The
+     * preferences are committed last, without the legacy records of the
+     * restored datasets, and only then the old records are dropped. If any
+     * step fails the swapped stores are reverted, so the old state is kept.
+     */
+    private void writeRestoredState(RestoredState state) throws IOException {
+        List<RestoreStaging> staged = new ArrayList<>();
+        List<RestoreStaging> swapped = new ArrayList<>();
+        RestoreStaging commandsStaging = null;
+        RestoreStaging contactsStaging = null;
+        boolean restored = false;
+        try {
+            if (state.getCommands() != null) {
+                commandsStaging = commandStore.stageRestore(
+                        CommandStore.Row.of(state.getCommands()));
+                staged.add(commandsStaging);
+            }
+            if (state.getContacts() != null) {
+                contactsStaging = contactStore.stageRestore(
+                        GpsContactStore.Row.of(state.getContacts()));
+                staged.add(contactsStaging);
+            }
+            if (state.getHistories() != null) {
+                staged.add(historyStore.stageRestore(state.getHistories()));
+            }
+            snapshotStore.invalidate();
+            long firstCommandId = 0;
+            long firstContactId = 0;
+            for (RestoreStaging staging : staged) {
+                long first = staging.swap();
+                swapped.add(staging);
+                if (staging == commandsStaging) {
+                    firstCommandId = first;
+                } else if (staging == contactsStaging) {
+                    firstContactId = first;
+                }
+            }
+            SharedPreferences.Editor editor = mSharedPreferences.edit();
+            for (String key : mSharedPreferences.getAll().keySet()) {
+                if (state.isReplaced(key)) {
+                    editor.remove(key);
+                }
+            }
+            for (Map.Entry<String, Object> entry : state.getPreferences().entrySet()) {
+                putValue(editor, entry.getKey(), entry.getValue());
+            }
+            if (!editor.commit()) {
+                throw new IOException("The restored preferences were not saved");
+            }
+            restored = true;
+            if (commandsStaging != null) {
+                for (Command command : state.getCommands()) {
+                    command.setId(firstCommandId++);
+                }
+            }
+            if (contactsStaging != null) {
+                for (GpsContact contact : state.getContacts()) {
+                    contact.setId(firstContactId++);
+                }
+            }
+        } finally {
+            if (restored) {
+                for (RestoreStaging staging : swapped) {
+                    staging.commit();
+                }
+            } else {
+                for (int i = swapped.size() - 1; i >= 0; i--) {
+                    swapped.get(i).revert();
+                }
+                for (RestoreStaging staging : staged) {
+                    staging.discard();
+                }
+            }
+        }
+        if (state.getCommands() != null) {
+            legacyMigration.restart(legacyCommands);
+        }
+        if (state.getContacts() != null) {
+            legacyMigration.restart(legacyContacts);
+        }
+        if (state.getHistories() != null) {
+            legacyMigration.restart(legacyHistories);
+        }
+        writeSnapshot();
+    }
+
+    /**
+     * Put a restored value on the preferences editor, by its type.
+     */
+    private static void putValue(SharedPreferences.Editor editor, String key,
+                                 Object value) {
+        if (value instanceof String) {
+            editor.putString(key, (String) value);
+        } else if (value instanceof Boolean) {
+            editor.putBoolean(key, (Boolean) value);
+        } else if (value instanceof Integer) {
+            editor.putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+            editor.putLong(key, (Long) value);
+        } else if (value instanceof Float) {
+            editor.putFloat(key, (Float) value);
+        }
+    }
+
+    /**
+     * Swap in the state written by {@link #applyRestoredState(RestoredState)}
+     * after a successful restore. The restored commands, GPS contacts and the
+     * parameters are replaced on the main thread and the state generation is
+     * changed once, so every screen rebinds all the restored data when it is
+     * shown.
+     */
+    public void onDataRestored() {
+        RestoredState state = restoredState;
+        if (state == null) {
+            return;
+        }
+        restoredState = null;
+        coldCommands = null;
+        coldContacts = null;
+        parameterStore.reload();
+        if (state.getCommands() != null) {
+            commands.clear();
+            commands.addAll(state.getCommands());
+            if (commands.isEmpty()) {
+                populateDefaultCommands();
+            } else {
+                commandIndex.rebuild(commands);
+            }
+            commandsLoaded = true;
+        }
+        if (state.getContacts() != null) {
+            contacts.clear();
+            contacts.addAll(state.getContacts());
+            addDefaultContact();
+            contactsLoaded = true;
+        }
+        stateGeneration++;
     }
 
     /**
@@ -451,6 +1145,17 @@ public class TKConfigApplication extends Application {
                 getString(R.string.please_wait), message);
     }
 
+    /**
+     * Change the message of the displayed progress dialog.
+     *
+     * @param message The new message displayed inside of progress dialog.
+     */
+    public void updateProgressDialog(String message) {
+        if (progressDialog != null) {
+            progressDialog.setMessage(message);
+        }
+    }
+
     /**
      * Method used to hide the progress dialog.
      */
@@ -462,74 +1167,266 @@ public class TKConfigApplication extends Application {
     }
 
     /**
-     * Add an history event to the histories list.
+     * Append an history event to the history store.
      *
      * @param history The history event to be added.
      * @return Always will be returned true.
      */
-    public boolean addHistory(History history) {
-        return histories.add(history);
+    public boolean addHistory(final History history) {
+        persistenceQueue.enqueue(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    historyStore.append(history);
+                } catch (SQLException e) {
+                    Log.e(TAG, "addHistory: " + e.getMessage(), e);
+                }
+            }
+        });
+        historiesAdded(1);
+        return true;
     }
 
     /**
-     * Obtain the histories list.
+     * Append more history events to the history store, in a single
+     * transaction.
      *
-     * @return The histories list.
+     * @param list The history events to be added.
      */
-    public List<History> getHistories() {
-        return histories;
+    public void addHistories(final List<History> list) {
+        persistenceQueue.enqueue(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    historyStore.appendAll(list);
+                } catch (SQLException e) {
+                    Log.e(TAG, "addHistories: " + e.getMessage(), e);
+                }
+            }
+        });
+        historiesAdded(list.size());
     }
 
     /**
-     * Method used to save the histories to the application preferences.
+     * Start an history eviction when enough events were added since the last
+     * eviction.
+     *
+     * @param count The number of added events.
      */
-    public void historiesSave() {
-        int i = 0;
-        SharedPreferences.Editor editor = mSharedPreferences.edit();
-        removeOldHistories(editor);
-        editor.putInt("histories", histories.size());
-        for (History history : histories) {
-            editor.putLong(KEY_PREFIX_HISTORY + i + "_dateTime", history.getDateTime());
-            editor.putString(KEY_PREFIX_HISTORY + i + "_cmd", history.getSmsCommand());
-            editor.putString(KEY_PREFIX_HISTORY + i + "_number",
-                    history.getPhoneNumber());
-            i++;
+    private void historiesAdded(int count) {
+        historiesGeneration++;
+        historiesAddedSinceEviction += count;
+        HistoryRetention retention = getHistoryRetention();
+        if (!retention.isUnbounded()
+                && historiesAddedSinceEviction >= retention.getSlack()) {
+            evictHistories();
         }
-        editor.commit();
     }
 
     /**
-     * Remove all histories from the SharedPreferences.
+     * Obtain the history retention policy from the application preferences.
      *
-     * @param editor The SharedPreferences editor.
+     * @return The history retention policy.
      */
-    private void removeOldHistories(SharedPreferences.Editor editor) {
-        Set<String> keys = mSharedPreferences.getAll().keySet();
-        for (String key : keys) {
-            if (key.startsWith(KEY_PREFIX_HISTORY)) {
-                editor.remove(key);
+    public HistoryRetention getHistoryRetention() {
+        return new HistoryRetention(getIntPreference(KEY_HISTORY_MAX_ENTRIES),
+                getIntPreference(KEY_HISTORY_MAX_AGE),
+                getIntPreference(KEY_HISTORY_MAX_PER_TRACKER));
+    }
+
+    /**
+     * Read an integer value saved as string by a list preference.
+     *
+     * @param key The preference key.
+     * @return The preference value or 0 if is not an integer.
+     */
+    private int getIntPreference(String key) {
+        try {
+            return Integer.parseInt(mSharedPreferences.getString(key, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Start on a background thread the eviction of the history events not
+     * kept by the retention policy. If an eviction is running, another one is
+     * started after it ends.
+     */
+    public void evictHistories() {
+        if (historyEvictionTask != null) {
+            historyEvictionPending = true;
+            return;
+        }
+        HistoryRetention retention = getHistoryRetention();
+        historiesAddedSinceEviction = 0;
+        if (!retention.isUnbounded()) {
+            historyEvictionTask = new HistoryEvictionAsyncTask(this,
+                    historyStore, retention);
+            historyEvictionTask.execute();
+        }
+    }
+
+    /**
+     * Method invoked when the history eviction was done, to update the
+     * eviction counters.
+     *
+     * @param eviction The number of deleted events.
+     */
+    @Override
+    public void endHistoryEviction(HistoryStore.Eviction eviction) {
+        historyEvictionTask = null;
+        if (eviction.total() > 0) {
+            historiesGeneration++;
+        }
+        if (eviction.total() > 0 || eviction.compacted) {
+            Editor editor = mSharedPreferences.edit();
+            addToCounter(editor, KEY_HISTORY_EVICTED_BY_AGE, eviction.byAge);
+            addToCounter(editor, KEY_HISTORY_EVICTED_BY_TRACKER, eviction.byTracker);
+            addToCounter(editor, KEY_HISTORY_EVICTED_BY_ENTRIES, eviction.byEntries);
+            addToCounter(editor, KEY_HISTORY_COMPACTIONS, eviction.compacted ? 1 : 0);
+            editor.apply();
+            Log.i(TAG, "History evicted: " + eviction.total() + " compacted: "
+                    + eviction.compacted);
+        }
+        if (historyEvictionPending) {
+            historyEvictionPending = false;
+            evictHistories();
+        }
+    }
+
+    private void addToCounter(Editor editor, String key, int value) {
+        if (value > 0) {
+            editor.putLong(key, mSharedPreferences.getLong(key, 0L) + value);
+        }
+    }
+
+    /**
+     * Obtain the history eviction counters: events evicted by age, by tracker
+     * limit, by entries limit and the number of store compactions.
+     *
+     * @return The history eviction counters.
+     */
+    public long[] getHistoryEvictionCounters() {
+        return new long[]{
+                mSharedPreferences.getLong(KEY_HISTORY_EVICTED_BY_AGE, 0L),
+                mSharedPreferences.getLong(KEY_HISTORY_EVICTED_BY_TRACKER, 0L),
+                mSharedPreferences.getLong(KEY_HISTORY_EVICTED_BY_ENTRIES, 0L),
+                mSharedPreferences.getLong(KEY_HISTORY_COMPACTIONS, 0L)
+        };
+    }
+
+    /**
+     * Delete an history event.
+     *
+     * @param history The history event to be deleted.
+     */
+    public void deleteHistory(final History history) {
+        historiesGeneration++;
+        persistenceQueue.enqueue(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    historyStore.delete(history);
+                } catch (SQLException e) {
+                    Log.e(TAG, "deleteHistory: " + e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete all the history events.
+     */
+    public void deleteAllHistories() {
+        historiesGeneration++;
+        persistenceQueue.enqueue("histories", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    historyStore.deleteAll();
+                } catch (SQLException e) {
+                    Log.e(TAG, "deleteAllHistories: " + e.getMessage(), e);
+                }
             }
+        });
+    }
+
+    /**
+     * Count the history events.
+     *
+     * @return The number of history events.
+     */
+    public int getHistoryCount() {
+        try {
+            return historyStore.count();
+        } catch (SQLException e) {
+            Log.e(TAG, "getHistoryCount: " + e.getMessage(), e);
         }
+        return 0;
+    }
+
+    /**
+     * Obtain the history store, read by pages by the history list.
+     *
+     * @return The history store.
+     */
+    public HistoryStore getHistoryStore() {
+        return historyStore;
     }
 
     /**
-     * Method used to load the histories from the application preferences.
+     * Method used to prepare the history store. The histories found on the
+     * application preferences, saved by older versions or restored from a
+     * backup, are moved on the store in chunks, on a background thread. The
+     * histories are not loaded in memory, the history list reads only the
+     * visible pages. On the first call after the histories are moved, the
+     * events not kept by the retention policy are evicted on a background
+     * thread.
      */
     public void historiesLoad() {
-        int count = mSharedPreferences.getInt("histories", 0);
-        int i = 0;
-        if (histories.size() > 0) {
-            histories.clear();
-        }
-        while (i < count) {
-            histories.add(new History(mSharedPreferences.getLong(KEY_PREFIX_HISTORY + i
-                    + "_dateTime", 0L), mSharedPreferences.getString(KEY_PREFIX_HISTORY
-                    + i + "_number", ""), mSharedPreferences.getString(
-                    KEY_PREFIX_HISTORY + i + "_cmd", "")));
-            i++;
+        if (legacyMigrationTask != null) {
+            return;
+        }
+        if (legacyMigration.isPending(legacyHistories)) {
+            legacyMigrationTask = new LegacyMigrationAsyncTask(this,
+                    legacyMigration, legacyHistories);
+            legacyMigrationTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        } else if (!historiesEvictedOnStart) {
+            historiesEvictedOnStart = true;
+            evictHistories();
+        }
+    }
+
+    /**
+     * Method invoked when the legacy histories were moved on the history
+     * store.
+     *
+     * @param migrated True if the histories were moved and verified.
+     */
+    @Override
+    public void endLegacyMigration(boolean migrated) {
+        legacyMigrationTask = null;
+        historiesGeneration++;
+        if (!historiesEvictedOnStart) {
+            historiesEvictedOnStart = true;
+            evictHistories();
         }
     }
 
+    /**
+     * Read an history event saved on the application preferences.
+     *
+     * @param i The history event index.
+     * @return The history event from the application preferences.
+     */
+    private History readPreferencesHistory(int i) {
+        return new History(mSharedPreferences.getLong(KEY_PREFIX_HISTORY + i
+                + "_dateTime", 0L), mSharedPreferences.getString(KEY_PREFIX_HISTORY
+                + i + "_number", ""), mSharedPreferences.getString(
+                KEY_PREFIX_HISTORY + i + "_cmd", ""));
+    }
+
     /**
      * Method used to send a SMS message to provided phone number.
      *
@@ -541,12 +1438,26 @@ public class TKConfigApplication extends Application {
     public void sendSMS(Context context, Class<?> clazz, String phoneNumber,
                         String message) {
         addHistory(new History(phoneNumber, message));
-        historiesSave();
+        sendMessage(context, clazz, phoneNumber, message);
+    }
+
+    /**
+     * Send a SMS message, without adding it to the history.
+     *
+     * @param context     The context used to send the SMS.
+     * @param clazz       The sender class.
+     * @param phoneNumber The phone number.
+     * @param message     The message to be send.
+     */
+    private void sendMessage(Context context, Class<?> clazz, String phoneNumber,
+                             String message) {
+        long span = Tracing.begin();
         Log.i(TAG, "Send to: " + phoneNumber + " the SMS:\"" + message + "\"");
         PendingIntent pi = PendingIntent.getActivity(context, 0, new Intent(
                 context, clazz), 0);
         smsManager.sendTextMessage(phoneNumber, null, message, pi, null);
         saveMessageToSendFolder(phoneNumber, message);
+        Tracing.end("sendMessage", span);
     }
 
     /**
@@ -573,21 +1484,33 @@ public class TKConfigApplication extends Application {
     }
 
     /**
-     * Method used to send a SMS message to all selected GPS contacts.
+     * Method used to send a SMS command to all selected GPS contacts.
      *
      * @param context The context used to send the SMS.
      * @param clazz   The sender class.
-     * @param message The message to be send.
+     * @param command The command to be send.
      */
-    public void sendSMS(Context context, Class<?> clazz, String message) {
-        int i = 0;
+    public void sendSMS(Context context, Class<?> clazz, Command command) {
+        long span = Tracing.begin();
+        List<GpsContact> selected = new ArrayList<>(contacts.size());
         for (GpsContact contact : contacts) {
-            String cmd = prepareCommandPassword(message, contact);
             if (contact.isSelected()) {
-                sendSMS(context, clazz, contact.getPhone(), cmd);
-                i++;
+                selected.add(contact);
             }
         }
+        List<String> messages = command.getSMSCommands(selected);
+        int i = 0, size = selected.size();
+        List<History> sent = new ArrayList<>(size);
+        for (GpsContact contact : selected) {
+            sent.add(new History(contact.getPhone(), messages.get(i++)));
+        }
+        addHistories(sent);
+        i = 0;
+        while (i < size) {
+            sendMessage(context, clazz, selected.get(i).getPhone(), messages.get(i));
+            i++;
+        }
+        Tracing.end("sendSMS", span);
         if (i == 1) {
             showMessageInfo(context, R.string.sms_command_send_one);
         } else if (i > 0) {
@@ -597,20 +1520,6 @@ public class TKConfigApplication extends Application {
         }
     }
 
-    /**
-     * Prepare the specific GPS password for the provided contact used on the
-     * message.
-     *
-     * @param message The original message.
-     * @param contact The contact used to obtain the GPS password.
-     * @return The prepared message which include the GPS password.
-     */
-    private String prepareCommandPassword(String message, GpsContact contact) {
-        String result = message.replaceAll("\\?password\\?",
-                contact.getPassword());
-        return result;
-    }
-
     /**
      * Check if are selected GPS contacts into the list.
      *
@@ -634,6 +1543,7 @@ public class TKConfigApplication extends Application {
      */
     public void addGpsContact(GpsContact contact) {
         contacts.add(contact);
+        contactsGeneration++;
     }
 
     /**
@@ -646,22 +1556,88 @@ public class TKConfigApplication extends Application {
     }
 
     /**
-     * Load the list of GPS contacts.
+     * Delete a GPS contact from the list and from the contacts store.
+     *
+     * @param contact The contact to be deleted.
      */
-    private void contactsLoad() {
-        int count = mSharedPreferences.getInt("contacts", 0);
-        int i = 0;
-        if (contacts.size() > 0) {
-            contacts.clear();
+    public void deleteGpsContact(GpsContact contact) {
+        contacts.remove(contact);
+        contactsGeneration++;
+        final GpsContactStore.Row row = new GpsContactStore.Row(contact);
+        persistenceQueue.enqueue(null, new Runnable() {
+            @Override
+            public void run() {
+                snapshotStore.invalidate();
+                try {
+                    contactStore.delete(row);
+                } catch (SQLException e) {
+                    Log.e(TAG, "deleteGpsContact: " + e.getMessage(), e);
+                }
+            }
+        });
+        markSnapshotDirty();
+    }
+
+    /**
+     * Method used to read the GPS contacts from the contacts store. The
+     * contacts found on the application preferences, saved by older versions
+     * or restored from a backup, are moved first on the store. At the
+     * application start, the contacts from the state snapshot are used
+     * instead. This method is invoked on a background thread, the contacts
+     * list is changed by {@link #setLoadedContacts(List)} on the main thread.
+     *
+     * @return The stored GPS contacts.
+     */
+    public List<GpsContact> readContacts() {
+        long span = Tracing.begin();
+        List<GpsContact> snapshot = coldContacts;
+        coldContacts = null;
+        if (snapshot != null) {
+            Tracing.end("contactsLoad", span);
+            return snapshot;
         }
-        while (i < count) {
-            contacts.add(new GpsContact(mSharedPreferences.getString("contact_"
-                    + i + "_name", ""), mSharedPreferences.getString("contact_"
-                    + i + "_phone", ""), mSharedPreferences.getString("contact_"
-                    + i + "_password", ""), mSharedPreferences.getBoolean(
-                    "contact_" + i + "_selected", false)));
-            i++;
+        List<GpsContact> loaded;
+        try {
+            if (legacyMigration.isPending(legacyContacts)) {
+                snapshotStore.invalidate();
+                legacyMigration.migrate(legacyContacts);
+            }
+            loaded = contactStore.loadAll();
+            if (!snapshotStore.isPresent()) {
+                markSnapshotDirty();
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "readContacts: " + e.getMessage(), e);
+            loaded = readPreferencesContacts();
         }
+        Tracing.end("contactsLoad", span);
+        return loaded;
+    }
+
+    /**
+     * Replace the GPS contacts list with the contacts read from the store, or
+     * with the contact of the GPS phone number preference if there are no
+     * stored contacts. The contacts read by a second loader are ignored, so
+     * the contacts edited meanwhile are kept.
+     *
+     * @param loaded The contacts read by {@link #readContacts()}.
+     */
+    public void setLoadedContacts(List<GpsContact> loaded) {
+        if (contactsLoaded) {
+            return;
+        }
+        contacts.clear();
+        contacts.addAll(loaded);
+        addDefaultContact();
+        contactsLoaded = true;
+        contactsGeneration++;
+    }
+
+    /**
+     * Add the contact of the GPS phone number preference, if there are no
+     * GPS contacts.
+     */
+    private void addDefaultContact() {
         if (contacts.size() < 1) {
             String temp = getGPSPhoneNumber();
             String pass = mSharedPreferences.getString("password", "123456");
@@ -672,24 +1648,92 @@ public class TKConfigApplication extends Application {
     }
 
     /**
-     * Save the GPS contacts list
+     * Check if the GPS contacts were loaded from the contacts store.
+     *
+     * @return True if the GPS contacts list is loaded.
+     */
+    public boolean isContactsLoaded() {
+        return contactsLoaded;
+    }
+
+    /**
+     * Read the GPS contacts saved on the application preferences.
+     *
+     * @return The GPS contacts from the application preferences.
+     */
+    private List<GpsContact> readPreferencesContacts() {
+        int count = mSharedPreferences.getInt("contacts", 0);
+        List<GpsContact> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(readPreferencesContact(i));
+        }
+        return list;
+    }
+
+    /**
+     * Read a GPS contact saved on the application preferences.
+     *
+     * @param i The contact index.
+     * @return The GPS contact from the application preferences.
+     */
+    private GpsContact readPreferencesContact(int i) {
+        return new GpsContact(mSharedPreferences.getString("contact_"
+                + i + "_name", ""), mSharedPreferences.getString("contact_"
+                + i + "_phone", ""), mSharedPreferences.getString("contact_"
+                + i + "_password", ""), mSharedPreferences.getBoolean(
+                "contact_" + i + "_selected", false), mSharedPreferences.getString(
+                "contact_" + i + "_model", Constants.DEFAULT_TRACKER_MODEL));
+    }
+
+    /**
+     * Save the modified GPS contacts and, if any was modified, load the
+     * command packs of the selected trackers models. Only the rows of the
+     * modified contacts are written, from copies taken here, and the ids of
+     * the new rows are set on the contacts back on the main thread.
      */
     public void contactsSave() {
-        SharedPreferences.Editor editor = mSharedPreferences.edit();
-        editor.putInt("contacts", contacts.size());
-        int i = 0;
+        List<GpsContact> modified = new ArrayList<>();
         for (GpsContact contact : contacts) {
-            editor.putString("contact_" + i + "_name", contact.getName());
-            editor.putString("contact_" + i + "_phone", contact.getPhone());
-            editor.putString("contact_" + i + "_password",
-                    contact.getPassword());
-            editor.putBoolean("contact_" + i + "_selected",
-                    contact.isSelected());
-            i++;
+            if (contact.isModified()) {
+                contact.setModified(false);
+                modified.add(contact);
+            }
+        }
+        if (modified.isEmpty()) {
+            return;
+        }
+        contactsGeneration++;
+        final List<GpsContactStore.Row> rows = GpsContactStore.Row.of(modified);
+        final long[] ids = new long[rows.size()];
+        persistenceQueue.enqueue(null, new Runnable() {
+            @Override
+            public void run() {
+                snapshotStore.invalidate();
+                try {
+                    long[] saved = contactStore.saveAll(rows);
+                    System.arraycopy(saved, 0, ids, 0, saved.length);
+                } catch (SQLException e) {
+                    Log.e(TAG, "contactsSave: " + e.getMessage(), e);
+                }
+            }
+        });
+        persistenceQueue.whenWritten(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ids.length; i++) {
+                    GpsContact contact = rows.get(i).getContact();
+                    if (ids[i] > 0 && contact.getId() == 0) {
+                        contact.setId(ids[i]);
+                    }
+                }
+            }
+        });
+        markSnapshotDirty();
+        if (mSharedPreferences.contains("gpsPhoneNumber")) {
+            removeSharedPreference("gpsPhoneNumber");
+            removeSharedPreference("password");
         }
-        editor.remove("gpsPhoneNumber");
-        editor.remove("password");
-        editor.commit();
+        loadTrackerCommandPacks();
     }
 
     /**
@@ -861,9 +1905,39 @@ public class TKConfigApplication extends Application {
      *                   file.
      */
     public void setBackupPath(String backupPath) {
-        Editor editor = mSharedPreferences.edit();
-        editor.putString("backupPath", backupPath);
-        editor.commit();
+        saveStringValue("backupPath", backupPath);
+    }
+
+    /**
+     * Check if the backup path should be backed up every night.
+     *
+     * @return True if the scheduled backup is enabled.
+     */
+    public boolean isScheduledBackup() {
+        return mSharedPreferences.getBoolean(KEY_SCHEDULED_BACKUP, false);
+    }
+
+    /**
+     * Set or cancel the daily alarm of the scheduled backup, according to
+     * the scheduled backup preference. The alarm is inexact, so the system can
+     * batch it with other alarms.
+     */
+    public void updateBackupSchedule() {
+        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        PendingIntent operation = PendingIntent.getBroadcast(this, 0,
+                new Intent(this, ScheduledBackupReceiver.class), 0);
+        if (isScheduledBackup()) {
+            Calendar night = Calendar.getInstance();
+            night.set(Calendar.HOUR_OF_DAY, 3);
+            night.set(Calendar.MINUTE, 0);
+            if (night.getTimeInMillis() <= System.currentTimeMillis()) {
+                night.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            alarmManager.setInexactRepeating(AlarmManager.RTC, night.getTimeInMillis(),
+                    AlarmManager.INTERVAL_DAY, operation);
+        } else {
+            alarmManager.cancel(operation);
+        }
     }
 
     /**
@@ -890,10 +1964,28 @@ public class TKConfigApplication extends Application {
      * @param key   The shared preference key.
      * @param value The boolean value to be saved.
      */
-    private void saveBooleanValue(String key, boolean value) {
-        SharedPreferences.Editor editor = mSharedPreferences.edit();
-        editor.putBoolean(key, value);
-        editor.commit();
+    private void saveBooleanValue(final String key, final boolean value) {
+        persistenceQueue.enqueue(key, new PersistenceQueue.Write() {
+            @Override
+            public void write(SharedPreferences.Editor editor) {
+                editor.putBoolean(key, value);
+            }
+        });
+    }
+
+    /**
+     * Store a string value on the shared preferences.
+     *
+     * @param key   The shared preference key.
+     * @param value The string value to be saved.
+     */
+    private void saveStringValue(final String key, final String value) {
+        persistenceQueue.enqueue(key, new PersistenceQueue.Write() {
+            @Override
+            public void write(SharedPreferences.Editor editor) {
+                editor.putString(key, value);
+            }
+        });
     }
 
     /**
@@ -901,10 +1993,13 @@ public class TKConfigApplication extends Application {
      *
      * @param key The key of the shared preference to be removed.
      */
-    private void removeSharedPreference(String key) {
-        SharedPreferences.Editor editor = mSharedPreferences.edit();
-        editor.remove(key);
-        editor.commit();
+    private void removeSharedPreference(final String key) {
+        persistenceQueue.enqueue(key, new PersistenceQueue.Write() {
+            @Override
+            public void write(SharedPreferences.Editor editor) {
+                editor.remove(key);
+            }
+        });
     }
 
     /**
@@ -105,10 +105,11 @@ public class BaseActivity extends AppCompatActivity {
 	}
 
 	/**
-	 * Invoked when the activity is put on pause
+	 * Invoked when the activity is put on pause, waits for the pending writes
 	 */
 	@Override
 	protected void onPause() {
+		mApplication.flushPersistence();
 		super.onPause();
 	}
 
@@ -0,0 +1,146 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.activities;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import ro.ciubex.tkconfig.R;
+import ro.ciubex.tkconfig.models.Constants;
+import ro.ciubex.tkconfig.models.Tracing;
+import ro.ciubex.tkconfig.tasks.DefaultAsyncTaskResult;
+import ro.ciubex.tkconfig.tasks.TraceExportAsyncTask;
+
+import android.os.Bundle;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+
+/**
+ * Diagnostics activity, used to show the recorded tracing spans, the newest
+ * first, and to export them.
+ * 
+ * @author Claudiu Ciobotariu
+ */
+public class DiagnosticsActivity extends BaseActivity implements
+		TraceExportAsyncTask.Responder {
+	private static final String TRACE_FILE = "tkconfig-trace.json";
+	private ArrayAdapter<String> adapter;
+
+	/**
+	 * The method invoked when the activity is creating
+	 */
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.diagnostics_layout);
+		setMenuId(R.menu.diagnostics_menu);
+		ListView traceList = (ListView) findViewById(R.id.trace_list);
+		traceList.setEmptyView(findViewById(R.id.no_trace));
+		adapter = new ArrayAdapter<String>(this,
+				android.R.layout.simple_list_item_1, new ArrayList<String>());
+		traceList.setAdapter(adapter);
+	}
+
+	/**
+	 * Method invoked when the activity is resumed.
+	 */
+	@Override
+	protected void onResume() {
+		super.onResume();
+		reloadSpans();
+	}
+
+	/**
+	 * Show the recorded spans, the newest first. The span start is shown
+	 * relative to the oldest span.
+	 */
+	private void reloadSpans() {
+		List<Tracing.Span> spans = Tracing.getSpans();
+		adapter.clear();
+		if (!spans.isEmpty()) {
+			long origin = spans.get(0).start;
+			for (int i = spans.size() - 1; i >= 0; i--) {
+				Tracing.Span span = spans.get(i);
+				adapter.add(getString(R.string.trace_span_item, span.name,
+						span.duration / 1000000.0,
+						(span.start - origin) / 1000000.0, span.thread));
+			}
+		}
+		adapter.notifyDataSetChanged();
+	}
+
+	/**
+	 * Prepare Option menu
+	 */
+	@Override
+	protected boolean onMenuItemSelected(int menuItemId) {
+		boolean processed = false;
+		switch (menuItemId) {
+			case R.id.menu_back:
+				processed = true;
+				goBack();
+				break;
+			case R.id.menu_export_trace:
+				processed = true;
+				new TraceExportAsyncTask(this, getTraceFile()).execute();
+				break;
+			case R.id.menu_clear_trace:
+				processed = true;
+				Tracing.clear();
+				reloadSpans();
+				break;
+		}
+		return processed;
+	}
+
+	/**
+	 * Obtain the trace file, saved on the same folder as the backup file.
+	 * 
+	 * @return The trace file.
+	 */
+	private File getTraceFile() {
+		File parent = new File(mApplication.getBackupPath()).getParentFile();
+		return new File(parent, TRACE_FILE);
+	}
+
+	/**
+	 * Method invoked on the UI thread before the trace is exported.
+	 */
+	@Override
+	public void startTraceExport() {
+		mApplication.showProgressDialog(this, R.string.trace_export_started);
+	}
+
+	/**
+	 * Method invoked on the UI thread after the trace is exported.
+	 * 
+	 * @param result
+	 *            The export result.
+	 */
+	@Override
+	public void endTraceExport(DefaultAsyncTaskResult result) {
+		mApplication.hideProgressDialog();
+		if (result.resultId == Constants.OK) {
+			mApplication.showMessageInfo(this, result.resultMessage);
+		} else {
+			mApplication.showMessageError(this, result.resultMessage);
+		}
+	}
+}
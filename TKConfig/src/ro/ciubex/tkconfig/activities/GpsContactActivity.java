@@ -22,6 +22,10 @@ import ro.ciubex.tkconfig.R;
 import ro.ciubex.tkconfig.dialogs.GpsContactEditor;
 import ro.ciubex.tkconfig.list.GpsContactListAdapter;
 import ro.ciubex.tkconfig.models.GpsContact;
+import ro.ciubex.tkconfig.tasks.LoadGpsContactsAsyncTask;
+
+import java.util.List;
+
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.os.Bundle;
@@ -36,10 +40,13 @@ import android.widget.ListView;
  * @author Claudiu Ciobotariu
  * 
  */
-public class GpsContactActivity extends BaseActivity {
+public class GpsContactActivity extends BaseActivity implements
+		LoadGpsContactsAsyncTask.Responder {
 	private GpsContactListAdapter adapter;
 	private ListView contactList;
 	private final int CONFIRM_ID_DELETE = 0;
+	private int shownGeneration = -1;
+	private LoadGpsContactsAsyncTask loadGpsContactsTask;
 
 	/**
 	 * The method invoked when the activity is creating
@@ -53,12 +60,42 @@ public class GpsContactActivity extends BaseActivity {
 	}
 
 	/**
-	 * Method invoked when the activity is started.
+	 * Method invoked when the activity is started. The contacts are read on a
+	 * background thread if they are not loaded yet, and the list is rebound
+	 * only if the contacts were changed since it was shown.
 	 */
 	@Override
 	protected void onStart() {
 		super.onStart();
+		if (!mApplication.isContactsLoaded()) {
+			if (loadGpsContactsTask == null) {
+				loadGpsContactsTask = new LoadGpsContactsAsyncTask(this);
+				loadGpsContactsTask.execute();
+			}
+		} else if (shownGeneration != mApplication.getContactsGeneration()) {
+			mApplication.showProgressDialog(this, R.string.please_wait);
+			reloadAdapter();
+		}
+	}
+
+	/**
+	 * Method invoked on the UI thread before the contacts are read.
+	 */
+	@Override
+	public void startLoadGpsContacts() {
 		mApplication.showProgressDialog(this, R.string.please_wait);
+	}
+
+	/**
+	 * Method invoked on the UI thread after the contacts are read.
+	 * 
+	 * @param contacts
+	 *            The contacts read from the contacts store.
+	 */
+	@Override
+	public void endLoadGpsContacts(List<GpsContact> contacts) {
+		loadGpsContactsTask = null;
+		mApplication.setLoadedContacts(contacts);
 		reloadAdapter();
 	}
 	
@@ -102,6 +139,7 @@ public class GpsContactActivity extends BaseActivity {
 		contactList.invalidateViews();
 		contactList.scrollBy(0, 0);
 		contactList.setFastScrollEnabled(mApplication.getContacts().size() > 50);
+		shownGeneration = mApplication.getContactsGeneration();
 		mApplication.hideProgressDialog();
 	}
 
@@ -221,8 +259,7 @@ public class GpsContactActivity extends BaseActivity {
 	 */
 	private void doDeleteContact(GpsContact contact) {
 		mApplication.showProgressDialog(this, R.string.please_wait);
-		mApplication.getContacts().remove(contact);
-		mApplication.contactsSave();
+		mApplication.deleteGpsContact(contact);
 		reloadAdapter();
 	}
 }
@@ -36,6 +36,7 @@ import android.widget.ListView;
 public class HistoryActivity extends BaseActivity {
 	private HistoryListAdapter adapter;
 	private ListView historiesList;
+	private int shownGeneration = -1;
 
 	private final int CONFIRM_ID_RESEND = 0;
 	private final int CONFIRM_ID_DELETE = 1;
@@ -53,13 +54,16 @@ public class HistoryActivity extends BaseActivity {
 	}
 
 	/**
-	 * Method invoked when the activity is resumed.
+	 * Method invoked when the activity is resumed. The list is reloaded only
+	 * if the history was changed since it was shown.
 	 */
 	@Override
 	protected void onResume() {
 		super.onResume();
-		mApplication.showProgressDialog(this, R.string.please_wait);
-		reloadAdapter();
+		if (shownGeneration != mApplication.getHistoriesGeneration()) {
+			mApplication.showProgressDialog(this, R.string.please_wait);
+			reloadAdapter();
+		}
 	}
 
 	/**
@@ -82,14 +86,31 @@ public class HistoryActivity extends BaseActivity {
 	}
 
 	/**
-	 * Reload adapter and histories list.
+	 * Reload adapter and histories list after the pending history writes are
+	 * done.
+	 */
+	private void reloadAfterWrites() {
+		mApplication.getPersistenceQueue().whenWritten(new Runnable() {
+			@Override
+			public void run() {
+				reloadAdapter();
+			}
+		});
+	}
+
+	/**
+	 * Reload adapter and histories list. The progress dialog is hidden when
+	 * the histories are counted.
 	 */
 	public void reloadAdapter() {
-		adapter.notifyDataSetChanged();
-//		historiesList.invalidateViews();
-//		historiesList.scrollBy(0, 0);
-		historiesList.setFastScrollEnabled(mApplication.getHistories().size() > 50);
-		mApplication.hideProgressDialog();
+		shownGeneration = mApplication.getHistoriesGeneration();
+		adapter.reload(new Runnable() {
+			@Override
+			public void run() {
+				historiesList.setFastScrollEnabled(adapter.getCount() > 50);
+				mApplication.hideProgressDialog();
+			}
+		});
 	}
 
 	/**
@@ -119,6 +140,9 @@ public class HistoryActivity extends BaseActivity {
 	 */
 	private void showItemDialogMenu(final int position) {
 		final History history = (History) adapter.getItem(position);
+		if (history == null) {
+			return;
+		}
 		AlertDialog.Builder builder = new AlertDialog.Builder(this);
 		builder.setTitle(getDialogTitle(history));
 		builder.setItems(R.array.history_menu_list,
@@ -218,9 +242,8 @@ public class HistoryActivity extends BaseActivity {
 	 */
 	private void doDeleteHistory(History history) {
 		mApplication.showProgressDialog(this, R.string.please_wait);
-		mApplication.getHistories().remove(history);
-		mApplication.historiesSave();
-		reloadAdapter();
+		mApplication.deleteHistory(history);
+		reloadAfterWrites();
 	}
 
 	/**
@@ -228,9 +251,8 @@ public class HistoryActivity extends BaseActivity {
 	 */
 	private void doDeleteAllHistory() {
 		mApplication.showProgressDialog(this, R.string.please_wait);
-		mApplication.getHistories().clear();
-		mApplication.historiesSave();
-		reloadAdapter();
+		mApplication.deleteAllHistories();
+		reloadAfterWrites();
 	}
 
 	/**
@@ -243,7 +265,7 @@ public class HistoryActivity extends BaseActivity {
 		mApplication.sendSMS(this, HistoryActivity.class, history.getPhoneNumber(),
 				history.getSmsCommand());
 		mApplication.showMessageInfo(this, R.string.resend_command_finish);
-		reloadAdapter();
+		reloadAfterWrites();
 	}
 
 	/**
@@ -27,9 +27,12 @@ import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
+import android.widget.EditText;
 import android.widget.ListView;
 
 import ro.ciubex.tkconfig.R;
@@ -41,15 +44,22 @@ import ro.ciubex.tkconfig.list.ParamListAdapter;
 import ro.ciubex.tkconfig.models.Command;
 import ro.ciubex.tkconfig.models.GpsContact;
 import ro.ciubex.tkconfig.models.Utilities;
+import ro.ciubex.tkconfig.tasks.LoadCommandsAsyncTask;
+import ro.ciubex.tkconfig.tasks.LoadGpsContactsAsyncTask;
+
+import java.util.List;
 
 /**
  * The main activity which should load and show the commands.
  *
  * @author Claudiu Ciobotariu
  */
-public class TKConfigActivity extends BaseActivity {
+public class TKConfigActivity extends BaseActivity implements
+        LoadCommandsAsyncTask.Responder, LoadGpsContactsAsyncTask.Responder {
     private CommandListAdapter adapter;
     private ListView commandsList;
+    private EditText commandsFilterBox;
+    private String commandsFilter = "";
 
     private final int CONFIRM_ID_DELETE = 0;
     private final int CONFIRM_ID_SMS_SEND = 1;
@@ -62,6 +72,9 @@ public class TKConfigActivity extends BaseActivity {
     private static final int REQUEST_CODE_ABOUT = 1;
     private static final int PERMISSIONS_REQUEST_CODE = 44;
     private boolean invokedFromShortcut;
+    private int shownCommandsGeneration = -1;
+    private LoadCommandsAsyncTask loadCommandsTask;
+    private LoadGpsContactsAsyncTask loadGpsContactsTask;
 
     private enum METHOD {
         NOTHING, SEND_SMS
@@ -85,20 +98,71 @@ public class TKConfigActivity extends BaseActivity {
     }
 
     /**
-     * Method invoked when the activity is started.
+     * Method invoked when the activity is started. The GPS contacts and the
+     * commands are read on a background thread only the first time, or after
+     * a restore, and the list is rebound only if the commands were changed
+     * since it was shown.
      */
     @Override
     protected void onStart() {
         super.onStart();
         if (!invokedFromShortcut) {
-            mApplication.showProgressDialog(this, R.string.please_wait);
-            mApplication.commandsLoad();
             mApplication.historiesLoad();
-            reloadAdapter();
+            if (!mApplication.isContactsLoaded() && loadGpsContactsTask == null) {
+                loadGpsContactsTask = new LoadGpsContactsAsyncTask(this);
+                loadGpsContactsTask.execute();
+            }
+            if (!mApplication.isCommandsLoaded()) {
+                if (loadCommandsTask == null) {
+                    loadCommandsTask = new LoadCommandsAsyncTask(this);
+                    loadCommandsTask.execute();
+                }
+            } else if (shownCommandsGeneration != mApplication.getCommandsGeneration()) {
+                reloadAdapter();
+            }
             checkForPermissions();
         }
     }
 
+    /**
+     * Method invoked on the UI thread before the commands are read.
+     */
+    @Override
+    public void startLoadCommands() {
+        mApplication.showProgressDialog(this, R.string.please_wait);
+    }
+
+    /**
+     * Method invoked on the UI thread after the commands are read.
+     *
+     * @param commands The commands read from the commands store.
+     */
+    @Override
+    public void endLoadCommands(List<Command> commands) {
+        loadCommandsTask = null;
+        mApplication.setLoadedCommands(commands);
+        reloadAdapter();
+    }
+
+    /**
+     * Method invoked on the UI thread before the GPS contacts are read. The
+     * progress dialog is shown while the commands are read.
+     */
+    @Override
+    public void startLoadGpsContacts() {
+    }
+
+    /**
+     * Method invoked on the UI thread after the GPS contacts are read.
+     *
+     * @param contacts The GPS contacts read from the contacts store.
+     */
+    @Override
+    public void endLoadGpsContacts(List<GpsContact> contacts) {
+        loadGpsContactsTask = null;
+        mApplication.setLoadedContacts(contacts);
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -144,6 +208,7 @@ public class TKConfigActivity extends BaseActivity {
      * Prepare main list view with all controls
      */
     private void prepareMainListView() {
+        prepareCommandsFilterBox();
         commandsList = (ListView) findViewById(R.id.command_list);
         commandsList.setEmptyView(findViewById(R.id.empty_list_view));
         commandsList.setOnItemClickListener(new OnItemClickListener() {
@@ -161,13 +226,52 @@ public class TKConfigActivity extends BaseActivity {
     }
 
     /**
-     * Reload adapter and commands list.
+     * Prepare commands filter box.
      */
-    public void reloadAdapter() {
+    private void prepareCommandsFilterBox() {
+        commandsFilterBox = (EditText) findViewById(R.id.commands_filter_box);
+        commandsFilterBox.addTextChangedListener(new TextWatcher() {
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before,
+                                      int count) {
+                commandsFilter = s.toString().trim();
+                applyFilter();
+            }
+
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count,
+                                          int after) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
+    }
+
+    /**
+     * Show on the list only the commands found by the filter, using the
+     * commands search index.
+     */
+    private void applyFilter() {
+        if (commandsFilter.length() > 0) {
+            adapter.setCommands(mApplication.getCommandIndex().search(commandsFilter));
+        } else {
+            adapter.setCommands(mApplication.getCommands());
+        }
         adapter.notifyDataSetChanged();
         commandsList.invalidateViews();
         commandsList.scrollBy(0, 0);
-        commandsList.setFastScrollEnabled(mApplication.getCommands().size() > 50);
+        commandsList.setFastScrollEnabled(adapter.getCount() > 50);
+    }
+
+    /**
+     * Reload adapter and commands list.
+     */
+    public void reloadAdapter() {
+        applyFilter();
+        shownCommandsGeneration = mApplication.getCommandsGeneration();
         mApplication.hideProgressDialog();
     }
 
@@ -311,7 +415,7 @@ public class TKConfigActivity extends BaseActivity {
             showConfirmationDialog(
                     R.string.remove_command,
                     mApplication.getString(R.string.remove_command_question,
-                            command.getName()), CONFIRM_ID_DELETE, Integer.valueOf(position));
+                            command.getName()), CONFIRM_ID_DELETE, command);
         }
     }
 
@@ -329,7 +433,7 @@ public class TKConfigActivity extends BaseActivity {
         if (positive) {
             switch (confirmationId) {
                 case CONFIRM_ID_DELETE:
-                    doDeleteCommand((Integer) anObject);
+                    doDeleteCommand((Command) anObject);
                     break;
                 case CONFIRM_ID_SMS_SEND:
                     checkSendSMSPermission((Command) anObject);
@@ -351,12 +455,11 @@ public class TKConfigActivity extends BaseActivity {
     /**
      * Delete a command from the list.
      *
-     * @param position The position of command to be deleted.
+     * @param command The command to be deleted.
      */
-    private void doDeleteCommand(int position) {
+    private void doDeleteCommand(Command command) {
         mApplication.showProgressDialog(this, R.string.please_wait);
-        mApplication.getCommands().remove(position);
-        mApplication.commandsSave();
+        mApplication.deleteCommand(command);
         reloadAdapter();
     }
 
@@ -388,7 +491,8 @@ public class TKConfigActivity extends BaseActivity {
             mApplication.showProgressDialog(this, R.string.please_wait);
             Command copy = (Command) command.clone();
             mApplication.getCommands().add(copy);
-            mApplication.commandsSave();
+            mApplication.getCommandIndex().add(copy);
+            mApplication.saveCommand(copy);
             reloadAdapter();
         }
     }
@@ -480,7 +584,6 @@ public class TKConfigActivity extends BaseActivity {
      * @param command The command to be send.
      */
     private void doSendSMS(Command command) {
-        String cmd = command.getSMSCommand();
         boolean result = false;
         for (GpsContact contact : mApplication.getContacts()) {
             if (contact.isSelected()) {
@@ -490,7 +593,7 @@ public class TKConfigActivity extends BaseActivity {
         }
         mApplication.contactsSave();
         if (result) {
-            mApplication.sendSMS(this, TKConfigActivity.class, cmd);
+            mApplication.sendSMS(this, TKConfigActivity.class, command);
         } else {
             showMessageDialog(R.string.information,
                     mApplication.getString(R.string.sms_no_contact), SMS_NO_CONTACT,
@@ -576,22 +679,6 @@ public class TKConfigActivity extends BaseActivity {
         }
     }
 
-    /**
-     * This method is invoked when a child activity is finished and this
-     * activity is showed again
-     */
-    @Override
-    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
-        super.onActivityResult(requestCode, resultCode, data);
-        if (requestCode == REQUEST_CODE_SETTINGS) {
-            if (mApplication.isMustReloadCommands()) {
-                mApplication.showProgressDialog(this, R.string.please_wait);
-                reloadAdapter();
-                mApplication.setMustReloadCommands(false);
-            }
-        }
-    }
-
     /**
      * Launch History Activity
      *
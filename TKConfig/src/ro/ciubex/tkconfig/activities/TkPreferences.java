@@ -28,10 +28,14 @@ import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceCategory;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import ro.ciubex.tkconfig.R;
 import ro.ciubex.tkconfig.TKConfigApplication;
 import ro.ciubex.tkconfig.forms.CustomEditTextPreference;
 import ro.ciubex.tkconfig.models.Constants;
+import ro.ciubex.tkconfig.models.Tracing;
 import ro.ciubex.tkconfig.models.Utilities;
 import ro.ciubex.tkconfig.tasks.DefaultAsyncTaskResult;
 import ro.ciubex.tkconfig.tasks.PreferencesFileUtilAsynkTask;
@@ -52,6 +56,7 @@ public class TkPreferences extends PreferenceActivity implements
     private static final int PREF_RESTORE = 2;
     private static final int PERMISSIONS_REQUEST_CODE = 44;
     private Preference mAppTheme;
+    private Preference mHistoryEvictionStats;
 
     /**
      * Method called when this preference activity is created
@@ -79,6 +84,7 @@ public class TkPreferences extends PreferenceActivity implements
      */
     private void prepareCommands() {
         mAppTheme = findPreference(TKConfigApplication.KEY_APP_THEME);
+        mHistoryEvictionStats = findPreference("historyEvictionStats");
         findPreference("gpsContacts")
                 .setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
 
@@ -87,6 +93,15 @@ public class TkPreferences extends PreferenceActivity implements
                         return onShowGPSContacts();
                     }
                 });
+        findPreference("diagnostics")
+                .setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+
+                    @Override
+                    public boolean onPreferenceClick(Preference preference) {
+                        startActivity(new Intent(getBaseContext(), DiagnosticsActivity.class));
+                        return true;
+                    }
+                });
         findPreference("resetCommands")
                 .setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
 
@@ -142,10 +157,12 @@ public class TkPreferences extends PreferenceActivity implements
     }
 
     /**
-     * Unregister the preference changes when the activity is on pause
+     * Unregister the preference changes and wait for the pending writes when
+     * the activity is on pause
      */
     @Override
     protected void onPause() {
+        mApplication.flushPersistence();
         super.onPause();
         getPreferenceScreen().getSharedPreferences()
                 .unregisterOnSharedPreferenceChangeListener(this);
@@ -177,6 +194,22 @@ public class TkPreferences extends PreferenceActivity implements
         }
     }
 
+    /**
+     * Method invoked when the PreferencesFileUtilAsynkTask task progress is
+     * changed
+     *
+     * @param operationType The operation type: backup or restore
+     * @param percent       The progress percent
+     */
+    @Override
+    public void progressFileAsynkTask(
+            PreferencesFileUtilAsynkTask.Operation operationType, int percent) {
+        mApplication.updateProgressDialog(getString(
+                operationType == PreferencesFileUtilAsynkTask.Operation.BACKUP
+                        ? R.string.backup_progress : R.string.restore_progress,
+                percent));
+    }
+
     /**
      * Method invoked when is ended PreferencesFileUtilAsynkTask task
      *
@@ -191,7 +224,8 @@ public class TkPreferences extends PreferenceActivity implements
         if (result.resultId == Constants.OK) {
             mApplication.showMessageInfo(this, result.resultMessage);
             if (operationType == PreferencesFileUtilAsynkTask.Operation.RESTORE) {
-                // restartPreferencesActivity();
+                mApplication.onDataRestored();
+                recreate();
             }
         } else {
             mApplication.showMessageError(this, result.resultMessage);
@@ -212,13 +246,60 @@ public class TkPreferences extends PreferenceActivity implements
         }
         if (resultId == PREF_RESTORE) {
             preferencesBackup.setText(value);
-            onRestorePreferences(value);
+            onChooseSections(PreferencesFileUtilAsynkTask.Operation.RESTORE, value);
         } else if (resultId == PREF_BACKUP) {
             preferencesRestore.setText(value);
-            onBackupPreferences(value);
+            onChooseSections(PreferencesFileUtilAsynkTask.Operation.BACKUP, value);
         }
     }
 
+    /**
+     * Show a dialog to choose the sections to be saved or restored, all the
+     * sections are checked by default.
+     *
+     * @param operationType The operation type: backup or restore
+     * @param backupPath    The full file and path of saved or loaded preferences
+     */
+    private void onChooseSections(final PreferencesFileUtilAsynkTask.Operation operationType,
+                                  final String backupPath) {
+        final boolean[] checked = new boolean[PreferencesFileUtilAsynkTask.SECTIONS.length];
+        for (int i = 0; i < checked.length; i++) {
+            checked[i] = true;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(operationType == PreferencesFileUtilAsynkTask.Operation.BACKUP
+                        ? R.string.backup_sections_title : R.string.restore_sections_title)
+                .setMultiChoiceItems(R.array.backup_sections, checked,
+                        new DialogInterface.OnMultiChoiceClickListener() {
+
+                            @Override
+                            public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+                                checked[which] = isChecked;
+                            }
+                        })
+                .setPositiveButton(R.string.ok,
+                        new DialogInterface.OnClickListener() {
+
+                            public void onClick(DialogInterface dialog,
+                                                int whichButton) {
+                                Set<String> sections = new HashSet<>();
+                                for (int i = 0; i < checked.length; i++) {
+                                    if (checked[i]) {
+                                        sections.add(PreferencesFileUtilAsynkTask.SECTIONS[i]);
+                                    }
+                                }
+                                if (sections.isEmpty()) {
+                                    mApplication.showMessageError(TkPreferences.this,
+                                            R.string.no_backup_section);
+                                } else if (operationType == PreferencesFileUtilAsynkTask.Operation.RESTORE) {
+                                    onRestorePreferences(backupPath, sections);
+                                } else {
+                                    onBackupPreferences(backupPath, sections);
+                                }
+                            }
+                        }).setNegativeButton(R.string.cancel, null).show();
+    }
+
     /**
      * Persist into preferences the full file and path of saved or loaded
      * preferences
@@ -255,10 +336,11 @@ public class TkPreferences extends PreferenceActivity implements
      * PreferencesFileUtilAsynkTask task to restore preferences
      *
      * @param backupPath The full file and path from where should be loaded preferences
+     * @param sections   The sections to be restored
      */
-    private void onRestorePreferences(String backupPath) {
+    private void onRestorePreferences(String backupPath, Set<String> sections) {
         new PreferencesFileUtilAsynkTask(this, backupPath,
-                PreferencesFileUtilAsynkTask.Operation.RESTORE).execute();
+                PreferencesFileUtilAsynkTask.Operation.RESTORE, sections).execute();
     }
 
     /**
@@ -266,10 +348,11 @@ public class TkPreferences extends PreferenceActivity implements
      * PreferencesFileUtilAsynkTask task to backup preferences
      *
      * @param backupPath The full file and path where should be stored preferences
+     * @param sections   The sections to be saved
      */
-    private void onBackupPreferences(String backupPath) {
+    private void onBackupPreferences(String backupPath, Set<String> sections) {
         new PreferencesFileUtilAsynkTask(this, backupPath,
-                PreferencesFileUtilAsynkTask.Operation.BACKUP).execute();
+                PreferencesFileUtilAsynkTask.Operation.BACKUP, sections).execute();
     }
 
     /**
@@ -299,7 +382,6 @@ public class TkPreferences extends PreferenceActivity implements
     private void doCommandsReset() {
         mApplication.populateDefaultCommands();
         mApplication.commandsStoreCleanup();
-        mApplication.setMustReloadCommands(true);
     }
 
     /**
@@ -375,6 +457,16 @@ public class TkPreferences extends PreferenceActivity implements
         if (TKConfigApplication.KEY_APP_THEME.equals(key)) {
             showRestartActivityMessage();
             prepareSummaries();
+        } else if (TKConfigApplication.KEY_HISTORY_MAX_ENTRIES.equals(key)
+                || TKConfigApplication.KEY_HISTORY_MAX_AGE.equals(key)
+                || TKConfigApplication.KEY_HISTORY_MAX_PER_TRACKER.equals(key)) {
+            mApplication.evictHistories();
+        } else if (TKConfigApplication.KEY_TRACING_ENABLED.equals(key)) {
+            Tracing.setEnabled(sharedPreferences.getBoolean(key, false));
+        } else if (TKConfigApplication.KEY_SCHEDULED_BACKUP.equals(key)) {
+            mApplication.updateBackupSchedule();
+        } else if (key != null && key.startsWith("historyEvicted")) {
+            prepareSummaries();
         }
     }
 
@@ -410,6 +502,10 @@ public class TkPreferences extends PreferenceActivity implements
         String label = TKConfigApplication.getAppContext().getString(R.string.app_theme_title_param,
                 getSelectedThemeLabel());
         mAppTheme.setTitle(label);
+        long[] counters = mApplication.getHistoryEvictionCounters();
+        mHistoryEvictionStats.setSummary(TKConfigApplication.getAppContext().getString(
+                R.string.history_eviction_stats, mApplication.getHistoryCount(),
+                counters[0], counters[1], counters[2], counters[3]));
     }
 
     /**
@@ -18,6 +18,8 @@
  */
 package ro.ciubex.tkconfig.dialogs;
 
+import java.util.List;
+
 import ro.ciubex.tkconfig.R;
 import ro.ciubex.tkconfig.TKConfigApplication;
 import ro.ciubex.tkconfig.activities.TKConfigActivity;
@@ -89,17 +91,25 @@ public class EditorDialog extends BaseDialog {
 			if (cDescription == null) {
 				cDescription = "";
 			}
-			((TKConfigApplication) application).showProgressDialog(
-					parentActivity, R.string.please_wait);
+			TKConfigApplication app = (TKConfigApplication) application;
+			app.showProgressDialog(parentActivity, R.string.please_wait);
 			if (command == null) {
 				command = new Command(cName, cCommand, cDescription);
-				((TKConfigApplication) application).getCommands().add(command);
+				app.getCommands().add(command);
+				app.getCommandIndex().add(command);
 			} else {
-				command.setName(cName);
+				if (!cName.equals(command.getName())) {
+					// keep the commands list sorted by name
+					List<Command> commands = app.getCommands();
+					commands.remove(command);
+					command.setName(cName);
+					commands.add(command);
+				}
 				command.setCommand(cCommand);
 				command.setDescription(cDescription);
+				app.getCommandIndex().update(command);
 			}
-			((TKConfigApplication) application).commandsSave();
+			app.saveCommand(command);
 			((TKConfigActivity) parentActivity).reloadAdapter();
 		}
 	}
@@ -18,10 +18,13 @@
  */
 package ro.ciubex.tkconfig.dialogs;
 
+import java.util.Arrays;
+
 import ro.ciubex.tkconfig.R;
 import ro.ciubex.tkconfig.TKConfigApplication;
 import ro.ciubex.tkconfig.activities.ContactsActivity;
 import ro.ciubex.tkconfig.activities.GpsContactActivity;
+import ro.ciubex.tkconfig.models.Constants;
 import ro.ciubex.tkconfig.models.ContactChooseHandler;
 import ro.ciubex.tkconfig.models.ContactModel;
 import ro.ciubex.tkconfig.models.GpsContact;
@@ -31,6 +34,7 @@ import android.view.View;
 import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.Spinner;
 
 /**
  * This class is used to define a dialog for GPS contact editing.
@@ -45,6 +49,8 @@ public class GpsContactEditor extends BaseDialog implements
 	private EditText contactName, contactPhone, contactPassword;
 	private ImageButton doContactPicker;
 	private CheckBox contactSelected;
+	private Spinner contactModel;
+	private String[] models;
 
 	public GpsContactEditor(Context context,
 			TKConfigApplication parentApplication, int titleId,
@@ -74,6 +80,9 @@ public class GpsContactEditor extends BaseDialog implements
 		contactPhone = (EditText) findViewById(R.id.contact_number);
 		contactPassword = (EditText) findViewById(R.id.contact_passwd);
 		contactSelected = (CheckBox) findViewById(R.id.contact_selected);
+		contactModel = (Spinner) findViewById(R.id.contact_model);
+		models = parentApplication.getResources().getStringArray(
+				R.array.tracker_model_values);
 		listEditText.add(contactName);
 		listEditText.add(contactPhone);
 		listEditText.add(contactPassword);
@@ -83,6 +92,10 @@ public class GpsContactEditor extends BaseDialog implements
 			contactPassword.setText(contact.getPassword());
 			contactSelected.setChecked(contact.isSelected());
 		}
+		int model = Arrays.asList(models).indexOf(
+				contact != null ? contact.getModel()
+						: Constants.DEFAULT_TRACKER_MODEL);
+		contactModel.setSelection(model > -1 ? model : 0);
 		doContactPicker = (ImageButton) findViewById(R.id.do_contact_picker);
 		doContactPicker.setOnClickListener(this);
 		super.initEditTextFields();
@@ -113,17 +126,19 @@ public class GpsContactEditor extends BaseDialog implements
 		String cName = contactName.getText().toString();
 		String cPhone = contactPhone.getText().toString();
 		String cPasswd = contactPassword.getText().toString();
+		String cModel = models[contactModel.getSelectedItemPosition()];
 		if (cName != null && cPhone != null && cName.length() > 0
 				&& cPhone.length() > 0) {
 			if (contact == null) {
 				contact = new GpsContact(cName, cPhone, cPasswd,
-						contactSelected.isChecked());
+						contactSelected.isChecked(), cModel);
 				((TKConfigApplication) application).addGpsContact(contact);
 			} else {
 				contact.setName(cName);
 				contact.setPhone(cPhone);
 				contact.setPassword(cPasswd);
 				contact.setSelected(contactSelected.isChecked());
+				contact.setModel(cModel);
 			}
 			((GpsContactActivity) parentActivity).reloadAdapter();
 			((TKConfigApplication) application).contactsSave();
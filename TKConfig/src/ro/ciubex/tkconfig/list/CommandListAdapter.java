@@ -46,6 +46,16 @@ public class CommandListAdapter extends BaseAdapter {
 		this.commands = commands;
 	}
 
+	/**
+	 * Set the commands shown by this adapter.
+	 * 
+	 * @param commands
+	 *            The commands to be shown.
+	 */
+	public void setCommands(List<Command> commands) {
+		this.commands = commands;
+	}
+
 	/**
 	 * Get the number of commands in list.
 	 * 
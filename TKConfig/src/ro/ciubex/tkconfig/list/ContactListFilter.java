@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Locale;
 
 import ro.ciubex.tkconfig.models.ContactModel;
+import ro.ciubex.tkconfig.models.NameFilter;
 
 import android.widget.Filter;
 
@@ -55,14 +56,11 @@ public class ContactListFilter extends Filter {
 		List<ContactModel> contacts = adapter.getContacts();
 		int originalSize = contacts.size();
 		if (constraint.length() > 0) {
-			String filter = constraint.toString().trim();
-			if (filter.length() > 0) {
+			NameFilter filter = new NameFilter(constraint.toString(), locale);
+			if (!filter.isEmpty()) {
 				List<ContactModel> filterList = new ArrayList<ContactModel>();
-				filter = filter.toLowerCase(locale);
-				String contactName;
 				for (ContactModel contact : contacts) {
-					contactName = contact.getContactName().toLowerCase(locale);
-					if (contactName.indexOf(filter) > -1) {
+					if (filter.matches(contact.getContactName())) {
 						filterList.add(contact);
 					}
 				}
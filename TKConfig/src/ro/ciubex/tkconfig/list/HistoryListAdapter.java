@@ -18,11 +18,21 @@
  */
 package ro.ciubex.tkconfig.list;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 import ro.ciubex.tkconfig.R;
 import ro.ciubex.tkconfig.TKConfigApplication;
 import ro.ciubex.tkconfig.models.History;
-import ro.ciubex.tkconfig.models.Utilities;
+import ro.ciubex.tkconfig.models.PageCache;
+
 import android.content.Context;
+import android.database.SQLException;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -30,19 +40,96 @@ import android.widget.BaseAdapter;
 import android.widget.TextView;
 
 /**
- * This adapter is used to populate the history list view.
+ * This adapter is used to populate the history list view, the newest event
+ * first. The events are read from the history store by pages, only around the
+ * visible positions, on a background thread; the list is notified when a page
+ * is read.
  * 
  * @author Claudiu Ciobotariu
  * 
  */
 public class HistoryListAdapter extends BaseAdapter {
+	private final static String TAG = HistoryListAdapter.class.getName();
+	private static final int PAGE_SIZE = 50;
+	private static final int MAX_PAGES = 8;
 	private LayoutInflater mInflater;
 	private TKConfigApplication application;
+	private PageCache<History> histories;
+	private Runnable onReloaded;
 
-	public HistoryListAdapter(Context context, TKConfigApplication application) {
+	public HistoryListAdapter(Context context,
+			final TKConfigApplication application) {
 		mInflater = (LayoutInflater) context
 				.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
 		this.application = application;
+		final Handler handler = new Handler(Looper.getMainLooper());
+		Executor mainThread = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				handler.post(command);
+			}
+		};
+		this.histories = new PageCache<History>(PAGE_SIZE, MAX_PAGES,
+				AsyncTask.THREAD_POOL_EXECUTOR, mainThread) {
+
+			@Override
+			protected int loadSize() {
+				return application.getHistoryCount();
+			}
+
+			@Override
+			protected List<History> loadPage(History last, int limit) {
+				try {
+					return application.getHistoryStore().loadBefore(
+							last != null ? last.getId() : Long.MAX_VALUE,
+							limit);
+				} catch (SQLException e) {
+					Log.e(TAG, "loadPage: " + e.getMessage(), e);
+				}
+				return Collections.emptyList();
+			}
+
+			@Override
+			protected List<History> loadPageAt(int offset, int limit) {
+				try {
+					return application.getHistoryStore().loadNewest(offset,
+							limit);
+				} catch (SQLException e) {
+					Log.e(TAG, "loadPageAt: " + e.getMessage(), e);
+				}
+				return Collections.emptyList();
+			}
+
+			@Override
+			protected void onSizeLoaded() {
+				notifyDataSetChanged();
+				if (onReloaded != null) {
+					Runnable callback = onReloaded;
+					onReloaded = null;
+					callback.run();
+				}
+			}
+
+			@Override
+			protected void onPageLoaded() {
+				notifyDataSetChanged();
+			}
+		};
+	}
+
+	/**
+	 * Forget the loaded pages and notify the list view, after the history was
+	 * changed. The events are counted again on a background thread.
+	 * 
+	 * @param onReloaded
+	 *            Invoked on the main thread when the events are counted, may
+	 *            be null.
+	 */
+	public void reload(Runnable onReloaded) {
+		this.onReloaded = onReloaded;
+		histories.invalidate();
+		histories.size();
+		notifyDataSetChanged();
 	}
 
 	/**
@@ -52,7 +139,7 @@ public class HistoryListAdapter extends BaseAdapter {
 	 */
 	@Override
 	public int getCount() {
-		return application.getHistories().size();
+		return histories.size();
 	}
 
 	/**
@@ -64,17 +151,17 @@ public class HistoryListAdapter extends BaseAdapter {
 	 */
 	@Override
 	public Object getItem(int position) {
-		return position > -1 && position < getCount() ? application
-				.getHistories().get(position) : null;
+		return histories.get(position);
 	}
 
 	/**
 	 * Get the item id associated with the specified position in the list. In
-	 * this case the position is also the id.
+	 * this case the id is the history event row id.
 	 */
 	@Override
 	public long getItemId(int position) {
-		return position;
+		History history = histories.get(position);
+		return history != null ? history.getId() : position;
 	}
 
 	/**
@@ -111,8 +198,12 @@ public class HistoryListAdapter extends BaseAdapter {
 			if (history != null) {
 				viewHolder.historyCommand.setText(history.getSmsCommand());
 				viewHolder.historyPhone.setText(history.getPhoneNumber());
-				viewHolder.historyDateTime.setText(Utilities.formatDateTime(
-						application, history.getDateTime()));
+				viewHolder.historyDateTime.setText(application
+						.formatDateTime(history.getDateTime()));
+			} else {
+				viewHolder.historyCommand.setText("");
+				viewHolder.historyPhone.setText("");
+				viewHolder.historyDateTime.setText("");
 			}
 		}
 		return view;
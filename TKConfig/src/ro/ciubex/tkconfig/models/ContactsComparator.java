@@ -30,27 +30,7 @@ public class ContactsComparator implements Comparator<ContactModel> {
 
 	@Override
 	public int compare(ContactModel o1, ContactModel o2) {
-		String s1 = o1.getContactName();
-		String s2 = o2.getContactName();
-		int n1 = s1 != null ? s1.length() : 0;
-		int n2 = s2 != null ? s2.length() : 0;
-		int min = Math.min(n1, n2);
-		for (int i = 0; i < min; i++) {
-			char c1 = s1.charAt(i);
-			char c2 = s2.charAt(i);
-			if (c1 != c2) {
-				c1 = Character.toUpperCase(c1);
-				c2 = Character.toUpperCase(c2);
-				if (c1 != c2) {
-					c1 = Character.toLowerCase(c1);
-					c2 = Character.toLowerCase(c2);
-					if (c1 != c2) {
-						return c1 - c2;
-					}
-				}
-			}
-		}
-		return n1 - n2;
+		return Utilities.compareNames(o1.getContactName(), o2.getContactName());
 	}
 
 }
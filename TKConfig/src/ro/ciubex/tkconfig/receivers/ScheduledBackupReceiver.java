@@ -0,0 +1,84 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.receivers;
+
+import ro.ciubex.tkconfig.TKConfigApplication;
+import ro.ciubex.tkconfig.models.Constants;
+import ro.ciubex.tkconfig.tasks.DefaultAsyncTaskResult;
+import ro.ciubex.tkconfig.tasks.PreferencesFileUtilAsynkTask;
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Receiver of the scheduled backup alarm, which makes an incremental backup
+ * to the backup path. The alarm is set again when the device is started.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class ScheduledBackupReceiver extends BroadcastReceiver implements
+		PreferencesFileUtilAsynkTask.Responder {
+	private final static String TAG = ScheduledBackupReceiver.class.getName();
+	private TKConfigApplication application;
+	private PendingResult pendingResult;
+
+	@Override
+	public void onReceive(Context context, Intent intent) {
+		application = (TKConfigApplication) context.getApplicationContext();
+		if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+			application.updateBackupSchedule();
+		} else if (application.isScheduledBackup()) {
+			pendingResult = goAsync();
+			new PreferencesFileUtilAsynkTask(this,
+					application.getBackupPath(),
+					PreferencesFileUtilAsynkTask.Operation.INCREMENTAL_BACKUP,
+					null).execute();
+		}
+	}
+
+	@Override
+	public Application getApplication() {
+		return application;
+	}
+
+	@Override
+	public void startFileAsynkTask(
+			PreferencesFileUtilAsynkTask.Operation operationType) {
+	}
+
+	@Override
+	public void progressFileAsynkTask(
+			PreferencesFileUtilAsynkTask.Operation operationType, int percent) {
+	}
+
+	@Override
+	public void endFileAsynkTask(
+			PreferencesFileUtilAsynkTask.Operation operationType,
+			DefaultAsyncTaskResult result) {
+		if (result.resultId == Constants.OK) {
+			Log.i(TAG, result.resultMessage);
+		} else {
+			Log.e(TAG, result.resultMessage);
+		}
+		pendingResult.finish();
+	}
+}
@@ -0,0 +1,337 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ro.ciubex.tkconfig.models.Command;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * SQLite store for the commands. Each command is a row identified by a stable
+ * row id, saved on the command, so that an edited command is written alone.
+ * The bulk operations are made in a single transaction, using prepared
+ * statements. The commands are written from a {@link Row}, an immutable copy
+ * taken on the main thread, because the commands are edited on the main
+ * thread while the store is written on the persistence thread.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class CommandStore extends SQLiteOpenHelper {
+	private static final String DATABASE_NAME = "commands.db";
+	private static final int DATABASE_VERSION = 1;
+
+	private static final String TABLE = "commands";
+	private static final String COLUMN_ID = "_id";
+	private static final String COLUMN_NAME = "name";
+	private static final String COLUMN_COMMAND = "command";
+	private static final String COLUMN_DESCRIPTION = "description";
+	private static final String COLUMN_PARAMS = "params";
+
+	private SQLiteStatement insertStatement;
+	private SQLiteStatement updateStatement;
+	private SQLiteStatement deleteStatement;
+	private final RestoreStaging restoreStaging = new RestoreStaging(this,
+			TABLE, COLUMN_NAME, COLUMN_COMMAND, COLUMN_DESCRIPTION,
+			COLUMN_PARAMS);
+
+	/**
+	 * Immutable copy of the stored columns of a command, taken on the thread
+	 * which owns the command. Only the row id is read from the command and
+	 * written back to it, on the persistence thread, when the row is written.
+	 */
+	public static final class Row {
+		private final Command command;
+		private final String name;
+		private final String text;
+		private final String description;
+		private final String layout;
+
+		public Row(Command command) {
+			this.command = command;
+			this.name = command.getName();
+			this.text = command.getCommand();
+			this.description = command.getDescription();
+			this.layout = command.getParametersLayout();
+		}
+
+		/**
+		 * Copy the stored columns of a list of commands.
+		 * 
+		 * @param commands
+		 *            The commands to be copied.
+		 * @return The rows, in the same order.
+		 */
+		public static List<Row> of(Collection<Command> commands) {
+			List<Row> rows = new ArrayList<Row>(commands.size());
+			for (Command command : commands) {
+				rows.add(new Row(command));
+			}
+			return rows;
+		}
+
+		public Command getCommand() {
+			return command;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public String getLayout() {
+			return layout;
+		}
+	}
+
+	public CommandStore(Context context) {
+		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+	}
+
+	@Override
+	public void onCreate(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE " + TABLE + " (" + COLUMN_ID
+				+ " INTEGER PRIMARY KEY AUTOINCREMENT, " + COLUMN_NAME
+				+ " TEXT NOT NULL, " + COLUMN_COMMAND + " TEXT NOT NULL, "
+				+ COLUMN_DESCRIPTION + " TEXT, " + COLUMN_PARAMS + " TEXT)");
+	}
+
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+	}
+
+	/**
+	 * Load all the stored commands.
+	 * 
+	 * @return The stored commands, with their row id.
+	 */
+	public List<Command> loadAll() {
+		Cursor cursor = getReadableDatabase().query(TABLE,
+				new String[] { COLUMN_ID, COLUMN_NAME, COLUMN_COMMAND,
+						COLUMN_DESCRIPTION, COLUMN_PARAMS }, null, null, null,
+				null, null);
+		List<Command> result = new ArrayList<Command>(cursor.getCount());
+		try {
+			while (cursor.moveToNext()) {
+				Command command = new Command(cursor.getString(1),
+						cursor.getString(2), cursor.isNull(3) ? ""
+								: cursor.getString(3), cursor.getString(4));
+				command.setId(cursor.getLong(0));
+				result.add(command);
+			}
+		} finally {
+			cursor.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Insert a new command, or update it if it is already stored. The row id
+	 * is read when the row is written, so a command inserted by an earlier
+	 * queued write is updated.
+	 * 
+	 * @param row
+	 *            The command row to be saved.
+	 */
+	public void save(Row row) {
+		if (row.command.getId() > 0) {
+			update(row);
+		} else {
+			insert(row);
+		}
+	}
+
+	/**
+	 * Insert a command row and set the row id on its command.
+	 * 
+	 * @param row
+	 *            The command row to be inserted.
+	 */
+	public synchronized void insert(Row row) {
+		SQLiteStatement statement = getInsertStatement();
+		bindCommand(statement, row);
+		row.command.setId(statement.executeInsert());
+	}
+
+	/**
+	 * Insert the command rows in a single transaction.
+	 * 
+	 * @param rows
+	 *            The command rows to be inserted.
+	 */
+	public synchronized void insertAll(Collection<Row> rows) {
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+		try {
+			for (Row row : rows) {
+				insert(row);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Update the row of a stored command.
+	 * 
+	 * @param row
+	 *            The command row to be updated.
+	 */
+	public synchronized void update(Row row) {
+		SQLiteStatement statement = getUpdateStatement();
+		bindCommand(statement, row);
+		statement.bindLong(5, row.command.getId());
+		statement.execute();
+	}
+
+	/**
+	 * Delete a stored command.
+	 * 
+	 * @param command
+	 *            The command to be deleted.
+	 */
+	public synchronized void delete(Command command) {
+		if (command.getId() > 0) {
+			SQLiteStatement statement = getDeleteStatement();
+			statement.bindLong(1, command.getId());
+			statement.execute();
+			command.setId(0);
+		}
+	}
+
+	/**
+	 * Count the stored commands.
+	 * 
+	 * @return The number of stored commands.
+	 */
+	public int count() {
+		return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(),
+				TABLE);
+	}
+
+	/**
+	 * Delete all the stored commands.
+	 */
+	public synchronized void deleteAll() {
+		getWritableDatabase().delete(TABLE, null, null);
+	}
+
+	/**
+	 * Replace all the stored commands, in a single transaction.
+	 * 
+	 * @param rows
+	 *            The new command rows.
+	 */
+	public synchronized void replaceAll(Collection<Row> rows) {
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+		try {
+			db.delete(TABLE, null, null);
+			for (Row row : rows) {
+				insert(row);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Stage the restored commands, without changing the stored ones.
+	 * 
+	 * @param rows
+	 *            The restored command rows.
+	 * @return The staging, used to swap in the restored commands.
+	 */
+	public RestoreStaging stageRestore(Collection<Row> rows) {
+		List<ContentValues> values = new ArrayList<ContentValues>(rows.size());
+		for (Row row : rows) {
+			ContentValues value = new ContentValues();
+			value.put(COLUMN_NAME, row.name);
+			value.put(COLUMN_COMMAND, row.text);
+			value.put(COLUMN_DESCRIPTION, row.description);
+			value.put(COLUMN_PARAMS, row.layout);
+			values.add(value);
+		}
+		restoreStaging.stage(values);
+		return restoreStaging;
+	}
+
+	private void bindCommand(SQLiteStatement statement, Row row) {
+		statement.bindString(1, row.name);
+		statement.bindString(2, row.text);
+		bindText(statement, 3, row.description);
+		bindText(statement, 4, row.layout);
+	}
+
+	private void bindText(SQLiteStatement statement, int index, String value) {
+		if (value != null) {
+			statement.bindString(index, value);
+		} else {
+			statement.bindNull(index);
+		}
+	}
+
+	private SQLiteStatement getInsertStatement() {
+		if (insertStatement == null) {
+			insertStatement = getWritableDatabase().compileStatement(
+					"INSERT INTO " + TABLE + " (" + COLUMN_NAME + ", "
+							+ COLUMN_COMMAND + ", " + COLUMN_DESCRIPTION + ", "
+							+ COLUMN_PARAMS + ") VALUES (?, ?, ?, ?)");
+		}
+		return insertStatement;
+	}
+
+	private SQLiteStatement getUpdateStatement() {
+		if (updateStatement == null) {
+			updateStatement = getWritableDatabase().compileStatement(
+					"UPDATE " + TABLE + " SET " + COLUMN_NAME + " = ?, "
+							+ COLUMN_COMMAND + " = ?, " + COLUMN_DESCRIPTION
+							+ " = ?, " + COLUMN_PARAMS + " = ? WHERE "
+							+ COLUMN_ID + " = ?");
+		}
+		return updateStatement;
+	}
+
+	private SQLiteStatement getDeleteStatement() {
+		if (deleteStatement == null) {
+			deleteStatement = getWritableDatabase().compileStatement(
+					"DELETE FROM " + TABLE + " WHERE " + COLUMN_ID + " = ?");
+		}
+		return deleteStatement;
+	}
+}
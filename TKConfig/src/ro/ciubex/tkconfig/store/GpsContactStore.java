@@ -0,0 +1,337 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ro.ciubex.tkconfig.models.Constants;
+import ro.ciubex.tkconfig.models.GpsContact;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * SQLite store for the GPS contacts. Each contact is a row, so a changed
+ * contact is written without rewriting the others. The contacts are written
+ * from immutable {@link Row} copies, taken on the main thread which owns the
+ * contacts, and the new row ids are returned to be set on the contacts by
+ * the main thread.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class GpsContactStore extends SQLiteOpenHelper {
+	private static final String DATABASE_NAME = "contacts.db";
+	private static final int DATABASE_VERSION = 1;
+
+	private static final String TABLE = "contacts";
+	private static final String COLUMN_ID = "_id";
+	private static final String COLUMN_NAME = "name";
+	private static final String COLUMN_PHONE = "phone";
+	private static final String COLUMN_PASSWORD = "password";
+	private static final String COLUMN_SELECTED = "selected";
+	private static final String COLUMN_MODEL = "model";
+
+	private SQLiteStatement insertStatement;
+	private SQLiteStatement updateStatement;
+	private SQLiteStatement deleteStatement;
+	/**
+	 * The row ids of the inserted contacts, used until the main thread set
+	 * the id on the contact, so a contact saved again or deleted meanwhile is
+	 * not inserted twice.
+	 */
+	private final Map<GpsContact, Long> insertedIds = new IdentityHashMap<GpsContact, Long>();
+	private final RestoreStaging restoreStaging = new RestoreStaging(this,
+			TABLE, COLUMN_NAME, COLUMN_PHONE, COLUMN_PASSWORD,
+			COLUMN_SELECTED, COLUMN_MODEL);
+
+	/**
+	 * Immutable copy of the stored columns of a contact, taken on the main
+	 * thread. The contact is kept only to identify the row, its fields are not
+	 * read on the persistence thread.
+	 */
+	public static final class Row {
+		private final GpsContact contact;
+		private final long id;
+		private final String name;
+		private final String phone;
+		private final String password;
+		private final boolean selected;
+		private final String model;
+
+		public Row(GpsContact contact) {
+			this.contact = contact;
+			this.id = contact.getId();
+			this.name = contact.getName();
+			this.phone = contact.getPhone();
+			this.password = contact.getPassword();
+			this.selected = contact.isSelected();
+			this.model = contact.getModel();
+		}
+
+		/**
+		 * Copy the stored columns of a list of contacts.
+		 * 
+		 * @param contacts
+		 *            The contacts to be copied.
+		 * @return The rows, in the same order.
+		 */
+		public static List<Row> of(Collection<GpsContact> contacts) {
+			List<Row> rows = new ArrayList<Row>(contacts.size());
+			for (GpsContact contact : contacts) {
+				rows.add(new Row(contact));
+			}
+			return rows;
+		}
+
+		public GpsContact getContact() {
+			return contact;
+		}
+	}
+
+	public GpsContactStore(Context context) {
+		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+	}
+
+	@Override
+	public void onCreate(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE " + TABLE + " (" + COLUMN_ID
+				+ " INTEGER PRIMARY KEY AUTOINCREMENT, " + COLUMN_NAME
+				+ " TEXT, " + COLUMN_PHONE + " TEXT, " + COLUMN_PASSWORD
+				+ " TEXT, " + COLUMN_SELECTED + " INTEGER NOT NULL DEFAULT 0, "
+				+ COLUMN_MODEL + " TEXT)");
+	}
+
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+	}
+
+	/**
+	 * Load all the contacts, in the order they were added.
+	 * 
+	 * @return The contacts, with their row id and not modified.
+	 */
+	public List<GpsContact> loadAll() {
+		Cursor cursor = getReadableDatabase().query(TABLE,
+				new String[] { COLUMN_ID, COLUMN_NAME, COLUMN_PHONE,
+						COLUMN_PASSWORD, COLUMN_SELECTED, COLUMN_MODEL }, null,
+				null, null, null, COLUMN_ID);
+		List<GpsContact> result = new ArrayList<GpsContact>(cursor.getCount());
+		try {
+			while (cursor.moveToNext()) {
+				GpsContact contact = new GpsContact(getText(cursor, 1),
+						getText(cursor, 2), getText(cursor, 3),
+						cursor.getInt(4) != 0,
+						cursor.isNull(5) ? Constants.DEFAULT_TRACKER_MODEL
+								: cursor.getString(5));
+				contact.setId(cursor.getLong(0));
+				contact.setModified(false);
+				result.add(contact);
+			}
+		} finally {
+			cursor.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Insert a new contact or update a stored one.
+	 * 
+	 * @param row
+	 *            The contact row to be saved.
+	 * @return The row id of the contact.
+	 */
+	public synchronized long save(Row row) {
+		long id = getRowId(row);
+		if (id > 0) {
+			if (updateStatement == null) {
+				updateStatement = getWritableDatabase().compileStatement(
+						"UPDATE " + TABLE + " SET " + COLUMN_NAME + " = ?, "
+								+ COLUMN_PHONE + " = ?, " + COLUMN_PASSWORD
+								+ " = ?, " + COLUMN_SELECTED + " = ?, "
+								+ COLUMN_MODEL + " = ? WHERE " + COLUMN_ID
+								+ " = ?");
+			}
+			bindContact(updateStatement, row);
+			updateStatement.bindLong(6, id);
+			updateStatement.execute();
+		} else {
+			id = insert(row);
+			insertedIds.put(row.contact, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Save the contacts in a single transaction.
+	 * 
+	 * @param rows
+	 *            The contact rows to be saved.
+	 * @return The row ids, in the order of the rows.
+	 */
+	public synchronized long[] saveAll(Collection<Row> rows) {
+		long[] ids = new long[rows.size()];
+		List<GpsContact> inserted = new ArrayList<GpsContact>();
+		boolean successful = false;
+		int i = 0;
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+		try {
+			for (Row row : rows) {
+				if (getRowId(row) == 0) {
+					inserted.add(row.contact);
+				}
+				ids[i++] = save(row);
+			}
+			db.setTransactionSuccessful();
+			successful = true;
+		} finally {
+			db.endTransaction();
+			if (!successful) {
+				// the inserted rows were rolled back
+				for (GpsContact contact : inserted) {
+					insertedIds.remove(contact);
+				}
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Delete a contact.
+	 * 
+	 * @param row
+	 *            The row of the contact to be deleted.
+	 */
+	public synchronized void delete(Row row) {
+		long id = getRowId(row);
+		insertedIds.remove(row.contact);
+		if (id > 0) {
+			if (deleteStatement == null) {
+				deleteStatement = getWritableDatabase().compileStatement(
+						"DELETE FROM " + TABLE + " WHERE " + COLUMN_ID
+								+ " = ?");
+			}
+			deleteStatement.bindLong(1, id);
+			deleteStatement.execute();
+		}
+	}
+
+	/**
+	 * Count the stored contacts.
+	 * 
+	 * @return The number of stored contacts.
+	 */
+	public int count() {
+		return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(),
+				TABLE);
+	}
+
+	/**
+	 * Delete all the stored contacts.
+	 */
+	public synchronized void deleteAll() {
+		getWritableDatabase().delete(TABLE, null, null);
+		insertedIds.clear();
+	}
+
+	/**
+	 * Stage the restored contacts, without changing the stored ones.
+	 * 
+	 * @param rows
+	 *            The restored contact rows.
+	 * @return The staging, used to swap in the restored contacts.
+	 */
+	public synchronized RestoreStaging stageRestore(Collection<Row> rows) {
+		List<ContentValues> values = new ArrayList<ContentValues>(rows.size());
+		for (Row row : rows) {
+			ContentValues value = new ContentValues();
+			value.put(COLUMN_NAME, row.name);
+			value.put(COLUMN_PHONE, row.phone);
+			value.put(COLUMN_PASSWORD, row.password);
+			value.put(COLUMN_SELECTED, row.selected ? 1 : 0);
+			value.put(COLUMN_MODEL, row.model);
+			values.add(value);
+		}
+		restoreStaging.stage(values);
+		return restoreStaging;
+	}
+
+	/**
+	 * Obtain the row id of a contact row: the id copied from the contact or,
+	 * if the main thread did not set it yet, the id of the insert.
+	 */
+	private long getRowId(Row row) {
+		if (row.id > 0) {
+			insertedIds.remove(row.contact);
+			return row.id;
+		}
+		Long id = insertedIds.get(row.contact);
+		return id != null ? id : 0;
+	}
+
+	/**
+	 * Insert a contact row, for a contact which is not owned by the main
+	 * thread, like a contact moved from the older versions preferences.
+	 * 
+	 * @param row
+	 *            The contact row to be inserted.
+	 * @return The new row id.
+	 */
+	public synchronized long insert(Row row) {
+		if (insertStatement == null) {
+			insertStatement = getWritableDatabase().compileStatement(
+					"INSERT INTO " + TABLE + " (" + COLUMN_NAME + ", "
+							+ COLUMN_PHONE + ", " + COLUMN_PASSWORD + ", "
+							+ COLUMN_SELECTED + ", " + COLUMN_MODEL
+							+ ") VALUES (?, ?, ?, ?, ?)");
+		}
+		bindContact(insertStatement, row);
+		return insertStatement.executeInsert();
+	}
+
+	private void bindContact(SQLiteStatement statement, Row row) {
+		bindText(statement, 1, row.name);
+		bindText(statement, 2, row.phone);
+		bindText(statement, 3, row.password);
+		statement.bindLong(4, row.selected ? 1 : 0);
+		bindText(statement, 5, row.model);
+	}
+
+	private void bindText(SQLiteStatement statement, int index, String value) {
+		if (value != null) {
+			statement.bindString(index, value);
+		} else {
+			statement.bindNull(index);
+		}
+	}
+
+	private String getText(Cursor cursor, int index) {
+		return cursor.isNull(index) ? "" : cursor.getString(index);
+	}
+}
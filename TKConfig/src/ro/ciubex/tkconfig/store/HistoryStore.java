@@ -0,0 +1,545 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ro.ciubex.tkconfig.models.History;
+import ro.ciubex.tkconfig.models.HistoryRetention;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * SQLite store for the history of the sent SMS. The history is append only: a
+ * sent SMS is one inserted row, without rewriting the older events, and an
+ * event is deleted by its row id. The events are bounded by a
+ * {@link HistoryRetention} policy, applied on a background thread.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class HistoryStore extends SQLiteOpenHelper {
+	private static final String DATABASE_NAME = "history.db";
+	private static final int DATABASE_VERSION = 2;
+
+	private static final String TABLE = "history";
+	private static final String COLUMN_ID = "_id";
+	private static final String COLUMN_DATE_TIME = "date_time";
+	private static final String COLUMN_PHONE = "phone";
+	private static final String COLUMN_COMMAND = "command";
+	private static final String STAGING_TABLE = "history_legacy";
+
+	private final RestoreStaging restoreStaging = new RestoreStaging(this,
+			TABLE, COLUMN_DATE_TIME, COLUMN_PHONE, COLUMN_COMMAND);
+
+	private SQLiteStatement appendStatement;
+	private SQLiteStatement deleteStatement;
+
+	/**
+	 * The number of history events deleted by an eviction.
+	 */
+	public static class Eviction {
+		public int byAge;
+		public int byTracker;
+		public int byEntries;
+		public boolean compacted;
+
+		public int total() {
+			return byAge + byTracker + byEntries;
+		}
+	}
+
+	public HistoryStore(Context context) {
+		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+	}
+
+	@Override
+	public void onCreate(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE " + TABLE + " (" + COLUMN_ID
+				+ " INTEGER PRIMARY KEY AUTOINCREMENT, " + COLUMN_DATE_TIME
+				+ " INTEGER NOT NULL, " + COLUMN_PHONE + " TEXT, "
+				+ COLUMN_COMMAND + " TEXT)");
+		db.execSQL("CREATE INDEX " + TABLE + "_" + COLUMN_DATE_TIME + " ON "
+				+ TABLE + " (" + COLUMN_DATE_TIME + ")");
+		createPhoneIndex(db);
+	}
+
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		if (oldVersion < 2) {
+			createPhoneIndex(db);
+		}
+	}
+
+	/**
+	 * Index used by the per tracker eviction.
+	 */
+	private void createPhoneIndex(SQLiteDatabase db) {
+		db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_" + COLUMN_PHONE
+				+ " ON " + TABLE + " (" + COLUMN_PHONE + ", " + COLUMN_ID
+				+ ")");
+	}
+
+	/**
+	 * Load all the history events, in the order they were added.
+	 * 
+	 * @return The history events, with their row id.
+	 */
+	public List<History> loadAll() {
+		return load(null, null, COLUMN_ID, null);
+	}
+
+	/**
+	 * Load a page of history events, the newest first, by its position. Used
+	 * only to seek after a jump, the following pages are loaded with
+	 * {@link #loadBefore(long, int)}. The offset rows are skipped on the row
+	 * id index, without being read.
+	 * 
+	 * @param offset
+	 *            The number of newer events to skip.
+	 * @param limit
+	 *            The maximum number of loaded events.
+	 * @return The history events, with their row id.
+	 */
+	public List<History> loadNewest(int offset, int limit) {
+		return load(null, null, COLUMN_ID + " DESC", offset + "," + limit);
+	}
+
+	/**
+	 * Load a page of history events, the newest first. The page is found by
+	 * the row id of the last event from the previous page, so the newer events
+	 * are not read again.
+	 * 
+	 * @param beforeId
+	 *            The row id of the last event from the previous page,
+	 *            Long.MAX_VALUE for the first page.
+	 * @param limit
+	 *            The maximum number of loaded events.
+	 * @return The history events, with their row id.
+	 */
+	public List<History> loadBefore(long beforeId, int limit) {
+		return load(COLUMN_ID + " < ?",
+				new String[] { String.valueOf(beforeId) }, COLUMN_ID + " DESC",
+				String.valueOf(limit));
+	}
+
+	/**
+	 * Load a page of history events, in the order they were added, used to
+	 * read all the events without keeping them in memory.
+	 * 
+	 * @param afterId
+	 *            The row id of the last event from the previous page, 0 for
+	 *            the first page.
+	 * @param limit
+	 *            The maximum number of loaded events.
+	 * @return The history events, with their row id.
+	 */
+	public List<History> loadAfter(long afterId, int limit) {
+		return load(COLUMN_ID + " > ?", new String[] { String.valueOf(afterId) },
+				COLUMN_ID, String.valueOf(limit));
+	}
+
+	private List<History> load(String selection, String[] selectionArgs,
+			String orderBy, String limit) {
+		Cursor cursor = getReadableDatabase().query(TABLE,
+				new String[] { COLUMN_ID, COLUMN_DATE_TIME, COLUMN_PHONE,
+						COLUMN_COMMAND }, selection, selectionArgs, null, null,
+				orderBy, limit);
+		List<History> result = new ArrayList<History>(cursor.getCount());
+		try {
+			while (cursor.moveToNext()) {
+				History history = new History(cursor.getLong(1),
+						cursor.isNull(2) ? "" : cursor.getString(2),
+						cursor.isNull(3) ? "" : cursor.getString(3));
+				history.setId(cursor.getLong(0));
+				result.add(history);
+			}
+		} finally {
+			cursor.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Count the history events.
+	 * 
+	 * @return The number of history events.
+	 */
+	public int count() {
+		return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(),
+				TABLE);
+	}
+
+	/**
+	 * Count the history events added after an event.
+	 * 
+	 * @param afterId
+	 *            The row id of the event after which the events are counted.
+	 * @return The number of events with a greater row id.
+	 */
+	public int countAfter(long afterId) {
+		return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(),
+				TABLE, COLUMN_ID + " > ?",
+				new String[] { String.valueOf(afterId) });
+	}
+
+	/**
+	 * Count the history events added up to an event. The row ids are not
+	 * reused, so this number decreases only when older events are deleted.
+	 * 
+	 * @param lastId
+	 *            The row id of the last counted event.
+	 * @return The number of events with a lower or equal row id.
+	 */
+	public int countUpTo(long lastId) {
+		return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(),
+				TABLE, COLUMN_ID + " <= ?",
+				new String[] { String.valueOf(lastId) });
+	}
+
+	/**
+	 * Append an history event and set its row id.
+	 * 
+	 * @param history
+	 *            The history event to be added.
+	 */
+	public synchronized void append(History history) {
+		if (appendStatement == null) {
+			appendStatement = getWritableDatabase().compileStatement(
+					"INSERT INTO " + TABLE + " (" + COLUMN_DATE_TIME + ", "
+							+ COLUMN_PHONE + ", " + COLUMN_COMMAND
+							+ ") VALUES (?, ?, ?)");
+		}
+		appendStatement.bindLong(1, history.getDateTime());
+		bindText(appendStatement, 2, history.getPhoneNumber());
+		bindText(appendStatement, 3, history.getSmsCommand());
+		history.setId(appendStatement.executeInsert());
+	}
+
+	/**
+	 * Append the history events in a single transaction.
+	 * 
+	 * @param histories
+	 *            The history events to be added.
+	 */
+	public synchronized void appendAll(Collection<History> histories) {
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+		try {
+			for (History history : histories) {
+				append(history);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Delete an history event.
+	 * 
+	 * @param history
+	 *            The history event to be deleted.
+	 */
+	public synchronized void delete(History history) {
+		if (history.getId() > 0) {
+			if (deleteStatement == null) {
+				deleteStatement = getWritableDatabase().compileStatement(
+						"DELETE FROM " + TABLE + " WHERE " + COLUMN_ID
+								+ " = ?");
+			}
+			deleteStatement.bindLong(1, history.getId());
+			deleteStatement.execute();
+			history.setId(0);
+		}
+	}
+
+	/**
+	 * Delete all the history events.
+	 */
+	public synchronized void deleteAll() {
+		getWritableDatabase().delete(TABLE, null, null);
+	}
+
+	/**
+	 * Stage the restored history events, without changing the stored ones.
+	 * 
+	 * @param histories
+	 *            The restored history events.
+	 * @return The staging, used to swap in the restored events.
+	 */
+	public RestoreStaging stageRestore(Collection<History> histories) {
+		List<ContentValues> values = new ArrayList<ContentValues>(
+				histories.size());
+		for (History history : histories) {
+			values.add(toValues(history));
+		}
+		restoreStaging.stage(values);
+		return restoreStaging;
+	}
+
+	/**
+	 * Reserve the row ids of the legacy events before a new event is
+	 * appended, so the legacy events can be published below the events
+	 * appended while they are migrated. Only an empty store is changed.
+	 * 
+	 * @param count
+	 *            The number of legacy events.
+	 */
+	public synchronized void reserveIds(int count) {
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+		try {
+			if (DatabaseUtils.queryNumEntries(db, TABLE) == 0
+					&& getSequence(db) < count) {
+				setSequence(db, count);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Delete the staged legacy events. The staging methods are invoked by the
+	 * migration inside its own transaction, they are not synchronized on this
+	 * store and do not use the shared statements, so a writer waiting for the
+	 * database does not block the migration.
+	 */
+	public void clearStaged() {
+		getStagingDatabase().delete(STAGING_TABLE, null, null);
+	}
+
+	/**
+	 * Stage a legacy event, the events are published in the staging order.
+	 * 
+	 * @param history
+	 *            The legacy event.
+	 */
+	public void stage(History history) {
+		getStagingDatabase().insertOrThrow(STAGING_TABLE, null,
+				toValues(history));
+	}
+
+	/**
+	 * Count the staged legacy events.
+	 * 
+	 * @return The number of staged events.
+	 */
+	public int countStaged() {
+		return (int) DatabaseUtils.queryNumEntries(getStagingDatabase(),
+				STAGING_TABLE);
+	}
+
+	/**
+	 * Move the staged legacy events on the history, with row ids below the
+	 * stored events, which are older than any appended event. If the ids
+	 * were not reserved, the stored events are moved up to make room. This
+	 * should be invoked inside a transaction.
+	 */
+	public void publishStaged() {
+		SQLiteDatabase db = getStagingDatabase();
+		long staged = DatabaseUtils.queryNumEntries(db, STAGING_TABLE);
+		long first = DatabaseUtils.queryNumEntries(db, TABLE) > 0 ? DatabaseUtils
+				.longForQuery(db, "SELECT MIN(" + COLUMN_ID + ") FROM "
+						+ TABLE, null) : getSequence(db) + 1;
+		if (first - 1 < staged) {
+			long shift = staged - first + 1;
+			// two steps, so no row takes the id of another row
+			db.execSQL("UPDATE " + TABLE + " SET " + COLUMN_ID + " = -("
+					+ COLUMN_ID + " + " + shift + ")");
+			db.execSQL("UPDATE " + TABLE + " SET " + COLUMN_ID + " = -"
+					+ COLUMN_ID);
+			first += shift;
+			if (DatabaseUtils.queryNumEntries(db, TABLE) > 0) {
+				setSequence(db, Math.max(getSequence(db), DatabaseUtils
+						.longForQuery(db, "SELECT MAX(" + COLUMN_ID
+								+ ") FROM " + TABLE, null)));
+			}
+		}
+		// the staged ids are 1..staged, in the staging order
+		long base = first - staged - 1;
+		db.execSQL("INSERT INTO " + TABLE + " (" + COLUMN_ID + ", "
+				+ COLUMN_DATE_TIME + ", " + COLUMN_PHONE + ", "
+				+ COLUMN_COMMAND + ") SELECT " + COLUMN_ID + " + " + base
+				+ ", " + COLUMN_DATE_TIME + ", " + COLUMN_PHONE + ", "
+				+ COLUMN_COMMAND + " FROM " + STAGING_TABLE + " ORDER BY "
+				+ COLUMN_ID);
+		db.delete(STAGING_TABLE, null, null);
+	}
+
+	private ContentValues toValues(History history) {
+		ContentValues values = new ContentValues();
+		values.put(COLUMN_DATE_TIME, history.getDateTime());
+		values.put(COLUMN_PHONE, history.getPhoneNumber());
+		values.put(COLUMN_COMMAND, history.getSmsCommand());
+		return values;
+	}
+
+	/**
+	 * Open the database, creating the staging table if it does not exist.
+	 */
+	private SQLiteDatabase getStagingDatabase() {
+		SQLiteDatabase db = getWritableDatabase();
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + STAGING_TABLE + " ("
+				+ COLUMN_ID + " INTEGER PRIMARY KEY, " + COLUMN_DATE_TIME
+				+ " INTEGER NOT NULL, " + COLUMN_PHONE + " TEXT, "
+				+ COLUMN_COMMAND + " TEXT)");
+		return db;
+	}
+
+	/**
+	 * Obtain the last row id given by the AUTOINCREMENT, 0 if none was given.
+	 */
+	private long getSequence(SQLiteDatabase db) {
+		return DatabaseUtils.longForQuery(db,
+				"SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name = ?",
+				new String[] { TABLE });
+	}
+
+	/**
+	 * Change the last row id given by the AUTOINCREMENT, the next appended
+	 * event takes the following id.
+	 */
+	private void setSequence(SQLiteDatabase db, long sequence) {
+		db.execSQL("DELETE FROM sqlite_sequence WHERE name = ?",
+				new Object[] { TABLE });
+		db.execSQL("INSERT INTO sqlite_sequence (name, seq) VALUES (?, ?)",
+				new Object[] { TABLE, sequence });
+	}
+
+	/**
+	 * Delete the history events evicted by the retention policy, in a single
+	 * transaction, and compact the database file if the deleted rows left
+	 * too many free pages.
+	 * 
+	 * @param retention
+	 *            The retention policy.
+	 * @param now
+	 *            The current time, in milliseconds.
+	 * @return The number of deleted events.
+	 */
+	public synchronized Eviction evict(HistoryRetention retention, long now) {
+		Eviction eviction = new Eviction();
+		if (retention.isUnbounded()) {
+			return eviction;
+		}
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+		try {
+			if (retention.getMaxAgeDays() > 0) {
+				eviction.byAge = db.delete(TABLE, COLUMN_DATE_TIME + " < ?",
+						new String[] { String.valueOf(retention.getCutoff(now)) });
+			}
+			if (retention.getMaxPerTracker() > 0) {
+				eviction.byTracker = evictPerTracker(db,
+						retention.getMaxPerTracker());
+			}
+			if (retention.getMaxEntries() > 0) {
+				eviction.byEntries = db.delete(TABLE, COLUMN_ID
+						+ " <= (SELECT " + COLUMN_ID + " FROM " + TABLE
+						+ " ORDER BY " + COLUMN_ID + " DESC LIMIT 1 OFFSET ?)",
+						new String[] { String.valueOf(retention
+								.getMaxEntries()) });
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		if (eviction.total() > 0) {
+			eviction.compacted = compact(db);
+		}
+		return eviction;
+	}
+
+	/**
+	 * Keep only the newest events of each tracker.
+	 */
+	private int evictPerTracker(SQLiteDatabase db, int maxPerTracker) {
+		String limit = String.valueOf(maxPerTracker);
+		Cursor cursor = db.query(TABLE, new String[] { COLUMN_PHONE },
+				COLUMN_PHONE + " IS NOT NULL", null, COLUMN_PHONE, "COUNT(*) > "
+						+ limit, null);
+		List<String> phones = new ArrayList<String>(cursor.getCount());
+		try {
+			while (cursor.moveToNext()) {
+				phones.add(cursor.getString(0));
+			}
+		} finally {
+			cursor.close();
+		}
+		int deleted = 0;
+		for (String phone : phones) {
+			deleted += db.delete(TABLE, COLUMN_PHONE + " = ? AND " + COLUMN_ID
+					+ " <= (SELECT " + COLUMN_ID + " FROM " + TABLE
+					+ " WHERE " + COLUMN_PHONE + " = ? ORDER BY " + COLUMN_ID
+					+ " DESC LIMIT 1 OFFSET ?)", new String[] { phone, phone,
+					limit });
+		}
+		return deleted;
+	}
+
+	/**
+	 * Rebuild the database file when at least a quarter of its pages are
+	 * free.
+	 * 
+	 * @return True if the database was compacted.
+	 */
+	private boolean compact(SQLiteDatabase db) {
+		long free = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count",
+				null);
+		long pages = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+		if (free > 0 && free * 4 >= pages) {
+			releaseStatements();
+			db.execSQL("VACUUM");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Close the compiled statements, which should not be kept over a VACUUM.
+	 */
+	private void releaseStatements() {
+		if (appendStatement != null) {
+			appendStatement.close();
+			appendStatement = null;
+		}
+		if (deleteStatement != null) {
+			deleteStatement.close();
+			deleteStatement = null;
+		}
+	}
+
+	private void bindText(SQLiteStatement statement, int index, String value) {
+		if (value != null) {
+			statement.bindString(index, value);
+		} else {
+			statement.bindNull(index);
+		}
+	}
+}
@@ -0,0 +1,341 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+/**
+ * Migration of the data saved by the older versions on the application
+ * preferences, with one key per field, to the SQLite stores. A dataset is
+ * staged in chunks, each chunk in a single transaction together with the
+ * migration checkpoint, so an interrupted migration is resumed from the last
+ * chunk. When all the records are staged, their number is verified and they
+ * are published on the store in a single transaction, which marks the
+ * checkpoint as published. The legacy keys are removed after that, and only
+ * then the checkpoint, so an interruption never publishes a dataset twice.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class LegacyMigration {
+	private final static String TAG = LegacyMigration.class.getName();
+	public static final int CHUNK_SIZE = 500;
+
+	private static final String TABLE = "legacy_migration";
+	private static final String COLUMN_DATASET = "dataset";
+	private static final String COLUMN_NEXT = "next";
+	private static final String COLUMN_TOTAL = "total";
+	/** The checkpoint of a dataset published but with the legacy keys. */
+	private static final int PUBLISHED = -1;
+
+	/**
+	 * A legacy dataset and the store where it is moved.
+	 * 
+	 * @param <T>
+	 *            The record type.
+	 */
+	public static abstract class Dataset<T> {
+		private final String name;
+		private final SQLiteOpenHelper store;
+
+		public Dataset(String name, SQLiteOpenHelper store) {
+			this.name = name;
+			this.store = store;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Obtain the number of legacy records.
+		 * 
+		 * @param prefs
+		 *            The application preferences.
+		 * @return The number of records to be moved, 0 if there are none.
+		 */
+		protected abstract int legacyCount(SharedPreferences prefs);
+
+		/**
+		 * Read a legacy record.
+		 * 
+		 * @param prefs
+		 *            The application preferences.
+		 * @param index
+		 *            The record index.
+		 * @return The record.
+		 */
+		protected abstract T read(SharedPreferences prefs, int index);
+
+		/**
+		 * Check if a preferences key belongs to this legacy dataset.
+		 * 
+		 * @param key
+		 *            The preferences key.
+		 * @return True if the key should be removed after the migration.
+		 */
+		protected abstract boolean isLegacyKey(String key);
+
+		/**
+		 * Delete the staged records, before the first chunk is staged. A
+		 * dataset which is not written by the application while it is
+		 * migrated can stage the records directly on its store, and then
+		 * this deletes the stored records.
+		 */
+		protected abstract void clear();
+
+		/**
+		 * Stage a record, invoked inside the chunk transaction.
+		 * 
+		 * @param record
+		 *            The record to be staged.
+		 */
+		protected abstract void insert(T record);
+
+		/**
+		 * Count the staged records.
+		 * 
+		 * @return The number of staged records.
+		 */
+		protected abstract int stagedCount();
+
+		/**
+		 * Move the staged records on the store, invoked inside the
+		 * transaction which marks the dataset as published. Nothing is done
+		 * for a dataset staged directly on its store.
+		 */
+		protected void publish() {
+		}
+
+		/**
+		 * Prepare the store for a pending migration, before the application
+		 * writes on it. Nothing is done by default.
+		 * 
+		 * @param count
+		 *            The number of legacy records.
+		 */
+		protected void reserve(int count) {
+		}
+	}
+
+	private final SharedPreferences prefs;
+
+	public LegacyMigration(SharedPreferences prefs) {
+		this.prefs = prefs;
+	}
+
+	/**
+	 * Check if a dataset has legacy records to be moved.
+	 * 
+	 * @param dataset
+	 *            The dataset.
+	 * @return True if the dataset should be migrated.
+	 */
+	public boolean isPending(Dataset<?> dataset) {
+		return dataset.legacyCount(prefs) > 0;
+	}
+
+	/**
+	 * Prepare the store of a dataset with a pending migration. This should be
+	 * invoked before the application writes on the store, for example as the
+	 * first write of the persistence queue.
+	 * 
+	 * @param dataset
+	 *            The dataset.
+	 */
+	public synchronized void reserve(Dataset<?> dataset) {
+		int total = dataset.legacyCount(prefs);
+		if (total > 0) {
+			dataset.reserve(total);
+		}
+	}
+
+	/**
+	 * Move the whole dataset on the calling thread.
+	 * 
+	 * @param dataset
+	 *            The dataset.
+	 * @return True if the dataset was moved and the legacy keys removed.
+	 */
+	public boolean migrate(Dataset<?> dataset) {
+		boolean finished = false;
+		while (!finished) {
+			finished = step(dataset);
+		}
+		return !isPending(dataset);
+	}
+
+	/**
+	 * Stage the next chunk of a dataset, resuming from the saved checkpoint.
+	 * After the last chunk the staged records are verified and published, and
+	 * the legacy keys are removed.
+	 * 
+	 * @param dataset
+	 *            The dataset.
+	 * @return True if the migration of this dataset is finished.
+	 */
+	public synchronized <T> boolean step(Dataset<T> dataset) {
+		int total = dataset.legacyCount(prefs);
+		if (total < 1) {
+			return true;
+		}
+		SQLiteDatabase db = getDatabase(dataset);
+		int next = readCheckpoint(db, dataset.name, total);
+		if (next == PUBLISHED) {
+			removeLegacyKeys(db, dataset);
+			return true;
+		}
+		if (next < total) {
+			int end = Math.min(next + CHUNK_SIZE, total);
+			List<T> chunk = new ArrayList<T>(end - next);
+			for (int i = next; i < end; i++) {
+				chunk.add(dataset.read(prefs, i));
+			}
+			db.beginTransaction();
+			try {
+				if (next == 0) {
+					dataset.clear();
+				}
+				for (T record : chunk) {
+					dataset.insert(record);
+				}
+				writeCheckpoint(db, dataset.name, end, total);
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+			if (end < total) {
+				return false;
+			}
+		}
+		if (publish(db, dataset, total)) {
+			removeLegacyKeys(db, dataset);
+		}
+		return true;
+	}
+
+	/**
+	 * Verify the number of staged records and publish them. If the number is
+	 * wrong the checkpoint is removed, so the next migration stages the
+	 * dataset again, and the legacy records are kept.
+	 * 
+	 * @return True if the dataset was published.
+	 */
+	private boolean publish(SQLiteDatabase db, Dataset<?> dataset, int total) {
+		boolean published = false;
+		db.beginTransaction();
+		try {
+			int staged = dataset.stagedCount();
+			if (staged == total) {
+				dataset.publish();
+				writeCheckpoint(db, dataset.name, PUBLISHED, total);
+				published = true;
+			} else {
+				Log.e(TAG, "publish: " + dataset.name + " has " + staged
+						+ " staged records, expected " + total
+						+ ", the legacy records are kept");
+				db.delete(TABLE, COLUMN_DATASET + " = ?",
+						new String[] { dataset.name });
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return published;
+	}
+
+	/**
+	 * Remove the legacy keys of a published dataset and then its checkpoint.
+	 */
+	private void removeLegacyKeys(SQLiteDatabase db, Dataset<?> dataset) {
+		SharedPreferences.Editor editor = prefs.edit();
+		for (String key : prefs.getAll().keySet()) {
+			if (dataset.isLegacyKey(key)) {
+				editor.remove(key);
+			}
+		}
+		if (editor.commit()) {
+			db.delete(TABLE, COLUMN_DATASET + " = ?",
+					new String[] { dataset.name });
+		} else {
+			Log.e(TAG, "removeLegacyKeys: the legacy " + dataset.name
+					+ " keys were not removed");
+		}
+	}
+
+	/**
+	 * Open the store database of a dataset, creating the checkpoints table if
+	 * it does not exist.
+	 */
+	private SQLiteDatabase getDatabase(Dataset<?> dataset) {
+		SQLiteDatabase db = dataset.store.getWritableDatabase();
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+				+ COLUMN_DATASET + " TEXT PRIMARY KEY, " + COLUMN_NEXT
+				+ " INTEGER NOT NULL, " + COLUMN_TOTAL + " INTEGER NOT NULL)");
+		return db;
+	}
+
+	/**
+	 * Obtain the index of the next record to be staged, or PUBLISHED. The
+	 * checkpoint is ignored if the legacy records count was changed, for
+	 * example by a restore.
+	 */
+	private int readCheckpoint(SQLiteDatabase db, String name, int total) {
+		Cursor cursor = db.query(TABLE, new String[] { COLUMN_NEXT,
+				COLUMN_TOTAL }, COLUMN_DATASET + " = ?", new String[] { name },
+				null, null, null);
+		try {
+			if (cursor.moveToFirst() && cursor.getInt(1) == total) {
+				return cursor.getInt(0);
+			}
+		} finally {
+			cursor.close();
+		}
+		return 0;
+	}
+
+	private void writeCheckpoint(SQLiteDatabase db, String name, int next,
+			int total) {
+		ContentValues values = new ContentValues();
+		values.put(COLUMN_DATASET, name);
+		values.put(COLUMN_NEXT, next);
+		values.put(COLUMN_TOTAL, total);
+		db.replace(TABLE, null, values);
+	}
+
+	/**
+	 * Forget the checkpoint of a dataset, used when the legacy records were
+	 * replaced by a restore.
+	 * 
+	 * @param dataset
+	 *            The dataset.
+	 */
+	public synchronized void restart(Dataset<?> dataset) {
+		getDatabase(dataset).delete(TABLE, COLUMN_DATASET + " = ?",
+				new String[] { dataset.name });
+	}
+}
@@ -0,0 +1,291 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.store;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import ro.ciubex.tkconfig.models.Command;
+import ro.ciubex.tkconfig.models.Constants;
+import ro.ciubex.tkconfig.models.GpsContact;
+
+import android.content.SharedPreferences;
+
+/**
+ * Store for the command parameter values. The values are kept in memory and
+ * saved on the application preferences under the "parameter." keys namespace,
+ * so a parameter name can not overwrite an application setting. The changes
+ * are collected and written together by the {@link PersistenceQueue}.
+ * 
+ * A value can be saved globally, for a command or for a tracker. When a value
+ * is read, the tracker value is used first, then the command value and then
+ * the global value. The command values are kept by the command id, a command
+ * not yet stored uses the global values.
+ * 
+ * The values saved by the older versions, under the parameter name keys, are
+ * copied once on the global scope by {@link #migrateLegacy(Collection)}.
+ * 
+ * This class should be used only from the main thread, the pending changes
+ * are taken by the persistence writer thread.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class ParameterStore {
+	private static final String PREFIX = "parameter.";
+	private static final String COMMAND_PREFIX = PREFIX + "command.";
+	private static final String TRACKER_PREFIX = PREFIX + "tracker.";
+	private static final String DATASET = "parameters";
+	private static final String KEY_LEGACY_MIGRATED = PREFIX + "legacyMigrated";
+
+	/**
+	 * Check if a preferences key is used by a parameter value.
+	 * 
+	 * @param key
+	 *            The preferences key.
+	 * @return True if the key belongs to the parameters namespace.
+	 */
+	public static boolean isParameterKey(String key) {
+		return key.startsWith(PREFIX);
+	}
+
+	/**
+	 * Define the parameter values scope.
+	 */
+	public enum Scope {
+		GLOBAL, COMMAND, TRACKER;
+
+		/**
+		 * Obtain the scope from a preference value.
+		 * 
+		 * @param value
+		 *            The preference value: global, command or tracker.
+		 * @return The scope, GLOBAL for an unknown value.
+		 */
+		public static Scope fromValue(String value) {
+			if ("command".equals(value)) {
+				return COMMAND;
+			}
+			if ("tracker".equals(value)) {
+				return TRACKER;
+			}
+			return GLOBAL;
+		}
+	}
+
+	private SharedPreferences preferences;
+	private PersistenceQueue queue;
+	private Map<String, String> values;
+	private boolean legacyMigrated;
+	private final Map<String, String> pending;
+	private final PersistenceQueue.Write pendingWrite = new PersistenceQueue.Write() {
+		@Override
+		public void write(SharedPreferences.Editor editor) {
+			synchronized (pending) {
+				for (Map.Entry<String, String> entry : pending.entrySet()) {
+					if (entry.getValue() != null) {
+						editor.putString(entry.getKey(), entry.getValue());
+					} else {
+						editor.remove(entry.getKey());
+					}
+				}
+				pending.clear();
+			}
+		}
+	};
+
+	public ParameterStore(SharedPreferences preferences, PersistenceQueue queue) {
+		this.preferences = preferences;
+		this.queue = queue;
+		this.pending = new HashMap<String, String>();
+	}
+
+	/**
+	 * Obtain a parameter value, searching for the tracker, the command and the
+	 * global value.
+	 * 
+	 * @param command
+	 *            The command of the parameter.
+	 * @param tracker
+	 *            The tracker for which is prepared the command, or null.
+	 * @param name
+	 *            The parameter name.
+	 * @return The parameter value, or the parameter name if there is no value.
+	 */
+	public String get(Command command, GpsContact tracker, String name) {
+		Map<String, String> map = getValues();
+		String value = null;
+		if (tracker != null) {
+			value = map.get(trackerKey(tracker, name));
+		}
+		if (value == null && command != null && command.getId() > 0) {
+			value = map.get(commandKey(command, name));
+		}
+		if (value == null) {
+			value = map.get(PREFIX + name);
+		}
+		return value != null ? value : name;
+	}
+
+	/**
+	 * Save a parameter value on the specified scope. The value is written in
+	 * background.
+	 * 
+	 * @param scope
+	 *            The scope of the value. If the tracker is not specified the
+	 *            TRACKER scope is saved as GLOBAL, the same for the COMMAND
+	 *            scope of a command not yet stored.
+	 * @param command
+	 *            The command of the parameter.
+	 * @param tracker
+	 *            The tracker for which is prepared the command, or null.
+	 * @param name
+	 *            The parameter name.
+	 * @param value
+	 *            The parameter value.
+	 */
+	public void put(Scope scope, Command command, GpsContact tracker,
+			String name, String value) {
+		String key;
+		if (scope == Scope.TRACKER && tracker != null) {
+			key = trackerKey(tracker, name);
+		} else if (scope == Scope.COMMAND && command != null
+				&& command.getId() > 0) {
+			key = commandKey(command, name);
+		} else {
+			key = PREFIX + name;
+		}
+		if (!value.equals(getValues().put(key, value))) {
+			schedule(key, value);
+		}
+	}
+
+	/**
+	 * Remove the values saved for a deleted command.
+	 * 
+	 * @param command
+	 *            The deleted command.
+	 */
+	public void remove(Command command) {
+		if (command.getId() > 0) {
+			String prefix = COMMAND_PREFIX + command.getId() + ".";
+			Iterator<String> keys = getValues().keySet().iterator();
+			while (keys.hasNext()) {
+				String key = keys.next();
+				if (key.startsWith(prefix)) {
+					keys.remove();
+					schedule(key, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copy the values saved by the older versions, where the parameter name
+	 * was used as preference key, on the global scope. Only the parameters of
+	 * the specified commands are copied and only once, so a parameter of a
+	 * command added later can not read an application setting.
+	 * 
+	 * @param commands
+	 *            The commands loaded at the application start.
+	 */
+	public void migrateLegacy(Collection<Command> commands) {
+		if (legacyMigrated
+				|| preferences.getBoolean(KEY_LEGACY_MIGRATED, false)) {
+			return;
+		}
+		legacyMigrated = true;
+		Map<String, String> map = getValues();
+		Map<String, ?> legacy = preferences.getAll();
+		for (Command command : commands) {
+			if (!command.hasParameters()) {
+				continue;
+			}
+			for (String name : command.getParameters()) {
+				String key = PREFIX + name;
+				if (Constants.PASSWORD.equals(name) || map.containsKey(key)) {
+					continue;
+				}
+				Object value = legacy.get(name);
+				if (value instanceof String) {
+					map.put(key, (String) value);
+					schedule(key, (String) value);
+				}
+			}
+		}
+		queue.enqueue(null, new PersistenceQueue.Write() {
+			@Override
+			public void write(SharedPreferences.Editor editor) {
+				editor.putBoolean(KEY_LEGACY_MIGRATED, true);
+			}
+		});
+	}
+
+	/**
+	 * Forget the cached values, to be read again from the preferences, for
+	 * example after a preferences restore. The changes not yet written are
+	 * dropped.
+	 */
+	public void reload() {
+		synchronized (pending) {
+			pending.clear();
+		}
+		values = null;
+		legacyMigrated = false;
+	}
+
+	/**
+	 * Obtain the cached values, read all of them on the first use.
+	 */
+	private Map<String, String> getValues() {
+		if (values == null) {
+			values = new HashMap<String, String>();
+			for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+				if (entry.getKey().startsWith(PREFIX)
+						&& entry.getValue() instanceof String) {
+					values.put(entry.getKey(), (String) entry.getValue());
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Add a changed value to be written with the next persistence batch, a
+	 * null value removes the key.
+	 */
+	private void schedule(String key, String value) {
+		synchronized (pending) {
+			pending.put(key, value);
+		}
+		queue.enqueue(DATASET, pendingWrite);
+	}
+
+	private static String commandKey(Command command, String name) {
+		return COMMAND_PREFIX + command.getId() + "." + name;
+	}
+
+	private static String trackerKey(GpsContact tracker, String name) {
+		return TRACKER_PREFIX
+				+ String.valueOf(tracker.getPhone()).replace(':', '_') + "."
+				+ name;
+	}
+}
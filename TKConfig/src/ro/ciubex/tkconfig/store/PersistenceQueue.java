@@ -0,0 +1,249 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.store;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Single writer used to persist the application data out of the main thread.
+ * The writes are queued with a dataset key and a write for the same dataset
+ * replaces the pending one, so only the last state is written. The pending
+ * writes are executed together, after a short delay, in the queue order. The
+ * consecutive preferences changes of a batch are written with a single commit,
+ * made before the next write to another store.
+ * 
+ * The {@link #flush(long)} method is a barrier used when the activities are
+ * paused, to wait for the pending writes, including a batch being written.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class PersistenceQueue {
+	private final static String TAG = PersistenceQueue.class.getName();
+	private static final long BATCH_DELAY = 250;
+
+	/**
+	 * A change of the application preferences.
+	 */
+	public interface Write {
+		public void write(SharedPreferences.Editor editor);
+	}
+
+	private final SharedPreferences preferences;
+	private final ScheduledExecutorService executor;
+	private final Map<Object, Object> pending;
+	private final List<Runnable> callbacks;
+	private final Handler handler;
+	private boolean scheduled;
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	public PersistenceQueue(SharedPreferences preferences) {
+		this.preferences = preferences;
+		this.pending = new LinkedHashMap<Object, Object>();
+		this.callbacks = new ArrayList<Runnable>();
+		this.handler = new Handler(Looper.getMainLooper());
+		this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, "TKConfig persistence");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Queue a change of the application preferences.
+	 * 
+	 * @param dataset
+	 *            The dataset key, or null if this write should not replace a
+	 *            pending one.
+	 * @param write
+	 *            The preferences change.
+	 */
+	public void enqueue(String dataset, Write write) {
+		add(dataset, write);
+	}
+
+	/**
+	 * Queue a write to another store, for example a database.
+	 * 
+	 * @param dataset
+	 *            The dataset key, or null if this write should not replace a
+	 *            pending one.
+	 * @param task
+	 *            The write to be executed.
+	 */
+	public void enqueue(String dataset, Runnable task) {
+		add(dataset, task);
+	}
+
+	/**
+	 * Add a write at the end of the queue, removing the pending write of the
+	 * same dataset.
+	 */
+	private synchronized void add(String dataset, Object write) {
+		Object key = dataset != null ? dataset : new Object();
+		pending.remove(key);
+		pending.put(key, write);
+		schedule();
+	}
+
+	/**
+	 * Run a callback on the main thread after the writes queued before it are
+	 * done, for example to reload a list from the database.
+	 * 
+	 * @param callback
+	 *            The callback to be invoked on the main thread.
+	 */
+	public synchronized void whenWritten(Runnable callback) {
+		callbacks.add(callback);
+		schedule();
+	}
+
+	private void schedule() {
+		if (!scheduled) {
+			scheduled = true;
+			executor.schedule(drainTask, BATCH_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Execute the pending writes without waiting for the batch delay, and wait
+	 * until they are done. The barrier is always queued on the writer thread,
+	 * after a batch which is being written.
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait, in milliseconds.
+	 * @return True if all the writes queued before this call are done.
+	 */
+	public boolean flush(long timeout) {
+		Future<?> barrier = executor.submit(drainTask);
+		try {
+			barrier.get(timeout, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException e) {
+			Log.w(TAG, "flush: pending writes not done after " + timeout
+					+ " ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Log.e(TAG, "flush: " + e.getMessage(), e);
+		}
+		return false;
+	}
+
+	/**
+	 * Execute a task on the writer thread, after the pending writes, and wait
+	 * for its result. The writes queued meanwhile are executed after it, so
+	 * the task is not interleaved with the queued writes.
+	 * 
+	 * @param task
+	 *            The task to be executed.
+	 * @return The task result.
+	 * @throws ExecutionException
+	 *             If the task failed, with the task exception as cause.
+	 */
+	public <T> T call(final Callable<T> task) throws InterruptedException,
+			ExecutionException {
+		return executor.submit(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				drain();
+				return task.call();
+			}
+		}).get();
+	}
+
+	/**
+	 * Execute on the writer thread all the pending writes.
+	 */
+	private void drain() {
+		List<Object> writes;
+		List<Runnable> done;
+		synchronized (this) {
+			scheduled = false;
+			if (pending.isEmpty() && callbacks.isEmpty()) {
+				return;
+			}
+			writes = new ArrayList<Object>(pending.values());
+			pending.clear();
+			done = new ArrayList<Runnable>(callbacks);
+			callbacks.clear();
+		}
+		SharedPreferences.Editor editor = null;
+		for (Object write : writes) {
+			try {
+				if (write instanceof Write) {
+					if (editor == null) {
+						editor = preferences.edit();
+					}
+					((Write) write).write(editor);
+				} else {
+					commit(editor);
+					editor = null;
+					((Runnable) write).run();
+				}
+			} catch (RuntimeException e) {
+				Log.e(TAG, "drain: " + e.getMessage(), e);
+			}
+		}
+		commit(editor);
+		for (Runnable callback : done) {
+			handler.post(callback);
+		}
+	}
+
+	/**
+	 * Commit the preferences changes queued before a write to another store.
+	 */
+	private static void commit(SharedPreferences.Editor editor) {
+		if (editor != null && !editor.commit()) {
+			Log.e(TAG, "drain: the preferences were not saved");
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.store;
+
+import java.util.List;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Restore of a store table, done in steps so a restore of more stores is
+ * either fully applied or not at all. The restored rows are first staged on
+ * a separate table, without changing the stored rows. Then the staged rows
+ * replace the stored ones, which are kept on another table until all the
+ * restored data was saved, so they can be put back if a later step failed.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class RestoreStaging {
+	private static final String COLUMN_ID = "_id";
+
+	private final SQLiteOpenHelper store;
+	private final String table;
+	private final String stagedTable;
+	private final String oldTable;
+	private final String columns;
+
+	/**
+	 * @param store
+	 *            The store which owns the table.
+	 * @param table
+	 *            The restored table, with an AUTOINCREMENT row id.
+	 * @param columns
+	 *            The restored columns, without the row id.
+	 */
+	RestoreStaging(SQLiteOpenHelper store, String table, String... columns) {
+		this.store = store;
+		this.table = table;
+		this.stagedTable = table + "_restore";
+		this.oldTable = table + "_restore_old";
+		StringBuilder sb = new StringBuilder();
+		for (String column : columns) {
+			sb.append(", ").append(column);
+		}
+		this.columns = sb.toString();
+	}
+
+	/**
+	 * Stage the restored rows, in a single transaction. The rows staged by a
+	 * previous restore are dropped.
+	 * 
+	 * @param rows
+	 *            The restored rows, in the order they should be stored.
+	 */
+	void stage(List<ContentValues> rows) {
+		synchronized (store) {
+			SQLiteDatabase db = getDatabase();
+			db.beginTransaction();
+			try {
+				db.delete(stagedTable, null, null);
+				for (ContentValues row : rows) {
+					db.insertOrThrow(stagedTable, null, row);
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+		}
+	}
+
+	/**
+	 * Replace the stored rows with the staged rows, in a single transaction.
+	 * The stored rows are kept until {@link #commit()} or put back by
+	 * {@link #revert()}. The staged rows take new row ids, in the staging
+	 * order, starting from the returned id.
+	 * 
+	 * @return The row id of the first restored row.
+	 */
+	public long swap() {
+		synchronized (store) {
+			SQLiteDatabase db = getDatabase();
+			db.beginTransaction();
+			try {
+				db.delete(oldTable, null, null);
+				db.execSQL("INSERT INTO " + oldTable + " (" + COLUMN_ID
+						+ columns + ") SELECT " + COLUMN_ID + columns
+						+ " FROM " + table);
+				db.delete(table, null, null);
+				long first = DatabaseUtils.longForQuery(db,
+						"SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence"
+								+ " WHERE name = ?", new String[] { table }) + 1;
+				// the staged ids are 1..n, in the staging order
+				db.execSQL("INSERT INTO " + table + " (" + COLUMN_ID
+						+ columns + ") SELECT " + COLUMN_ID + " + "
+						+ (first - 1) + columns + " FROM " + stagedTable
+						+ " ORDER BY " + COLUMN_ID);
+				db.delete(stagedTable, null, null);
+				db.setTransactionSuccessful();
+				return first;
+			} finally {
+				db.endTransaction();
+			}
+		}
+	}
+
+	/**
+	 * Put back the rows replaced by {@link #swap()}, in a single transaction.
+	 */
+	public void revert() {
+		synchronized (store) {
+			SQLiteDatabase db = getDatabase();
+			db.beginTransaction();
+			try {
+				db.delete(table, null, null);
+				db.execSQL("INSERT INTO " + table + " (" + COLUMN_ID
+						+ columns + ") SELECT " + COLUMN_ID + columns
+						+ " FROM " + oldTable);
+				db.delete(oldTable, null, null);
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+		}
+	}
+
+	/**
+	 * Drop the rows replaced by {@link #swap()}, after all the restored data
+	 * was saved.
+	 */
+	public void commit() {
+		synchronized (store) {
+			getDatabase().delete(oldTable, null, null);
+		}
+	}
+
+	/**
+	 * Drop the staged rows of a restore which was not applied.
+	 */
+	public void discard() {
+		synchronized (store) {
+			getDatabase().delete(stagedTable, null, null);
+		}
+	}
+
+	/**
+	 * Open the store database, creating the staging tables if they do not
+	 * exist.
+	 */
+	private SQLiteDatabase getDatabase() {
+		SQLiteDatabase db = store.getWritableDatabase();
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + stagedTable + " ("
+				+ COLUMN_ID + " INTEGER PRIMARY KEY" + columns + ")");
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + oldTable + " ("
+				+ COLUMN_ID + " INTEGER PRIMARY KEY" + columns + ")");
+		return db;
+	}
+}
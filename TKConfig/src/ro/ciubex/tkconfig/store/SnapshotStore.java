@@ -0,0 +1,150 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import ro.ciubex.tkconfig.models.StateSnapshot;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * File store of the application state snapshot. The snapshot is read with a
+ * single sequential read and it is replaced atomically: the new snapshot is
+ * written and synced on a temporary file, which is then renamed over the old
+ * one. A snapshot is invalidated before any change of the stores it is made
+ * from, so a stale snapshot is never read after a crash.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class SnapshotStore {
+	private final static String TAG = SnapshotStore.class.getName();
+	private static final String FILE_NAME = "state.snapshot";
+
+	private final File file;
+	private final File tempFile;
+	private volatile boolean present;
+
+	public SnapshotStore(Context context) {
+		File dir = context.getFilesDir();
+		this.file = new File(dir, FILE_NAME);
+		this.tempFile = new File(dir, FILE_NAME + ".tmp");
+		this.present = file.exists();
+	}
+
+	/**
+	 * Check if there is a snapshot file.
+	 * 
+	 * @return True if a snapshot was saved and not invalidated.
+	 */
+	public boolean isPresent() {
+		return present;
+	}
+
+	/**
+	 * Read the snapshot.
+	 * 
+	 * @return The snapshot, or null if there is no valid snapshot.
+	 */
+	public StateSnapshot load() {
+		if (!present) {
+			return null;
+		}
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			long size = in.getChannel().size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot too large: " + size);
+			}
+			byte[] data = new byte[(int) size];
+			int offset = 0;
+			while (offset < data.length) {
+				int count = in.read(data, offset, data.length - offset);
+				if (count < 0) {
+					throw new IOException("Truncated snapshot");
+				}
+				offset += count;
+			}
+			return StateSnapshot.decode(data);
+		} catch (IOException e) {
+			Log.w(TAG, "load: " + e.getMessage());
+			invalidate();
+		} finally {
+			close(in);
+		}
+		return null;
+	}
+
+	/**
+	 * Replace the snapshot. This should be invoked on the persistence thread.
+	 * 
+	 * @param snapshot
+	 *            The new snapshot.
+	 */
+	public synchronized void save(StateSnapshot snapshot) {
+		byte[] data = snapshot.encode();
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(tempFile);
+			out.write(data);
+			out.flush();
+			out.getFD().sync();
+			out.close();
+			out = null;
+			if (!tempFile.renameTo(file)) {
+				throw new IOException("Unable to rename " + tempFile);
+			}
+			present = true;
+		} catch (IOException e) {
+			Log.e(TAG, "save: " + e.getMessage(), e);
+			tempFile.delete();
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * Delete the snapshot, because the stores are about to be changed.
+	 */
+	public synchronized void invalidate() {
+		if (present) {
+			present = false;
+			if (file.exists() && !file.delete()) {
+				Log.e(TAG, "invalidate: unable to delete " + file);
+			}
+		}
+	}
+
+	private void close(Closeable stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				Log.e(TAG, "close: " + e.getMessage(), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.tasks;
+
+import ro.ciubex.tkconfig.models.HistoryRetention;
+import ro.ciubex.tkconfig.store.HistoryStore;
+
+import android.database.SQLException;
+import android.os.AsyncTask;
+import android.util.Log;
+
+/**
+ * This is an AsyncTask used to delete from the history store the events
+ * evicted by the history retention policy.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class HistoryEvictionAsyncTask extends
+		AsyncTask<Void, Void, HistoryStore.Eviction> {
+	private final static String TAG = HistoryEvictionAsyncTask.class.getName();
+
+	/**
+	 * Responder used on eviction process.
+	 */
+	public interface Responder {
+		public void endHistoryEviction(HistoryStore.Eviction eviction);
+	}
+
+	private Responder responder;
+	private HistoryStore historyStore;
+	private HistoryRetention retention;
+
+	public HistoryEvictionAsyncTask(Responder responder,
+			HistoryStore historyStore, HistoryRetention retention) {
+		this.responder = responder;
+		this.historyStore = historyStore;
+		this.retention = retention;
+	}
+
+	/**
+	 * Method invoked on the background thread.
+	 */
+	@Override
+	protected HistoryStore.Eviction doInBackground(Void... params) {
+		try {
+			return historyStore.evict(retention, System.currentTimeMillis());
+		} catch (SQLException e) {
+			Log.e(TAG, "doInBackground: " + e.getMessage(), e);
+		}
+		return new HistoryStore.Eviction();
+	}
+
+	/**
+	 * Method invoked on the UI thread after the background computation
+	 * finishes.
+	 */
+	@Override
+	protected void onPostExecute(HistoryStore.Eviction result) {
+		super.onPostExecute(result);
+		responder.endHistoryEviction(result);
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.tasks;
+
+import ro.ciubex.tkconfig.models.Tracing;
+import ro.ciubex.tkconfig.store.LegacyMigration;
+
+import android.database.SQLException;
+import android.os.AsyncTask;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * This is an AsyncTask used to move a legacy dataset from the application
+ * preferences to its store, chunk by chunk.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class LegacyMigrationAsyncTask extends AsyncTask<Void, Void, Boolean> {
+	private final static String TAG = LegacyMigrationAsyncTask.class.getName();
+
+	/**
+	 * Responder used on migration process.
+	 */
+	public interface Responder {
+		public void endLegacyMigration(boolean migrated);
+	}
+
+	private Responder responder;
+	private LegacyMigration migration;
+	private LegacyMigration.Dataset<?> dataset;
+
+	public LegacyMigrationAsyncTask(Responder responder,
+			LegacyMigration migration, LegacyMigration.Dataset<?> dataset) {
+		this.responder = responder;
+		this.migration = migration;
+		this.dataset = dataset;
+	}
+
+	/**
+	 * Method invoked on the background thread.
+	 */
+	@Override
+	protected Boolean doInBackground(Void... params) {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+		long span = Tracing.begin();
+		boolean migrated = false;
+		try {
+			migrated = migration.migrate(dataset);
+		} catch (SQLException e) {
+			Log.e(TAG, "doInBackground: " + e.getMessage(), e);
+		}
+		Tracing.end("LegacyMigrationAsyncTask", span);
+		return migrated;
+	}
+
+	/**
+	 * Method invoked on the UI thread after the background computation
+	 * finishes.
+	 */
+	@Override
+	protected void onPostExecute(Boolean result) {
+		super.onPostExecute(result);
+		responder.endLegacyMigration(result.booleanValue());
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.tasks;
+
+import java.util.List;
+
+import ro.ciubex.tkconfig.TKConfigApplication;
+import ro.ciubex.tkconfig.models.Command;
+
+import android.app.Application;
+import android.os.AsyncTask;
+
+/**
+ * This is an AsyncTask used to read the commands from the commands store.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class LoadCommandsAsyncTask extends
+		AsyncTask<Void, Void, List<Command>> {
+
+	/**
+	 * Responder used on loading process.
+	 */
+	public interface Responder {
+		public Application getApplication();
+
+		public void startLoadCommands();
+
+		public void endLoadCommands(List<Command> commands);
+	}
+
+	private Responder responder;
+
+	public LoadCommandsAsyncTask(Responder responder) {
+		this.responder = responder;
+	}
+
+	/**
+	 * Method invoked on the background thread.
+	 */
+	@Override
+	protected List<Command> doInBackground(Void... params) {
+		return ((TKConfigApplication) responder.getApplication())
+				.readCommands();
+	}
+
+	/**
+	 * Method invoked on the UI thread before the task is executed.
+	 */
+	@Override
+	protected void onPreExecute() {
+		super.onPreExecute();
+		responder.startLoadCommands();
+	}
+
+	/**
+	 * Method invoked on the UI thread after the background computation
+	 * finishes.
+	 */
+	@Override
+	protected void onPostExecute(List<Command> result) {
+		super.onPostExecute(result);
+		responder.endLoadCommands(result);
+	}
+}
@@ -24,6 +24,7 @@ import java.util.List;
 
 import ro.ciubex.tkconfig.models.Constants;
 import ro.ciubex.tkconfig.models.ContactModel;
+import ro.ciubex.tkconfig.models.Tracing;
 import android.app.Application;
 import android.content.ContentResolver;
 import android.content.ContentUris;
@@ -97,9 +98,11 @@ public class LoadContactImageAsyncTask extends
 	 */
 	@Override
 	protected DefaultAsyncTaskResult doInBackground(Void... params) {
+		long span = Tracing.begin();
 		DefaultAsyncTaskResult result = new DefaultAsyncTaskResult();
 		result.resultId = Constants.OK;
 		loadAllImages(result);
+		Tracing.end("LoadContactImageAsyncTask", span);
 		return result;
 	}
 
@@ -25,6 +25,7 @@ import ro.ciubex.tkconfig.R;
 import ro.ciubex.tkconfig.models.Constants;
 import ro.ciubex.tkconfig.models.ContactModel;
 import ro.ciubex.tkconfig.models.ContactsComparator;
+import ro.ciubex.tkconfig.models.Tracing;
 
 import android.app.Application;
 import android.content.ContentResolver;
@@ -66,8 +67,10 @@ public class LoadContactsAsyncTask extends
 	 */
 	@Override
 	protected DefaultAsyncTaskResult doInBackground(Void... params) {
+		long span = Tracing.begin();
 		DefaultAsyncTaskResult result = new DefaultAsyncTaskResult();
 		getContacts(result);
+		Tracing.end("LoadContactsAsyncTask", span);
 		return result;
 	}
 
@@ -0,0 +1,82 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.tasks;
+
+import java.util.List;
+
+import ro.ciubex.tkconfig.TKConfigApplication;
+import ro.ciubex.tkconfig.models.GpsContact;
+
+import android.app.Application;
+import android.os.AsyncTask;
+
+/**
+ * This is an AsyncTask used to read the GPS contacts from the contacts store.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class LoadGpsContactsAsyncTask extends
+		AsyncTask<Void, Void, List<GpsContact>> {
+
+	/**
+	 * Responder used on loading process.
+	 */
+	public interface Responder {
+		public Application getApplication();
+
+		public void startLoadGpsContacts();
+
+		public void endLoadGpsContacts(List<GpsContact> contacts);
+	}
+
+	private Responder responder;
+
+	public LoadGpsContactsAsyncTask(Responder responder) {
+		this.responder = responder;
+	}
+
+	/**
+	 * Method invoked on the background thread.
+	 */
+	@Override
+	protected List<GpsContact> doInBackground(Void... params) {
+		return ((TKConfigApplication) responder.getApplication())
+				.readContacts();
+	}
+
+	/**
+	 * Method invoked on the UI thread before the task is executed.
+	 */
+	@Override
+	protected void onPreExecute() {
+		super.onPreExecute();
+		responder.startLoadGpsContacts();
+	}
+
+	/**
+	 * Method invoked on the UI thread after the background computation
+	 * finishes.
+	 */
+	@Override
+	protected void onPostExecute(List<GpsContact> result) {
+		super.onPostExecute(result);
+		responder.endLoadGpsContacts(result);
+	}
+}
@@ -19,6 +19,7 @@
 package ro.ciubex.tkconfig.tasks;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -26,15 +27,37 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 import ro.ciubex.tkconfig.R;
 import ro.ciubex.tkconfig.TKConfigApplication;
+import ro.ciubex.tkconfig.models.BackupFormat;
+import ro.ciubex.tkconfig.models.BackupManifest;
+import ro.ciubex.tkconfig.models.BackupReader;
+import ro.ciubex.tkconfig.models.BackupWriter;
 import ro.ciubex.tkconfig.models.Constants;
+import ro.ciubex.tkconfig.models.GpsContact;
+import ro.ciubex.tkconfig.models.History;
+import ro.ciubex.tkconfig.models.RestoredState;
+import ro.ciubex.tkconfig.models.Tracing;
 import ro.ciubex.tkconfig.models.Utilities;
+import ro.ciubex.tkconfig.store.CommandStore;
+import ro.ciubex.tkconfig.store.HistoryStore;
+import ro.ciubex.tkconfig.store.ParameterStore;
 import android.app.Application;
 import android.content.SharedPreferences;
-import android.content.SharedPreferences.Editor;
+import android.database.SQLException;
 import android.os.AsyncTask;
 import android.util.Log;
 
@@ -43,9 +66,28 @@ import android.util.Log;
  * 
  */
 public class PreferencesFileUtilAsynkTask extends
-		AsyncTask<Void, Void, DefaultAsyncTaskResult> {
+		AsyncTask<Void, Integer, DefaultAsyncTaskResult> {
 	private final static String TAG = PreferencesFileUtilAsynkTask.class
 			.getName();
+	private static final String CHARSET = "UTF-8";
+	private static final int HISTORY_PAGE_SIZE = 500;
+	private static final int PROGRESS_RECORDS = 256;
+	private static final String KEY_COMMAND_PACKS = "command_packs";
+	private static final String MANIFEST_SUFFIX = ".manifest";
+	/** The increments of a chain after which a full backup is made. */
+	private static final int MAX_INCREMENTS = 30;
+
+	public static final String SECTION_SETTINGS = "settings";
+	public static final String SECTION_PARAMETERS = "parameters";
+	public static final String SECTION_CONTACTS = "contacts";
+	public static final String SECTION_COMMANDS = "commands";
+	public static final String SECTION_HISTORIES = "histories";
+	/** The backup sections, in the order of the backup_sections labels. */
+	public static final String[] SECTIONS = { SECTION_SETTINGS,
+			SECTION_PARAMETERS, SECTION_CONTACTS, SECTION_COMMANDS,
+			SECTION_HISTORIES };
+	/** The single section of the version 2 backups, settings and parameters. */
+	private static final String SECTION_PREFERENCES = "preferences";
 
 	/**
 	 * The listener should implement this interface
@@ -55,18 +97,31 @@ public class PreferencesFileUtilAsynkTask extends
 
 		public void startFileAsynkTask(Operation operationType);
 
+		public void progressFileAsynkTask(Operation operationType, int percent);
+
 		public void endFileAsynkTask(Operation operationType,
 				DefaultAsyncTaskResult result);
 	}
 
-	/** Define available operations type */
+	/**
+	 * Define available operations type. An incremental backup saves only the
+	 * changes since the previous backup of the chain started by the last full
+	 * backup, or a full backup if there is no such chain.
+	 */
 	public enum Operation {
-		BACKUP, RESTORE
+		BACKUP, RESTORE, INCREMENTAL_BACKUP
 	}
 
 	private Responder responder;
 	private Operation operationType;
 	private String externalFileName;
+	private Set<String> sections;
+	private long progressTotal;
+	private long progressDone;
+	private long progressBase;
+	private int progressPercent;
+	private List<GpsContact> contacts;
+	private List<CommandStore.Row> commands;
 
 	/**
 	 * The constructor of this task
@@ -77,23 +132,64 @@ public class PreferencesFileUtilAsynkTask extends
 	 *            Full file name path of exported / imported preferences
 	 * @param operationType
 	 *            Type of operation
+	 * @param sections
+	 *            The sections to be saved or restored, or null for all
 	 */
 	public PreferencesFileUtilAsynkTask(Responder responder, String fileName,
-			Operation operationType) {
+			Operation operationType, Set<String> sections) {
 		this.responder = responder;
 		externalFileName = fileName != null ? fileName.trim() : "";
 		this.operationType = operationType;
+		this.sections = sections != null ? sections : new HashSet<String>(
+				Arrays.asList(SECTIONS));
 	}
 
 	/**
-	 * Method invoked when is started this task
+	 * Method invoked when is started this task. The contacts and the commands
+	 * to be saved are copied here, on the main thread where they are edited.
 	 */
 	@Override
 	protected void onPreExecute() {
 		super.onPreExecute();
+		if (operationType != Operation.RESTORE) {
+			TKConfigApplication app = (TKConfigApplication) responder
+					.getApplication();
+			if (sections.contains(SECTION_CONTACTS) && app.isContactsLoaded()) {
+				contacts = copyContacts(app.getContacts());
+			}
+			if (sections.contains(SECTION_COMMANDS) && app.isCommandsLoaded()) {
+				commands = CommandStore.Row.of(app.getCommands());
+			}
+		}
 		responder.startFileAsynkTask(operationType);
 	}
 
+	/**
+	 * Copy the contacts to be saved, so that they are not read while they are
+	 * edited.
+	 */
+	private static List<GpsContact> copyContacts(List<GpsContact> contacts) {
+		List<GpsContact> copies = new ArrayList<GpsContact>(contacts.size());
+		for (GpsContact contact : contacts) {
+			copies.add(new GpsContact(contact.getName(), contact.getPhone(),
+					contact.getPassword(), contact.isSelected(), contact
+							.getModel()));
+		}
+		return copies;
+	}
+
+	/**
+	 * Method invoked on the UI thread when the progress was changed
+	 * 
+	 * @param values
+	 *            The progress percent
+	 */
+	@Override
+	protected void onProgressUpdate(Integer... values) {
+		super.onProgressUpdate(values);
+		responder.progressFileAsynkTask(operationType, values[0]);
+	}
+
 	/**
 	 * Method invoked at the end of this task
 	 * 
@@ -108,7 +204,8 @@ public class PreferencesFileUtilAsynkTask extends
 
 	/**
 	 * This is main task method, here should be processed all background
-	 * operations
+	 * operations. The pending writes are flushed first, here and not on the
+	 * main thread, so the stores are read with all the queued changes.
 	 */
 	@Override
 	protected DefaultAsyncTaskResult doInBackground(Void... params) {
@@ -121,10 +218,16 @@ public class PreferencesFileUtilAsynkTask extends
 					R.string.file_name_missing);
 		}
 		if (result.resultId == Constants.OK) {
+			long span = Tracing.begin();
+			((TKConfigApplication) responder.getApplication())
+					.flushPersistence();
 			if (operationType == Operation.RESTORE) {
 				restoreFromFile(result);
+				Tracing.end("restore", span);
 			} else {
 				backupToFile(result);
+				Tracing.end(operationType == Operation.INCREMENTAL_BACKUP
+						? "backup.incremental" : "backup", span);
 			}
 		}
 		return result;
@@ -160,7 +263,17 @@ public class PreferencesFileUtilAsynkTask extends
 	}
 
 	/**
-	 * Method used to backup all application preferences
+	 * Method used to backup the chosen sections. The backup is streamed using
+	 * the {@link BackupFormat} to a temporary file, through a bounded buffer,
+	 * and the temporary file is renamed to the backup file only when it is
+	 * complete.
+	 * 
+	 * A backup of all the sections starts a new chain, described by the
+	 * manifest saved next to the backup file. An incremental backup is saved
+	 * as the next file of the chain and contains only the sections whose
+	 * checksum is changed and the history events added after the history
+	 * mark. A full backup is made instead if a history event saved on the
+	 * chain was deleted or evicted since.
 	 * 
 	 * @param result
 	 *            Result of backup operation
@@ -170,26 +283,97 @@ public class PreferencesFileUtilAsynkTask extends
 				.getApplication();
 		result.resultMessage = app.getString(R.string.backup_success,
 				externalFileName);
-		OutputStream fos = null;
-		File outFile;
+		BackupWriter out = null;
+		File outFile = new File(externalFileName);
+		File manifestFile = new File(externalFileName + MANIFEST_SUFFIX);
+		boolean allSections = sections.size() == SECTIONS.length;
+		BackupManifest previous = readManifest(outFile, manifestFile);
+		BackupManifest manifest = null;
+		if (operationType == Operation.INCREMENTAL_BACKUP && allSections
+				&& previous != null
+				&& previous.getBaseChecksum() != -1L
+				&& previous.getIncrements().size() < MAX_INCREMENTS
+				&& isChainComplete(outFile, previous)
+				&& isHistoryKept(app.getHistoryStore(), previous)) {
+			manifest = previous;
+		}
+		File targetFile = manifest == null ? outFile : chainFile(outFile,
+				outFile.getName() + "."
+						+ (manifest.getIncrements().size() + 1));
+		File tempFile = new File(targetFile.getPath() + ".tmp");
 		try {
-			outFile = new File(externalFileName);
 			if (createParentFolders(outFile.getParentFile())) {
-				fos = new FileOutputStream(outFile);
 				SharedPreferences prefs = app.getSharedPreferences();
 				Map<String, ?> keys = prefs.getAll();
-				String key, clazz, value;
-				StringBuilder sb = new StringBuilder();
-				for (Map.Entry<String, ?> entry : keys.entrySet()) {
-					key = entry.getKey();
-					clazz = entry.getValue().getClass().getName();
-					value = String.valueOf(entry.getValue());
-					sb.append(key).append(':').append(clazz).append(':')
-							.append(value).append('\n');
+				List<GpsContact> contacts = sections.contains(SECTION_CONTACTS)
+						? readContacts(app)
+						: Collections.<GpsContact> emptyList();
+				List<CommandStore.Row> commands = sections
+						.contains(SECTION_COMMANDS) ? readCommands(app)
+						: Collections.<CommandStore.Row> emptyList();
+				HistoryStore historyStore = app.getHistoryStore();
+				Set<String> changed = sections;
+				if (manifest != null) {
+					changed = changedSections(manifest, keys, contacts,
+							commands, historyStore);
+					if (changed.isEmpty()) {
+						result.resultMessage = app.getString(
+								R.string.backup_up_to_date, externalFileName);
+						return;
+					}
+					result.resultMessage = app.getString(
+							R.string.backup_incremental_success,
+							targetFile.getPath());
+				}
+				BackupManifest chain = manifest != null ? manifest
+						: new BackupManifest();
+				progressTotal = keys.size();
+				if (changed.contains(SECTION_CONTACTS)) {
+					progressTotal += contacts.size();
+				}
+				if (changed.contains(SECTION_COMMANDS)) {
+					progressTotal += commands.size();
+				}
+				if (changed.contains(SECTION_HISTORIES)) {
+					progressTotal += historyStore.countAfter(chain
+							.getHistoryMark());
+				}
+				CheckedOutputStream checked = new CheckedOutputStream(
+						new FileOutputStream(tempFile), new CRC32());
+				out = new BackupWriter(checked);
+				appendPreferences(out, keys, changed);
+				if (changed.contains(SECTION_CONTACTS)) {
+					appendContacts(out, contacts);
+				}
+				if (changed.contains(SECTION_COMMANDS)) {
+					appendCommands(out, commands, keys.get(KEY_COMMAND_PACKS));
+				}
+				if (changed.contains(SECTION_HISTORIES)) {
+					appendHistories(out, historyStore, chain);
+				}
+				out.finish();
+				for (Map.Entry<String, Long> entry : out.getChecksums()
+						.entrySet()) {
+					chain.setChecksum(entry.getKey(), entry.getValue()
+							.longValue());
+				}
+				out.close();
+				out = null;
+				if (!tempFile.renameTo(targetFile)) {
+					throw new IOException("Unable to rename " + tempFile
+							+ " to " + targetFile);
+				}
+				if (manifest != null) {
+					chain.addIncrement(targetFile.getName());
+					writeManifest(manifestFile, chain);
+				} else {
+					deleteChain(outFile, manifestFile, previous);
+					if (allSections) {
+						chain.setBaseLength(outFile.length());
+						chain.setBaseChecksum(checked.getChecksum().getValue());
+						writeManifest(manifestFile, chain);
+					}
 				}
-				String content = sb.toString();
-				fos.write(content.getBytes());
-				fos.flush();
 			} else {
 				result.resultId = Constants.ERROR;
 				result.resultMessage = app.getString(
@@ -212,22 +396,403 @@ public class PreferencesFileUtilAsynkTask extends
 					externalFileName, "IOException", e.getMessage());
 			Log.e(TAG, "Exception: " + e.getMessage(), e);
 		} finally {
-			if (fos != null) {
+			if (out != null) {
 				try {
-					fos.close();
+					out.close();
 				} catch (IOException e) {
-					result.resultId = Constants.ERROR;
-					result.resultMessage = app.getString(
-							R.string.backup_exception, externalFileName,
-							"Closing IOException", e.getMessage());
 					Log.e(TAG, "Exception: " + e.getMessage(), e);
 				}
 			}
+			if (tempFile.exists() && !tempFile.delete()) {
+				Log.e(TAG, "Unable to delete " + tempFile);
+			}
+		}
+	}
+
+	/**
+	 * Obtain the contacts to be saved. The contacts are read from their store
+	 * if the backup is made before the contacts list is loaded.
+	 */
+	private List<GpsContact> readContacts(TKConfigApplication app) {
+		if (contacts != null) {
+			return contacts;
+		}
+		return app.readContacts();
+	}
+
+	/**
+	 * Obtain the commands to be saved. The commands list is loaded when the
+	 * application is shown, so the commands are read from their store if the
+	 * backup is made without the application being shown.
+	 */
+	private List<CommandStore.Row> readCommands(TKConfigApplication app) {
+		if (commands != null) {
+			return commands;
+		}
+		return CommandStore.Row.of(app.readCommands());
+	}
+
+	/**
+	 * Find the sections changed since the previous backup of a chain, by
+	 * comparing the checksums of the current sections with the checksums
+	 * saved on the manifest. The sections are encoded without being saved,
+	 * before the backup progress is started.
+	 * 
+	 * @param manifest
+	 *            The manifest of the chain.
+	 * @return The changed sections.
+	 */
+	private Set<String> changedSections(BackupManifest manifest,
+			Map<String, ?> keys, List<GpsContact> contacts,
+			List<CommandStore.Row> commands, HistoryStore historyStore)
+			throws IOException {
+		BackupWriter digest = new BackupWriter(new DiscardOutputStream());
+		try {
+			appendPreferences(digest, keys, sections);
+			appendContacts(digest, contacts);
+			appendCommands(digest, commands, keys.get(KEY_COMMAND_PACKS));
+			digest.finish();
+		} finally {
+			digest.close();
+		}
+		progressDone = 0;
+		Set<String> changed = new HashSet<String>();
+		for (Map.Entry<String, Long> entry : digest.getChecksums().entrySet()) {
+			if (manifest.getChecksum(entry.getKey()) != entry.getValue()
+					.longValue()) {
+				changed.add(entry.getKey());
+			}
+		}
+		if (historyStore.countAfter(manifest.getHistoryMark()) > 0) {
+			changed.add(SECTION_HISTORIES);
+		}
+		return changed;
+	}
+
+	/**
+	 * Obtain a file of a backup chain, from the backup folder.
+	 */
+	private static File chainFile(File outFile, String name) {
+		return new File(outFile.getAbsoluteFile().getParentFile(), name);
+	}
+
+	/**
+	 * Check if all the increments of a chain exist.
+	 */
+	private static boolean isChainComplete(File outFile,
+			BackupManifest manifest) {
+		for (String name : manifest.getIncrements()) {
+			if (!chainFile(outFile, name).exists()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check if the history events saved on a chain are all still stored. The
+	 * increments save only the events added after the history mark, so a
+	 * chain can not be continued after an older event was deleted or evicted.
+	 */
+	private static boolean isHistoryKept(HistoryStore historyStore,
+			BackupManifest manifest) {
+		try {
+			return historyStore.countUpTo(manifest.getHistoryMark()) == manifest
+					.getHistoryCount();
+		} catch (SQLException e) {
+			Log.e(TAG, "isHistoryKept: " + e.getMessage(), e);
+		}
+		return false;
+	}
+
+	/**
+	 * Read the manifest of the chain started by a backup file.
+	 * 
+	 * @param outFile
+	 *            The backup file.
+	 * @param manifestFile
+	 *            The manifest file.
+	 * @return The manifest, or null if there is no valid manifest or if the
+	 *         backup file was replaced after the manifest was saved, checked
+	 *         by its length and its CRC32.
+	 */
+	private static BackupManifest readManifest(File outFile, File manifestFile) {
+		if (!outFile.exists() || !manifestFile.exists()) {
+			return null;
+		}
+		try {
+			byte[] data = new byte[(int) manifestFile.length()];
+			DataInputStream in = new DataInputStream(new FileInputStream(
+					manifestFile));
+			try {
+				in.readFully(data);
+			} finally {
+				in.close();
+			}
+			BackupManifest manifest = BackupManifest.decode(data);
+			if (manifest.getBaseLength() == outFile.length()
+					&& (manifest.getBaseChecksum() == -1L || manifest
+							.getBaseChecksum() == fileChecksum(outFile))) {
+				return manifest;
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Invalid backup manifest: " + e.getMessage(), e);
+		}
+		return null;
+	}
+
+	/**
+	 * Compute the CRC32 of a file.
+	 */
+	private static long fileChecksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[8192];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				crc.update(buffer, 0, count);
+			}
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Save a chain manifest to a temporary file, renamed to the manifest file
+	 * when it is synced.
+	 */
+	private static void writeManifest(File manifestFile,
+			BackupManifest manifest) throws IOException {
+		File tempFile = new File(manifestFile.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tempFile);
+		try {
+			out.write(manifest.encode());
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!tempFile.renameTo(manifestFile)) {
+			throw new IOException("Unable to rename " + tempFile + " to "
+					+ manifestFile);
+		}
+	}
+
+	/**
+	 * Delete the manifest and the increments of the previous chain, replaced
+	 * by a new backup file.
+	 */
+	private static void deleteChain(File outFile, File manifestFile,
+			BackupManifest previous) {
+		if (previous != null) {
+			for (String name : previous.getIncrements()) {
+				File file = chainFile(outFile, name);
+				if (file.exists() && !file.delete()) {
+					Log.e(TAG, "Unable to delete " + file);
+				}
+			}
+		}
+		if (manifestFile.exists() && !manifestFile.delete()) {
+			Log.e(TAG, "Unable to delete " + manifestFile);
+		}
+	}
+
+	/**
+	 * Obtain the backup section of a preferences key. The commands, contacts
+	 * and histories keys are the keys used by the older versions.
+	 * 
+	 * @param key
+	 *            The preferences key.
+	 * @return The backup section name.
+	 */
+	private static String sectionOf(String key) {
+		if (ParameterStore.isParameterKey(key)) {
+			return SECTION_PARAMETERS;
+		} else if (KEY_COMMAND_PACKS.equals(key)
+				|| TKConfigApplication.isLegacyCommandKey(key)) {
+			return SECTION_COMMANDS;
+		} else if ("contacts".equals(key) || key.startsWith("contact_")) {
+			return SECTION_CONTACTS;
+		} else if ("histories".equals(key) || key.startsWith("history_")) {
+			return SECTION_HISTORIES;
+		}
+		return SECTION_SETTINGS;
+	}
+
+	/**
+	 * Check if a restored key belongs to a chosen section.
+	 */
+	private boolean isRestored(String key) {
+		return sections.contains(sectionOf(key));
+	}
+
+	/**
+	 * Append the settings and parameters sections to the backup. The keys of
+	 * the other sections found on the preferences are not saved from here,
+	 * those sections are saved from their stores. The keys are saved sorted,
+	 * so the section checksum depends only on the preferences values.
+	 * 
+	 * @param out
+	 *            The backup writer.
+	 * @param keys
+	 *            The application preferences.
+	 * @param include
+	 *            The sections to be saved.
+	 */
+	private void appendPreferences(BackupWriter out, Map<String, ?> keys,
+			Set<String> include) throws IOException {
+		List<String> parameters = new ArrayList<String>();
+		if (include.contains(SECTION_SETTINGS)) {
+			out.startSection(SECTION_SETTINGS);
+		}
+		for (Map.Entry<String, ?> entry : new TreeMap<String, Object>(keys)
+				.entrySet()) {
+			String section = sectionOf(entry.getKey());
+			if (SECTION_SETTINGS.equals(section)) {
+				if (include.contains(SECTION_SETTINGS)) {
+					out.put(entry.getKey(), entry.getValue());
+				}
+				advanceProgress(1);
+			} else if (SECTION_PARAMETERS.equals(section)) {
+				parameters.add(entry.getKey());
+			} else {
+				advanceProgress(1);
+			}
+		}
+		if (include.contains(SECTION_PARAMETERS)) {
+			out.startSection(SECTION_PARAMETERS);
+			for (String key : parameters) {
+				out.put(key, keys.get(key));
+			}
+		}
+		advanceProgress(parameters.size());
+	}
+
+	/**
+	 * Count the processed records or bytes and publish the progress percent when it is
+	 * changed.
+	 */
+	private void advanceProgress(long count) {
+		progressDone += count;
+		if (progressTotal > 0) {
+			int percent = (int) Math.min(100L, progressDone * 100
+					/ progressTotal);
+			if (percent != progressPercent) {
+				progressPercent = percent;
+				publishProgress(percent);
+			}
 		}
 	}
 
 	/**
-	 * Method used to restore application preferences
+	 * Append the GPS contacts to the backup, using the preferences keys of the
+	 * older versions, which are moved to the contacts store when the contacts
+	 * are loaded after a restore.
+	 * 
+	 * @param out
+	 *            The backup writer.
+	 * @param contacts
+	 *            The GPS contacts to be saved.
+	 */
+	private void appendContacts(BackupWriter out, List<GpsContact> contacts)
+			throws IOException {
+		out.startSection(SECTION_CONTACTS);
+		out.putInt("contacts", contacts.size());
+		int i = 0;
+		for (GpsContact contact : contacts) {
+			String prefix = "contact_" + i;
+			out.putString(prefix + "_name", contact.getName());
+			out.putString(prefix + "_phone", contact.getPhone());
+			out.putString(prefix + "_password", contact.getPassword());
+			out.putBoolean(prefix + "_selected", contact.isSelected());
+			out.putString(prefix + "_model", contact.getModel());
+			advanceProgress(1);
+			i++;
+		}
+	}
+
+	/**
+	 * Append the commands to the backup, using the preferences keys of the
+	 * older versions, which are moved to the commands store when the
+	 * commands are loaded after a restore.
+	 * 
+	 * @param out
+	 *            The backup writer.
+	 * @param commands
+	 *            The rows of the commands to be saved.
+	 * @param commandPacks
+	 *            The loaded command packs preference, null if it is not set.
+	 */
+	private void appendCommands(BackupWriter out,
+			List<CommandStore.Row> commands, Object commandPacks)
+			throws IOException {
+		out.startSection(SECTION_COMMANDS);
+		if (commandPacks != null) {
+			out.put(KEY_COMMAND_PACKS, commandPacks);
+		}
+		out.putInt("commands", commands.size());
+		int i = 0;
+		for (CommandStore.Row command : commands) {
+			String prefix = "command_" + i;
+			out.putString(prefix + "_name", command.getName());
+			out.putString(prefix + "_cmd", command.getText());
+			out.putString(prefix + "_desc", command.getDescription());
+			String params = command.getLayout();
+			if (params != null) {
+				out.putString(prefix + "_params", params);
+			}
+			advanceProgress(1);
+			i++;
+		}
+	}
+
+	/**
+	 * Append the history events to the backup, using the preferences keys of
+	 * the older versions, which are moved to the history store when the
+	 * histories are loaded after a restore. The events are read by pages and
+	 * their count is written after them, so the count is exact even if the
+	 * store is changed meanwhile. Only the events added after the chain
+	 * history mark are saved, numbered after the events already saved on the
+	 * chain.
+	 * 
+	 * @param out
+	 *            The backup writer.
+	 * @param historyStore
+	 *            The store of the history events to be saved.
+	 * @param chain
+	 *            The manifest of the chain, updated with the new history mark.
+	 */
+	private void appendHistories(BackupWriter out, HistoryStore historyStore,
+			BackupManifest chain) throws IOException {
+		out.startSection(SECTION_HISTORIES);
+		int i = chain.getHistoryCount();
+		long lastId = chain.getHistoryMark();
+		List<History> page;
+		do {
+			page = historyStore.loadAfter(lastId, HISTORY_PAGE_SIZE);
+			for (History history : page) {
+				String prefix = "history_" + i;
+				out.putLong(prefix + "_dateTime", history.getDateTime());
+				out.putString(prefix + "_number", history.getPhoneNumber());
+				out.putString(prefix + "_cmd", history.getSmsCommand());
+				lastId = history.getId();
+				i++;
+			}
+			advanceProgress(page.size());
+		} while (page.size() == HISTORY_PAGE_SIZE);
+		out.putInt("histories", i);
+		chain.setHistoryCount(i);
+		chain.setHistoryMark(lastId);
+	}
+
+	/**
+	 * Method used to restore application preferences. If the backup file
+	 * started a chain of incremental backups, the increments are replayed in
+	 * order after it. All the chain files are decoded into a detached
+	 * {@link RestoredState} before anything is written, then the restored
+	 * state is written on the persistence thread and swapped in when this
+	 * task is ended.
 	 * 
 	 * @param result
 	 *            Result of restore operation
@@ -237,24 +802,28 @@ public class PreferencesFileUtilAsynkTask extends
 				R.string.restore_success, externalFileName);
 		TKConfigApplication app = (TKConfigApplication) responder
 				.getApplication();
-		FileInputStream inFile = null;
-		BufferedReader reader = null;
 		try {
 			File f = new File(externalFileName);
 			if (f.exists()) {
-				inFile = new FileInputStream(f);
-				reader = new BufferedReader(new InputStreamReader(inFile));
-				SharedPreferences prefs = app.getSharedPreferences();
-				Editor editor = prefs.edit();
-				String line;
-				String[] arrLine;
-				while ((line = reader.readLine()) != null) {
-					arrLine = currentLine(line);
-					if (arrLine != null) {
-						storeCurrentLine(editor, arrLine);
+				List<File> files = new ArrayList<File>();
+				files.add(f);
+				BackupManifest manifest = readManifest(f, new File(
+						externalFileName + MANIFEST_SUFFIX));
+				if (manifest != null) {
+					for (String name : manifest.getIncrements()) {
+						files.add(chainFile(f, name));
 					}
 				}
-				editor.commit();
+				for (File file : files) {
+					progressTotal += file.length();
+				}
+				Map<String, Object> values = new HashMap<String, Object>();
+				for (File file : files) {
+					restoreFile(file, values);
+					progressBase += file.length();
+					advanceProgress(progressBase - progressDone);
+				}
+				app.applyRestoredState(RestoredState.decode(values));
 			} else {
 				result.resultId = Constants.ERROR;
 				result.resultMessage = app.getString(
@@ -270,46 +839,153 @@ public class PreferencesFileUtilAsynkTask extends
 			result.resultMessage = app.getString(R.string.restore_exception,
 					externalFileName, "IOException", e.getMessage());
 			Log.e(TAG, "Exception: " + e.getMessage(), e);
+		} catch (SQLException e) {
+			result.resultId = Constants.ERROR;
+			result.resultMessage = app.getString(R.string.restore_exception,
+					externalFileName, "SQLException", e.getMessage());
+			Log.e(TAG, "Exception: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Restore the records of a backup file, saved with the
+	 * {@link BackupFormat} or with the text format of the older versions.
+	 * 
+	 * @param file
+	 *            The backup file.
+	 * @param values
+	 *            The restored values, replaced by the values of this file.
+	 */
+	private void restoreFile(File file, Map<String, Object> values)
+			throws IOException {
+		FileInputStream inFile = new FileInputStream(file);
+		BufferedReader reader = null;
+		try {
+			byte[] header = new byte[BackupFormat.HEADER_SIZE];
+			int length = inFile.read(header);
+			FileChannel channel = inFile.getChannel();
+			channel.position(0);
+			if (BackupFormat.isBackup(header, length)) {
+				restoreRecords(channel, values);
+			} else {
+				reader = new BufferedReader(new InputStreamReader(inFile,
+						CHARSET));
+				String line;
+				String[] arrLine;
+				while ((line = reader.readLine()) != null) {
+					arrLine = currentLine(line);
+					if (arrLine != null && isRestored(arrLine[0])) {
+						storeCurrentLine(values, arrLine);
+					}
+					advanceProgress(line.length() + 1);
+				}
+			}
 		} finally {
 			if (reader != null) {
-				try {
-					reader.close();
-				} catch (IOException e) {
-					Log.e(TAG, "Exception: " + e.getMessage(), e);
+				reader.close();
+			} else {
+				inFile.close();
+			}
+		}
+	}
+
+	/**
+	 * Read the chosen sections of a backup saved with the {@link BackupFormat},
+	 * the other sections are not read. The restored values are not written
+	 * if a section is corrupted.
+	 * 
+	 * @param channel
+	 *            The backup file channel.
+	 * @param values
+	 *            The restored values.
+	 */
+	private void restoreRecords(FileChannel channel,
+			final Map<String, Object> values) throws IOException {
+		final BackupReader reader = new BackupReader(channel);
+		Set<String> read = new HashSet<String>(sections);
+		if (sections.contains(SECTION_SETTINGS)
+				|| sections.contains(SECTION_PARAMETERS)) {
+			read.add(SECTION_PREFERENCES);
+		}
+		reader.read(new BackupReader.Handler() {
+			private int count;
+
+			@Override
+			public void startSection(String name) {
+			}
+
+			@Override
+			public void onString(String key, String value) {
+				if (isRestored(key)) {
+					values.put(key, value);
 				}
+				recordRead();
 			}
-			if (inFile != null) {
-				try {
-					inFile.close();
-				} catch (IOException e) {
-					result.resultId = Constants.ERROR;
-					result.resultMessage = app.getString(
-							R.string.restore_exception, externalFileName,
-							"Closing IOException", e.getMessage());
-					Log.e(TAG, "Exception: " + e.getMessage(), e);
+
+			@Override
+			public void onBoolean(String key, boolean value) {
+				if (isRestored(key)) {
+					values.put(key, Boolean.valueOf(value));
 				}
+				recordRead();
 			}
-		}
+
+			@Override
+			public void onInt(String key, int value) {
+				if (isRestored(key)) {
+					values.put(key, Integer.valueOf(value));
+				}
+				recordRead();
+			}
+
+			@Override
+			public void onLong(String key, long value) {
+				if (isRestored(key)) {
+					values.put(key, Long.valueOf(value));
+				}
+				recordRead();
+			}
+
+			@Override
+			public void onFloat(String key, float value) {
+				if (isRestored(key)) {
+					values.put(key, Float.valueOf(value));
+				}
+				recordRead();
+			}
+
+			@Override
+			public void endSection(String name, int records) {
+			}
+
+			private void recordRead() {
+				if (++count % PROGRESS_RECORDS == 0) {
+					advanceProgress(progressBase + reader.getPosition()
+							- progressDone);
+				}
+			}
+		}, read);
 	}
 
-	private void storeCurrentLine(Editor editor, String[] arrLine) {
+	private void storeCurrentLine(Map<String, Object> values,
+			String[] arrLine) {
 		String key = arrLine[0], clazz = arrLine[1], value = arrLine[2];
 		int intValue;
 		float floatValue;
 		long longValue;
 		if ("java.lang.String".equals(clazz)) {
-			editor.putString(key, value);
+			values.put(key, value);
 		} else if ("java.lang.Boolean".equals(clazz)) {
-			editor.putBoolean(key, "true".equalsIgnoreCase(value));
+			values.put(key, Boolean.valueOf("true".equalsIgnoreCase(value)));
 		} else if ("java.lang.Integer".equals(clazz)) {
 			intValue = Utilities.parseInt(value);
-			editor.putInt(key, intValue);
+			values.put(key, Integer.valueOf(intValue));
 		} else if ("java.lang.Float".equals(clazz)) {
 			floatValue = Utilities.parseFloat(value);
-			editor.putFloat(key, floatValue);
+			values.put(key, Float.valueOf(floatValue));
 		} else if ("java.lang.Long".equals(clazz)) {
 			longValue = Utilities.parseLong(value);
-			editor.putLong(key, longValue);
+			values.put(key, Long.valueOf(longValue));
 		}
 	}
 
@@ -334,4 +1010,17 @@ public class PreferencesFileUtilAsynkTask extends
 		}
 		return arr;
 	}
+
+	/**
+	 * Output stream used to encode the sections only for their checksums.
+	 */
+	private static class DiscardOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
 }
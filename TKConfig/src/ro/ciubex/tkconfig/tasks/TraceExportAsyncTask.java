@@ -0,0 +1,124 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.tasks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import ro.ciubex.tkconfig.R;
+import ro.ciubex.tkconfig.models.Constants;
+import ro.ciubex.tkconfig.models.Tracing;
+
+import android.app.Application;
+import android.os.AsyncTask;
+import android.util.Log;
+
+/**
+ * This is an AsyncTask used to export the recorded spans as a Chrome trace
+ * JSON file.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class TraceExportAsyncTask extends
+		AsyncTask<Void, Void, DefaultAsyncTaskResult> {
+	private final static String TAG = TraceExportAsyncTask.class.getName();
+
+	/**
+	 * Responder used on export process.
+	 */
+	public interface Responder {
+		public Application getApplication();
+
+		public void startTraceExport();
+
+		public void endTraceExport(DefaultAsyncTaskResult result);
+	}
+
+	private Responder responder;
+	private File file;
+	private List<Tracing.Span> spans;
+
+	public TraceExportAsyncTask(Responder responder, File file) {
+		this.responder = responder;
+		this.file = file;
+		this.spans = Tracing.getSpans();
+	}
+
+	/**
+	 * Method invoked on the background thread.
+	 */
+	@Override
+	protected DefaultAsyncTaskResult doInBackground(Void... params) {
+		DefaultAsyncTaskResult result = new DefaultAsyncTaskResult();
+		Application app = responder.getApplication();
+		Writer out = null;
+		try {
+			File parent = file.getParentFile();
+			if (parent != null && !parent.exists()) {
+				parent.mkdirs();
+			}
+			out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(file), "UTF-8"));
+			Tracing.writeChromeTrace(spans, out);
+			out.flush();
+			result.resultId = Constants.OK;
+			result.resultMessage = app.getString(R.string.trace_export_success,
+					file.getAbsolutePath());
+		} catch (IOException e) {
+			Log.e(TAG, "doInBackground: " + e.getMessage(), e);
+			result.resultId = Constants.ERROR;
+			result.resultMessage = app.getString(R.string.trace_export_error,
+					file.getAbsolutePath(), e.getMessage());
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					Log.e(TAG, "close: " + e.getMessage(), e);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Method invoked on the UI thread before the task is executed.
+	 */
+	@Override
+	protected void onPreExecute() {
+		super.onPreExecute();
+		responder.startTraceExport();
+	}
+
+	/**
+	 * Method invoked on the UI thread after the background computation
+	 * finishes.
+	 */
+	@Override
+	protected void onPostExecute(DefaultAsyncTaskResult result) {
+		super.onPostExecute(result);
+		responder.endTraceExport(result);
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ro.ciubex.tkconfig.models.Command;
+import ro.ciubex.tkconfig.models.Constants;
+import ro.ciubex.tkconfig.models.GpsContact;
+
+/**
+ * Synthetic data sized like a real deployment: 1000 commands, 20000 phone
+ * contacts and 5000 GPS trackers. The data is generated using a fixed seed, so
+ * every run use the same input.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public final class BenchmarkData {
+	public static final int COMMANDS = 1000;
+	public static final int PHONE_CONTACTS = 20000;
+	public static final int GPS_TRACKERS = 5000;
+
+	private static final String[] COMMAND_TEXTS = { "begin?password?",
+			"password?password? ?new-password?",
+			"admin?password? ?admin-phone?", "t030s***n?password?",
+			"notn?password?", "monitor?password?", "tracker?password?",
+			"stockade?password? ?longitudeEW?,?latitudeNS?; ?longitudeEW?,?latitudeNS?",
+			"speed?password? ?speed?", "adminsms?password? ?phone-number?",
+			"adminip?password? ?server-ip? ?server-port?",
+			"apn?password? ?apn-name?", "lowbattery?password? on",
+			"shake?password? ?sensitive?", "sdlog?password? 1",
+			"time zone?password? ?timezone?", "tlimit?password? ?distance?",
+			"gprsmode?password? 0", "check?password?", "version?password?" };
+
+	private static final String[] WORDS = { "Set", "Cancel", "Auto", "Track",
+			"Geo-fence", "Alert", "Monitor", "Speed", "Battery", "SMS",
+			"GPRS", "Server", "APN", "Time", "Zone", "Sensor", "Movement",
+			"Position", "Link", "Mode" };
+
+	private static final String[] FIRST_NAMES = { "Ana", "Andrei", "Bogdan",
+			"Cristina", "Claudiu", "Daniel", "Elena", "Florin", "Gabriela",
+			"Ioana", "Ion", "Laura", "Mihai", "Maria", "Nicolae", "Oana",
+			"Radu", "Simona", "Stefan", "Vlad" };
+
+	private static final String[] LAST_NAMES = { "Popescu", "Ionescu",
+			"Popa", "Pop", "Nistor", "Dumitru", "Stan", "Stoica", "Gheorghe",
+			"Matei", "Ciobanu", "Rusu", "Munteanu", "Constantin", "Marin",
+			"Tudor", "Dobre", "Barbu", "Nita", "Florea" };
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Generate the command definitions: name, command text and description.
+	 * 
+	 * @return The command definitions.
+	 */
+	public static String[][] commandDefinitions() {
+		Random random = new Random(1);
+		String[][] result = new String[COMMANDS][];
+		for (int i = 0; i < COMMANDS; i++) {
+			String name = WORDS[random.nextInt(WORDS.length)] + " "
+					+ WORDS[random.nextInt(WORDS.length)] + " " + i;
+			String text = COMMAND_TEXTS[i % COMMAND_TEXTS.length];
+			result[i] = new String[] { name, text,
+					"Description of the command " + name };
+		}
+		return result;
+	}
+
+	/**
+	 * Generate the commands with all non password parameter values defined.
+	 * The ?password? parameters are left without value, they are filled from
+	 * the GPS contact password when the SMS is rendered.
+	 * 
+	 * @return The commands list.
+	 */
+	public static List<Command> commands() {
+		List<Command> result = new ArrayList<Command>(COMMANDS);
+		for (String[] definition : commandDefinitions()) {
+			Command command = new Command(definition[0], definition[1],
+					definition[2]);
+			for (String parameter : command.getParameters()) {
+				if (!Constants.PASSWORD.equals(parameter)) {
+					command.setParameterValue(parameter, parameter + "-value");
+				}
+			}
+			result.add(command);
+		}
+		return result;
+	}
+
+	/**
+	 * Generate the phone contact names.
+	 * 
+	 * @return The phone contact names.
+	 */
+	public static List<String> contactNames() {
+		Random random = new Random(2);
+		List<String> result = new ArrayList<String>(PHONE_CONTACTS);
+		for (int i = 0; i < PHONE_CONTACTS; i++) {
+			String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+					+ LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+			if (random.nextBoolean()) {
+				name = name.toUpperCase();
+			}
+			result.add(name + " " + random.nextInt(1000));
+		}
+		return result;
+	}
+
+	/**
+	 * Generate the GPS trackers, all selected.
+	 * 
+	 * @return The GPS trackers.
+	 */
+	public static List<GpsContact> gpsTrackers() {
+		Random random = new Random(3);
+		List<GpsContact> result = new ArrayList<GpsContact>(GPS_TRACKERS);
+		for (int i = 0; i < GPS_TRACKERS; i++) {
+			String phone = "+40" + (700000000 + random.nextInt(99999999));
+			String password = String.valueOf(100000 + random.nextInt(899999));
+			result.add(new GpsContact("Tracker " + i, phone, password, true));
+		}
+		return result;
+	}
+}
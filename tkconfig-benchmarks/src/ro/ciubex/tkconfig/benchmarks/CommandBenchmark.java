@@ -0,0 +1,129 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ro.ciubex.tkconfig.models.Command;
+import ro.ciubex.tkconfig.models.GpsContact;
+
+/**
+ * Benchmarks for the command construction, parameters parsing and SMS
+ * rendering. The results are per command.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+	private String[][] definitions;
+	private List<Command> commands;
+	private List<GpsContact> trackers;
+	private StringBuilder buffer;
+
+	@Setup
+	public void setup() {
+		definitions = BenchmarkData.commandDefinitions();
+		commands = BenchmarkData.commands();
+		trackers = BenchmarkData.gpsTrackers();
+		buffer = new StringBuilder(256);
+	}
+
+	/**
+	 * Build the commands, like on the commands loading.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkData.COMMANDS)
+	public void construct(Blackhole blackhole) {
+		for (String[] definition : definitions) {
+			blackhole.consume(new Command(definition[0], definition[1],
+					definition[2]));
+		}
+	}
+
+	/**
+	 * Build the commands and parse the parameters.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkData.COMMANDS)
+	public void constructAndParse(Blackhole blackhole) {
+		for (String[] definition : definitions) {
+			Command command = new Command(definition[0], definition[1],
+					definition[2]);
+			blackhole.consume(command.getParametersSize());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkData.COMMANDS)
+	public void getSMSCommand(Blackhole blackhole) {
+		for (Command command : commands) {
+			blackhole.consume(command.getSMSCommand());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkData.COMMANDS)
+	public void getSMSCommandShow(Blackhole blackhole) {
+		for (Command command : commands) {
+			blackhole.consume(command.getSMSCommandShow());
+		}
+	}
+
+	/**
+	 * Render the commands into a reused buffer.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkData.COMMANDS)
+	public void buildSMSCommand(Blackhole blackhole) {
+		for (Command command : commands) {
+			buffer.setLength(0);
+			command.buildSMSCommand(buffer, "123456");
+			blackhole.consume(buffer.length());
+		}
+	}
+
+	/**
+	 * Render one command for all the GPS trackers, the result is per tracker.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkData.GPS_TRACKERS)
+	public List<String> getSMSCommandsForTrackers() {
+		return commands.get(7).getSMSCommands(trackers);
+	}
+}
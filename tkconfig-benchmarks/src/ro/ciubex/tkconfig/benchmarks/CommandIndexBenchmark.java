@@ -0,0 +1,80 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.ciubex.tkconfig.models.Command;
+import ro.ciubex.tkconfig.models.CommandIndex;
+
+/**
+ * Benchmarks for the commands search index, one operation is one query, like
+ * on each typed character.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandIndexBenchmark {
+	@Param({ "s", "set", "set track", "stockade", "xyz" })
+	public String query;
+
+	private List<Command> commands;
+	private CommandIndex index;
+
+	@Setup
+	public void setup() {
+		commands = BenchmarkData.commands();
+		index = new CommandIndex();
+		index.rebuild(commands);
+	}
+
+	@Benchmark
+	public List<Command> search() {
+		return index.search(query);
+	}
+
+	/**
+	 * Index all the commands, like on the commands loading.
+	 */
+	@Benchmark
+	public CommandIndex rebuild() {
+		CommandIndex commandIndex = new CommandIndex();
+		commandIndex.rebuild(commands);
+		return commandIndex;
+	}
+}
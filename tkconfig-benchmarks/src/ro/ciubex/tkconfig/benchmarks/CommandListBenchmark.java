@@ -0,0 +1,81 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.ciubex.tkconfig.models.Command;
+import ro.ciubex.tkconfig.models.SortedCommandList;
+
+/**
+ * Benchmarks for loading the commands list, one operation is a full load of
+ * all the commands.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandListBenchmark {
+	private List<Command> commands;
+
+	@Setup
+	public void setup() {
+		commands = BenchmarkData.commands();
+	}
+
+	/**
+	 * Load the commands one by one, like on the editing.
+	 */
+	@Benchmark
+	public List<Command> addEach() {
+		List<Command> list = new SortedCommandList();
+		for (Command command : commands) {
+			list.add(command);
+		}
+		return list;
+	}
+
+	/**
+	 * Load all the commands using a single sort, like on the application
+	 * start.
+	 */
+	@Benchmark
+	public List<Command> addAll() {
+		List<Command> list = new SortedCommandList();
+		list.addAll(commands);
+		return list;
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ro.ciubex.tkconfig.models.Command;
+import ro.ciubex.tkconfig.models.Utilities;
+
+/**
+ * Benchmarks for the name comparison used to sort the commands and the phone
+ * contacts. ContactsComparator delegates to Utilities.compareNames, which is
+ * measured here on the contact names.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompareBenchmark {
+	private static final Comparator<String> NAMES_COMPARATOR = new Comparator<String>() {
+		@Override
+		public int compare(String s1, String s2) {
+			return Utilities.compareNames(s1, s2);
+		}
+	};
+
+	private List<Command> commands;
+	private List<String> contactNames;
+
+	@Setup
+	public void setup() {
+		commands = BenchmarkData.commands();
+		contactNames = BenchmarkData.contactNames();
+	}
+
+	/**
+	 * Compare each command with the next one, the result is per comparison.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkData.COMMANDS - 1)
+	public void commandCompareTo(Blackhole blackhole) {
+		for (int i = 1; i < BenchmarkData.COMMANDS; i++) {
+			blackhole.consume(commands.get(i - 1).compareTo(commands.get(i)));
+		}
+	}
+
+	/**
+	 * Compare each contact name with the next one, the result is per
+	 * comparison.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BenchmarkData.PHONE_CONTACTS - 1)
+	public void contactsCompare(Blackhole blackhole) {
+		for (int i = 1; i < BenchmarkData.PHONE_CONTACTS; i++) {
+			blackhole.consume(Utilities.compareNames(contactNames.get(i - 1),
+					contactNames.get(i)));
+		}
+	}
+
+	/**
+	 * Sort all the commands, the result is per sort.
+	 */
+	@Benchmark
+	public List<Command> sortCommands() {
+		List<Command> list = new ArrayList<Command>(commands);
+		Collections.sort(list);
+		return list;
+	}
+
+	/**
+	 * Sort all the phone contact names, the result is per sort.
+	 */
+	@Benchmark
+	public List<String> sortContacts() {
+		List<String> list = new ArrayList<String>(contactNames);
+		Collections.sort(list, NAMES_COMPARATOR);
+		return list;
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+
+import ro.ciubex.tkconfig.models.Command;
+
+/**
+ * Memory used by the parameters of 1000 commands. The commands share the
+ * parameter layouts and names, so the benchmark reports, using the GC
+ * profiler, the bytes allocated to load all of them (gc.alloc.rate.norm) and
+ * the {@link #main(String[])} method reports, using JOL, the heap retained by
+ * the loaded commands compared with the heap used if every command would own
+ * its layout and names, like before the sharing.
+ * 
+ * The benchmark is run with: gradle jmh -Pinclude=ParameterLayoutBenchmark
+ * and the footprint check with: gradle footprint
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterLayoutBenchmark {
+	private String[][] definitions;
+
+	@Setup
+	public void setup() {
+		definitions = BenchmarkData.commandDefinitions();
+	}
+
+	/**
+	 * Load all the commands and parse the parameters, the result is for all
+	 * the commands.
+	 */
+	@Benchmark
+	public Command[] load() {
+		return load(definitions);
+	}
+
+	/**
+	 * Build the commands and parse the parameters, so the layouts are
+	 * obtained.
+	 */
+	private static Command[] load(String[][] definitions) {
+		Command[] commands = new Command[definitions.length];
+		for (int i = 0; i < definitions.length; i++) {
+			commands[i] = new Command(definitions[i][0], definitions[i][1],
+					definitions[i][2]);
+			commands[i].getParametersSize();
+		}
+		return commands;
+	}
+
+	/**
+	 * Print the heap retained by the loaded commands. The shared size counts
+	 * each layout and name once, the owned size is the sum of the commands
+	 * measured one by one, so each command pays for its own layout and names.
+	 * The check fails if the sharing does not save memory.
+	 * 
+	 * @param args
+	 *            Not used.
+	 */
+	public static void main(String[] args) {
+		Command[] commands = load(BenchmarkData.commandDefinitions());
+		long shared = GraphLayout.parseInstance((Object[]) commands)
+				.totalSize();
+		long owned = 0;
+		for (Command command : commands) {
+			owned += GraphLayout.parseInstance(command).totalSize();
+		}
+		System.out.println("Commands: " + commands.length);
+		System.out.println("Shared layouts and names: " + shared + " bytes");
+		System.out.println("Owned layouts and names: " + owned + " bytes");
+		System.out.println("Saved: " + (owned - shared) + " bytes ("
+				+ (100 * (owned - shared) / owned) + "%)");
+		if (shared >= owned) {
+			System.exit(1);
+		}
+	}
+}
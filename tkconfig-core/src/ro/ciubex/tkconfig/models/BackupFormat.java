@@ -0,0 +1,93 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.nio.charset.Charset;
+
+/**
+ * The constants of the backup format. A backup starts with the magic bytes
+ * and the format version, followed by the compressed sections, the sections
+ * index and the index position:
+ * 
+ * <pre>
+ * magic (0x89 'T' 'K' 'B'), byte version,
+ * (deflate(record*, SECTION_END, int records, long CRC32))*,
+ * index: count, (name, long offset, long length)*,
+ * long index CRC32, long index offset
+ * </pre>
+ * 
+ * Each section is compressed on its own, so a section can be read without
+ * reading the others. A record is a type tag byte, the key and the value. The
+ * strings and the counts are saved as a variable length integer, the UTF-8
+ * bytes length plus one or 0 for null, followed by the UTF-8 bytes, so any
+ * character may be used on keys and values. The section checksum covers the
+ * uncompressed records and the SECTION_END tag, the index checksum covers
+ * the index bytes.
+ * 
+ * The version 2 backups have uncompressed sections, one after another, each
+ * started by the SECTION tag and its name, followed by the END tag. The
+ * backups made by the older versions, text lines with the key, the value
+ * class and the value separated by colons, do not start with the magic
+ * bytes.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public final class BackupFormat {
+	public static final int VERSION = 3;
+	static final int SEQUENTIAL_VERSION = 2;
+	static final byte[] MAGIC = { (byte) 0x89, 'T', 'K', 'B' };
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	static final byte END = 0;
+	static final byte SECTION = 1;
+	static final byte SECTION_END = 2;
+	static final byte STRING = 0x10;
+	static final byte BOOLEAN = 0x11;
+	static final byte INT = 0x12;
+	static final byte LONG = 0x13;
+	static final byte FLOAT = 0x14;
+
+	/** The number of bytes needed by {@link #isBackup(byte[], int)}. */
+	public static final int HEADER_SIZE = MAGIC.length;
+
+	private BackupFormat() {
+	}
+
+	/**
+	 * Check if a file starts with the magic bytes of this format.
+	 * 
+	 * @param header
+	 *            The first bytes of the file.
+	 * @param length
+	 *            The number of bytes read.
+	 * @return True if the file uses this format, false for the text format.
+	 */
+	public static boolean isBackup(byte[] header, int length) {
+		if (length < MAGIC.length) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (header[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,238 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The manifest of an incremental backup chain. A chain starts with a full
+ * backup, the base, followed by increments which contain only the sections
+ * changed since the previous backup and the history events added after the
+ * history high-water mark. The manifest records the base length and CRC32,
+ * the increments file names, the checksum of each saved section and the
+ * history mark. The format is:
+ * 
+ * <pre>
+ * int magic, int version,
+ * long base length, long base CRC32, int history count, long history mark,
+ * int increments count, (name)*,
+ * int checksums count, (section name, long CRC32)*,
+ * long CRC32 of the previous bytes
+ * </pre>
+ * 
+ * The version 1 manifests have no base CRC32 and are decoded only to restore
+ * their chains.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class BackupManifest {
+	public static final int MAGIC = 0x544B424D;
+	public static final int VERSION = 2;
+
+	private long baseLength;
+	private long baseChecksum = -1L;
+	private int historyCount;
+	private long historyMark;
+	private final List<String> increments;
+	private final Map<String, Long> checksums;
+
+	public BackupManifest() {
+		this.increments = new ArrayList<String>();
+		this.checksums = new LinkedHashMap<String, Long>();
+	}
+
+	/**
+	 * Obtain the length of the full backup which started this chain, used to
+	 * check if the base was replaced by another backup.
+	 * 
+	 * @return The base file length.
+	 */
+	public long getBaseLength() {
+		return baseLength;
+	}
+
+	public void setBaseLength(long baseLength) {
+		this.baseLength = baseLength;
+	}
+
+	/**
+	 * Obtain the CRC32 of the full backup which started this chain, used with
+	 * its length to check if the base was replaced by another backup.
+	 * 
+	 * @return The base file checksum, or -1 if it was not recorded by a
+	 *         version 1 manifest.
+	 */
+	public long getBaseChecksum() {
+		return baseChecksum;
+	}
+
+	public void setBaseChecksum(long baseChecksum) {
+		this.baseChecksum = baseChecksum;
+	}
+
+	/**
+	 * Obtain the number of history events saved on the whole chain. The
+	 * events of an increment are saved after the events of the previous
+	 * backups, so the chain can be replayed without renumbering them. The
+	 * chain is valid only while the store keeps this number of events up to
+	 * the history mark; a deleted or evicted event requires a full backup.
+	 * 
+	 * @return The number of saved history events.
+	 */
+	public int getHistoryCount() {
+		return historyCount;
+	}
+
+	public void setHistoryCount(int historyCount) {
+		this.historyCount = historyCount;
+	}
+
+	/**
+	 * Obtain the row id of the last saved history event.
+	 * 
+	 * @return The history high-water mark.
+	 */
+	public long getHistoryMark() {
+		return historyMark;
+	}
+
+	public void setHistoryMark(long historyMark) {
+		this.historyMark = historyMark;
+	}
+
+	/**
+	 * Obtain the increments file names, in the order they were written.
+	 * 
+	 * @return The increments file names.
+	 */
+	public List<String> getIncrements() {
+		return Collections.unmodifiableList(increments);
+	}
+
+	public void addIncrement(String name) {
+		increments.add(name);
+	}
+
+	/**
+	 * Obtain the checksum of a section, as it was last saved on this chain.
+	 * 
+	 * @param section
+	 *            The section name.
+	 * @return The section checksum or -1 if the section was not saved.
+	 */
+	public long getChecksum(String section) {
+		Long checksum = checksums.get(section);
+		return checksum != null ? checksum.longValue() : -1L;
+	}
+
+	public void setChecksum(String section, long checksum) {
+		checksums.put(section, Long.valueOf(checksum));
+	}
+
+	/**
+	 * Encode this manifest.
+	 * 
+	 * @return The manifest bytes.
+	 */
+	public byte[] encode() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(baseLength);
+		out.writeLong(baseChecksum);
+		out.writeInt(historyCount);
+		out.writeLong(historyMark);
+		out.writeInt(increments.size());
+		for (String name : increments) {
+			out.writeUTF(name);
+		}
+		out.writeInt(checksums.size());
+		for (Map.Entry<String, Long> entry : checksums.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeLong(entry.getValue().longValue());
+		}
+		out.flush();
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeLong(crc.getValue());
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode a manifest.
+	 * 
+	 * @param data
+	 *            The manifest bytes.
+	 * @return The decoded manifest.
+	 * @throws IOException
+	 *             If the bytes are not a valid manifest of a known version.
+	 */
+	public static BackupManifest decode(byte[] data) throws IOException {
+		if (data.length < 8) {
+			throw new IOException("Truncated manifest");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length - 8);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				data));
+		in.skipBytes(data.length - 8);
+		if (crc.getValue() != in.readLong()) {
+			throw new IOException("Corrupted manifest");
+		}
+		in = new DataInputStream(new ByteArrayInputStream(data, 0,
+				data.length - 8));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a backup manifest");
+		}
+		int version = in.readInt();
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported manifest version: " + version);
+		}
+		BackupManifest manifest = new BackupManifest();
+		manifest.baseLength = in.readLong();
+		if (version > 1) {
+			manifest.baseChecksum = in.readLong();
+		}
+		manifest.historyCount = in.readInt();
+		manifest.historyMark = in.readLong();
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			manifest.increments.add(in.readUTF());
+		}
+		count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			String section = in.readUTF();
+			manifest.checksums.put(section, Long.valueOf(in.readLong()));
+		}
+		return manifest;
+	}
+}
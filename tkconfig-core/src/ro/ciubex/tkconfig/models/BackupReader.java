@@ -0,0 +1,421 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming reader of the backup format described by {@link BackupFormat}.
+ * The records are decoded directly from a buffer filled from the file channel,
+ * decompressing the sections, and passed to a handler, checking the type tag
+ * byte instead of class names. Only the chosen sections are read, the others
+ * are skipped using the sections index. A section with a wrong records count
+ * or checksum stops the reading.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class BackupReader {
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Receiver of the backup records.
+	 */
+	public interface Handler {
+		public void startSection(String name) throws IOException;
+
+		public void onString(String key, String value);
+
+		public void onBoolean(String key, boolean value);
+
+		public void onInt(String key, int value);
+
+		public void onLong(String key, long value);
+
+		public void onFloat(String key, float value);
+
+		public void endSection(String name, int records) throws IOException;
+	}
+
+	private static final Handler SKIP = new Handler() {
+
+		@Override
+		public void startSection(String name) {
+		}
+
+		@Override
+		public void onString(String key, String value) {
+		}
+
+		@Override
+		public void onBoolean(String key, boolean value) {
+		}
+
+		@Override
+		public void onInt(String key, int value) {
+		}
+
+		@Override
+		public void onLong(String key, long value) {
+		}
+
+		@Override
+		public void onFloat(String key, float value) {
+		}
+
+		@Override
+		public void endSection(String name, int records) {
+		}
+	};
+
+	private final FileChannel channel;
+	private ByteBuffer buffer;
+	private final CRC32 crc;
+	private Inflater inflater;
+	private byte[] input;
+	private long inputRemaining;
+	private boolean inSection;
+	private int crcMark;
+	private long bytesRead;
+
+	public BackupReader(FileChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.buffer.flip();
+		this.crc = new CRC32();
+	}
+
+	/**
+	 * Obtain the number of bytes read from the file until now.
+	 * 
+	 * @return The read bytes.
+	 */
+	public long getPosition() {
+		return bytesRead;
+	}
+
+	/**
+	 * Read the whole backup.
+	 * 
+	 * @param handler
+	 *            The handler of the backup records.
+	 * @throws IOException
+	 *             If the backup could not be read or is not valid.
+	 */
+	public void read(Handler handler) throws IOException {
+		read(handler, null);
+	}
+
+	/**
+	 * Read the chosen sections of the backup.
+	 * 
+	 * @param handler
+	 *            The handler of the backup records.
+	 * @param sections
+	 *            The names of the sections to be read, or null for all.
+	 * @throws IOException
+	 *             If the backup could not be read or is not valid.
+	 */
+	public void read(Handler handler, Set<String> sections) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(BackupFormat.MAGIC.length + 1);
+		channel.position(0);
+		while (header.hasRemaining()) {
+			if (channel.read(header) < 0) {
+				throw new EOFException("Truncated backup");
+			}
+		}
+		bytesRead += header.capacity();
+		if (!BackupFormat.isBackup(header.array(), header.capacity())) {
+			throw new IOException("Not a backup file");
+		}
+		int version = header.get(BackupFormat.MAGIC.length);
+		if (version == BackupFormat.VERSION) {
+			readIndexed(handler, sections);
+		} else if (version == BackupFormat.SEQUENTIAL_VERSION) {
+			seek(header.capacity());
+			readSequential(handler, sections);
+		} else {
+			throw new IOException("Unsupported backup version: " + version);
+		}
+	}
+
+	/**
+	 * Read the sections index and only the chosen sections.
+	 */
+	private void readIndexed(Handler handler, Set<String> sections)
+			throws IOException {
+		long size = channel.size();
+		if (size < BackupFormat.MAGIC.length + 17) {
+			throw new EOFException("Truncated backup");
+		}
+		seek(size - 16);
+		require(16);
+		long indexChecksum = buffer.getLong();
+		long indexOffset = buffer.getLong();
+		if (indexOffset < BackupFormat.MAGIC.length + 1
+				|| indexOffset > size - 16) {
+			throw new IOException("Invalid backup index offset: "
+					+ indexOffset);
+		}
+		seek(indexOffset);
+		ByteBuffer index = ByteBuffer.allocate((int) (size - 16 - indexOffset));
+		while (index.hasRemaining()) {
+			int count = channel.read(index);
+			if (count < 0) {
+				throw new EOFException("Truncated backup");
+			}
+			bytesRead += count;
+		}
+		crc.reset();
+		crc.update(index.array(), 0, index.capacity());
+		if (crc.getValue() != indexChecksum) {
+			throw new IOException("Corrupted backup index");
+		}
+		seek(indexOffset);
+		int count = readLength();
+		String[] names = new String[count];
+		long[] offsets = new long[count];
+		long[] lengths = new long[count];
+		for (int i = 0; i < count; i++) {
+			names[i] = readString();
+			require(16);
+			offsets[i] = buffer.getLong();
+			lengths[i] = buffer.getLong();
+			if (offsets[i] < 0 || lengths[i] < 0
+					|| offsets[i] + lengths[i] > indexOffset) {
+				throw new IOException("Invalid backup section: " + names[i]);
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			if (sections == null || sections.contains(names[i])) {
+				seek(offsets[i]);
+				startInflating(lengths[i]);
+				try {
+					readSection(handler, names[i]);
+				} finally {
+					inflater.end();
+					inflater = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read the uncompressed sections of a version 2 backup, one after another.
+	 */
+	private void readSequential(Handler handler, Set<String> sections)
+			throws IOException {
+		while (true) {
+			byte tag = readByte();
+			if (tag == BackupFormat.END) {
+				return;
+			} else if (tag == BackupFormat.SECTION) {
+				String name = readString();
+				readSection(sections == null || sections.contains(name)
+						? handler : SKIP, name);
+			} else {
+				throw new IOException("Invalid backup tag: " + tag);
+			}
+		}
+	}
+
+	private void readSection(Handler handler, String name) throws IOException {
+		handler.startSection(name);
+		inSection = true;
+		crc.reset();
+		crcMark = buffer.position();
+		int records = 0;
+		while (true) {
+			byte tag = readByte();
+			if (tag == BackupFormat.SECTION_END) {
+				break;
+			}
+			String key = readString();
+			switch (tag) {
+			case BackupFormat.STRING:
+				handler.onString(key, readString());
+				break;
+			case BackupFormat.BOOLEAN:
+				handler.onBoolean(key, readByte() != 0);
+				break;
+			case BackupFormat.INT:
+				require(4);
+				handler.onInt(key, buffer.getInt());
+				break;
+			case BackupFormat.LONG:
+				require(8);
+				handler.onLong(key, buffer.getLong());
+				break;
+			case BackupFormat.FLOAT:
+				require(4);
+				handler.onFloat(key, buffer.getFloat());
+				break;
+			default:
+				throw new IOException("Invalid record type: " + tag
+						+ " on section " + name);
+			}
+			records++;
+		}
+		crc.update(buffer.array(), crcMark, buffer.position() - crcMark);
+		inSection = false;
+		require(12);
+		int expected = buffer.getInt();
+		long checksum = buffer.getLong();
+		if (expected != records || checksum != crc.getValue()) {
+			throw new IOException("Corrupted backup section: " + name);
+		}
+		handler.endSection(name, records);
+	}
+
+	private byte readByte() throws IOException {
+		require(1);
+		return buffer.get();
+	}
+
+	private String readString() throws IOException {
+		int length = readLength();
+		if (length == 0) {
+			return null;
+		}
+		length--;
+		require(length);
+		String value = new String(buffer.array(), buffer.position(), length,
+				BackupFormat.UTF_8);
+		buffer.position(buffer.position() + length);
+		return value;
+	}
+
+	private int readLength() throws IOException {
+		int length = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = readByte();
+			length |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (length < 0) {
+					break;
+				}
+				return length;
+			}
+		}
+		throw new IOException("Invalid backup length");
+	}
+
+	/**
+	 * Move the channel to a file position, dropping the buffered bytes.
+	 */
+	private void seek(long position) throws IOException {
+		channel.position(position);
+		buffer.clear();
+		buffer.flip();
+		crcMark = 0;
+	}
+
+	/**
+	 * Decompress the next bytes read from the channel.
+	 * 
+	 * @param length
+	 *            The compressed section length.
+	 */
+	private void startInflating(long length) {
+		inflater = new Inflater();
+		inputRemaining = length;
+		if (input == null) {
+			input = new byte[BUFFER_SIZE];
+		}
+	}
+
+	/**
+	 * Make sure that the buffer has at least the requested number of unread
+	 * bytes, reading more from the channel when needed.
+	 */
+	private void require(int count) throws IOException {
+		if (buffer.remaining() >= count) {
+			return;
+		}
+		if (inSection) {
+			crc.update(buffer.array(), crcMark, buffer.position() - crcMark);
+		}
+		buffer.compact();
+		if (buffer.capacity() < count) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(count,
+					buffer.capacity() * 2));
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+		while (buffer.position() < count) {
+			if (!fill()) {
+				throw new EOFException("Truncated backup");
+			}
+		}
+		buffer.flip();
+		crcMark = 0;
+	}
+
+	/**
+	 * Add bytes to the buffer, which is in write mode.
+	 * 
+	 * @return False if there are no more bytes.
+	 */
+	private boolean fill() throws IOException {
+		if (inflater == null) {
+			int count = channel.read(buffer);
+			if (count > 0) {
+				bytesRead += count;
+			}
+			return count >= 0;
+		}
+		try {
+			while (true) {
+				int count = inflater.inflate(buffer.array(), buffer.position(),
+						buffer.remaining());
+				if (count > 0) {
+					buffer.position(buffer.position() + count);
+					return true;
+				}
+				if (inflater.finished() || inflater.needsDictionary()) {
+					return false;
+				}
+				if (inflater.needsInput()) {
+					if (inputRemaining <= 0) {
+						return false;
+					}
+					ByteBuffer target = ByteBuffer.wrap(input, 0,
+							(int) Math.min(input.length, inputRemaining));
+					int read = channel.read(target);
+					if (read < 0) {
+						return false;
+					}
+					bytesRead += read;
+					inputRemaining -= read;
+					inflater.setInput(input, 0, read);
+				}
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted backup data: " + e.getMessage());
+		}
+	}
+}
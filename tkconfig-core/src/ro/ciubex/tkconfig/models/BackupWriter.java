@@ -0,0 +1,289 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming writer of the backup format described by {@link BackupFormat}.
+ * The records are encoded on a bounded buffer, which is compressed and
+ * written to the output stream when it is full.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class BackupWriter implements Closeable {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final OutputStream out;
+	private final ByteBuffer buffer;
+	private final byte[] compressed;
+	private final Deflater deflater;
+	private final CRC32 crc;
+	private final List<String> sectionNames;
+	private final List<long[]> sectionBounds;
+	private final Map<String, Long> checksums;
+	private String section;
+	private boolean checksum;
+	private int crcMark;
+	private int records;
+	private long written;
+	private long sectionOffset;
+
+	public BackupWriter(OutputStream out) throws IOException {
+		this.out = out;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.compressed = new byte[BUFFER_SIZE];
+		this.deflater = new Deflater();
+		this.crc = new CRC32();
+		this.sectionNames = new ArrayList<String>();
+		this.sectionBounds = new ArrayList<long[]>();
+		this.checksums = new LinkedHashMap<String, Long>();
+		buffer.put(BackupFormat.MAGIC);
+		buffer.put((byte) BackupFormat.VERSION);
+	}
+
+	/**
+	 * Start a new section, ending the current one.
+	 * 
+	 * @param name
+	 *            The section name.
+	 */
+	public void startSection(String name) throws IOException {
+		if (section != null) {
+			endSection();
+		}
+		flushBuffer();
+		section = name;
+		checksum = true;
+		records = 0;
+		crc.reset();
+		crcMark = 0;
+		sectionOffset = written;
+	}
+
+	/**
+	 * End the current section, writing its records count and checksum, and
+	 * finish its compressed stream.
+	 */
+	public void endSection() throws IOException {
+		if (section == null) {
+			return;
+		}
+		ensure(1);
+		buffer.put(BackupFormat.SECTION_END);
+		crc.update(buffer.array(), crcMark, buffer.position() - crcMark);
+		checksum = false;
+		ensure(12);
+		buffer.putInt(records);
+		buffer.putLong(crc.getValue());
+		checksums.put(section, Long.valueOf(crc.getValue()));
+		flushBuffer();
+		deflater.finish();
+		while (!deflater.finished()) {
+			deflate();
+		}
+		deflater.reset();
+		sectionNames.add(section);
+		sectionBounds.add(new long[] { sectionOffset, written - sectionOffset });
+		section = null;
+	}
+
+	public void putString(String key, String value) throws IOException {
+		startRecord(BackupFormat.STRING, key);
+		writeString(value);
+	}
+
+	public void putBoolean(String key, boolean value) throws IOException {
+		startRecord(BackupFormat.BOOLEAN, key);
+		ensure(1);
+		buffer.put((byte) (value ? 1 : 0));
+	}
+
+	public void putInt(String key, int value) throws IOException {
+		startRecord(BackupFormat.INT, key);
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	public void putLong(String key, long value) throws IOException {
+		startRecord(BackupFormat.LONG, key);
+		ensure(8);
+		buffer.putLong(value);
+	}
+
+	public void putFloat(String key, float value) throws IOException {
+		startRecord(BackupFormat.FLOAT, key);
+		ensure(4);
+		buffer.putFloat(value);
+	}
+
+	/**
+	 * Write a preferences value, using the record type of its class.
+	 * 
+	 * @param key
+	 *            The preferences key.
+	 * @param value
+	 *            The preferences value.
+	 * @return False if the value type is not supported and it was not written.
+	 */
+	public boolean put(String key, Object value) throws IOException {
+		if (value instanceof String) {
+			putString(key, (String) value);
+		} else if (value instanceof Boolean) {
+			putBoolean(key, ((Boolean) value).booleanValue());
+		} else if (value instanceof Integer) {
+			putInt(key, ((Integer) value).intValue());
+		} else if (value instanceof Long) {
+			putLong(key, ((Long) value).longValue());
+		} else if (value instanceof Float) {
+			putFloat(key, ((Float) value).floatValue());
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Obtain the checksums of the ended sections, which depend only on the
+	 * section records, so a section with the same records has the same
+	 * checksum on any backup.
+	 * 
+	 * @return The checksums by section name.
+	 */
+	public Map<String, Long> getChecksums() {
+		return Collections.unmodifiableMap(checksums);
+	}
+
+	/**
+	 * End the current section, write the sections index and flush the
+	 * buffer. The backup is not complete without this call.
+	 */
+	public void finish() throws IOException {
+		endSection();
+		flushBuffer();
+		long indexOffset = written;
+		checksum = true;
+		crc.reset();
+		crcMark = 0;
+		writeLength(sectionNames.size());
+		for (int i = 0; i < sectionNames.size(); i++) {
+			writeString(sectionNames.get(i));
+			ensure(16);
+			buffer.putLong(sectionBounds.get(i)[0]);
+			buffer.putLong(sectionBounds.get(i)[1]);
+		}
+		crc.update(buffer.array(), crcMark, buffer.position() - crcMark);
+		checksum = false;
+		ensure(16);
+		buffer.putLong(crc.getValue());
+		buffer.putLong(indexOffset);
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		deflater.end();
+		out.close();
+	}
+
+	private void startRecord(byte type, String key) throws IOException {
+		if (section == null) {
+			throw new IllegalStateException("No backup section started");
+		}
+		ensure(1);
+		buffer.put(type);
+		writeString(key);
+		records++;
+	}
+
+	private void writeString(String value) throws IOException {
+		if (value == null) {
+			writeLength(0);
+			return;
+		}
+		byte[] bytes = value.getBytes(BackupFormat.UTF_8);
+		writeLength(bytes.length + 1);
+		if (bytes.length <= buffer.remaining()) {
+			buffer.put(bytes);
+		} else {
+			int offset = 0;
+			while (offset < bytes.length) {
+				ensure(1);
+				int count = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.put(bytes, offset, count);
+				offset += count;
+			}
+		}
+	}
+
+	private void writeLength(int length) throws IOException {
+		ensure(5);
+		while ((length & ~0x7F) != 0) {
+			buffer.put((byte) ((length & 0x7F) | 0x80));
+			length >>>= 7;
+		}
+		buffer.put((byte) length);
+	}
+
+	private void ensure(int count) throws IOException {
+		if (buffer.remaining() < count) {
+			flushBuffer();
+		}
+	}
+
+	/**
+	 * Write the buffer content, compressed if a section is started.
+	 */
+	private void flushBuffer() throws IOException {
+		if (checksum) {
+			crc.update(buffer.array(), crcMark, buffer.position() - crcMark);
+		}
+		if (section != null) {
+			deflater.setInput(buffer.array(), 0, buffer.position());
+			while (!deflater.needsInput()) {
+				deflate();
+			}
+		} else {
+			out.write(buffer.array(), 0, buffer.position());
+			written += buffer.position();
+		}
+		buffer.clear();
+		crcMark = 0;
+	}
+
+	private void deflate() throws IOException {
+		int count = deflater.deflate(compressed);
+		if (count > 0) {
+			out.write(compressed, 0, count);
+			written += count;
+		}
+	}
+}
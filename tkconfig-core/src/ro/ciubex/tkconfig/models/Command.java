@@ -0,0 +1,540 @@
+/**
+ * This file is part of TKConfig application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Commands model class.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class Command implements Comparable<Command> {
+	private volatile long id;
+	private String name;
+	private String sortKey;
+	private String command;
+	private String description;
+	private String storedLayout;
+	private ParameterLayout layout;
+	private String[] values;
+	private boolean parametersModified;
+	private CommandTemplate template;
+
+	public Command(String name, String command) {
+		this(name, command, "");
+	}
+
+	public Command(String name, String command, String description) {
+		this(name, command, description, null);
+	}
+
+	/**
+	 * Create a command using the parameters layout stored together with the
+	 * command. The parameters are prepared only when are used first time.
+	 * 
+	 * @param name
+	 *            The command name.
+	 * @param command
+	 *            The command text.
+	 * @param description
+	 *            The command description.
+	 * @param storedLayout
+	 *            The parameters layout obtained from
+	 *            {@link #getParametersLayout()}, or null if is not available.
+	 */
+	public Command(String name, String command, String description,
+			String storedLayout) {
+		this.name = name;
+		this.command = command;
+		this.description = description;
+		this.storedLayout = storedLayout;
+	}
+
+	/**
+	 * Obtain the storage row id of this command.
+	 * 
+	 * @return The row id, or 0 if the command is not stored.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+		sortKey = null;
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	public void setCommand(String command) {
+		this.command = command;
+		storedLayout = null;
+		template = null;
+		if (values != null) {
+			prepareParameters();
+		} else {
+			layout = null;
+		}
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public List<String> getParameters() {
+		return Collections.unmodifiableList(Arrays.asList(getLayout()
+				.getParameters()));
+	}
+
+	public boolean addParameter(String parameter) {
+		setLayout(getLayout().withParameter(parameter));
+		return true;
+	}
+
+	public boolean hasParameters() {
+		ParameterLayout current = getLayout();
+		return current.getParameters().length - current.getPasswords() > 0;
+	}
+
+	public boolean needParameters() {
+		return command.indexOf("?") > -1;
+	}
+
+	/**
+	 * Set the value for a specified parameter.
+	 * 
+	 * @param parameterName
+	 *            Parameter name.
+	 * @param parameterValue
+	 *            Parameter value.
+	 */
+	public void setParameterValue(String parameterName, String parameterValue) {
+		int slot = getLayout().indexOf(parameterName);
+		parametersModified = true;
+		if (slot < 0) {
+			setLayout(getLayout().withExtra(parameterName));
+			slot = getLayout().indexOf(parameterName);
+		}
+		if (values == null) {
+			values = new String[getLayout().getSlotsCount()];
+		}
+		values[slot] = parameterValue;
+	}
+
+	/**
+	 * Obtain the parameter value for the specified parameter name.
+	 * 
+	 * @param parameterName
+	 *            The parameter to be search.
+	 * 
+	 * @return The parameter value or the parameter name if the parameter is not
+	 *         defined.
+	 */
+	public String getParameterValue(String parameterName) {
+		if (values == null) {
+			return null;
+		}
+		int slot = getLayout().indexOf(parameterName);
+		return slot < 0 ? null : values[slot];
+	}
+
+	/**
+	 * Obtain a string list with the parameter names and the values.
+	 * 
+	 * @return A string list with the parameter names and values. If the
+	 *         parameter list is empty, will be returned the empty string.
+	 */
+	public String getParametersListToBeShow() {
+		StringBuilder sb = new StringBuilder("");
+		String temp;
+		int i = 1;
+		for (String paramName : getLayout().getParameters()) {
+			// skip if is the password
+			if (!Constants.PASSWORD.equals(paramName)) {
+				temp = getParameterValue(paramName);
+				if (sb.length() > 0) {
+					sb.append(",\n");
+				}
+				sb.append(i).append(". ").append(paramName).append(": ");
+				if (temp != null) {
+					sb.append(temp);
+				} else {
+					sb.append('?').append(paramName).append('?');
+				}
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Get prepared SMS command, based on the parameters and associated values.
+	 * 
+	 * @return The SMS command to send.
+	 */
+	public String getSMSCommand() {
+		StringBuilder sb = new StringBuilder(command.length());
+		buildSMSCommand(sb, null);
+		return sb.toString();
+	}
+
+	/**
+	 * Append the prepared SMS command to the provided buffer, based on the
+	 * parameters and associated values. The buffer can be reused for many
+	 * commands.
+	 * 
+	 * @param out
+	 *            The buffer where the SMS command is appended.
+	 * @param password
+	 *            The password used for the ?password? parameter, or null to
+	 *            use the parameter value.
+	 */
+	public void buildSMSCommand(StringBuilder out, String password) {
+		CommandTemplate template = getTemplate();
+		boolean withValues = hasParameters();
+		int count = template.getSlotsCount();
+		String param, value;
+		for (int i = 0; i < count; i++) {
+			template.appendLiteral(out, i);
+			param = template.getSlotName(i);
+			if (password != null && Constants.PASSWORD.equals(param)) {
+				value = password;
+			} else {
+				value = withValues ? getParameterValue(param) : null;
+			}
+			template.appendSlot(out, i, value);
+		}
+		template.appendLiteral(out, count);
+	}
+
+	/**
+	 * Prepare the SMS commands for a list of GPS contacts. The command parts
+	 * around the ?password? parameters are rendered only once, then for each
+	 * contact is filled only the contact password.
+	 * 
+	 * @param contacts
+	 *            The GPS contacts which should receive the command.
+	 * @return A list with the SMS command for each contact, in the same order
+	 *         as the contacts.
+	 */
+	public List<String> getSMSCommands(List<GpsContact> contacts) {
+		int size = contacts.size();
+		List<String> result = new ArrayList<String>(size);
+		if (size > 0) {
+			String[] parts = prepareSharedParts();
+			int i, length = 0, maxPassword = 0;
+			String password;
+			for (String part : parts) {
+				length += part.length();
+			}
+			for (GpsContact contact : contacts) {
+				password = contact.getPassword();
+				if (password != null && password.length() > maxPassword) {
+					maxPassword = password.length();
+				}
+			}
+			StringBuilder sb = new StringBuilder(length + (parts.length - 1)
+					* Math.max(maxPassword, Constants.PASSWORD.length() + 2));
+			for (GpsContact contact : contacts) {
+				password = contact.getPassword();
+				sb.setLength(0);
+				sb.append(parts[0]);
+				for (i = 1; i < parts.length; i++) {
+					if (password != null) {
+						sb.append(password);
+					} else {
+						sb.append('?').append(Constants.PASSWORD).append('?');
+					}
+					sb.append(parts[i]);
+				}
+				result.add(sb.toString());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Render the command parts shared by all GPS contacts, the parts are
+	 * separated by the ?password? parameters.
+	 * 
+	 * @return The shared command parts, one more than the number of passwords.
+	 */
+	private String[] prepareSharedParts() {
+		CommandTemplate template = getTemplate();
+		String[] parts = new String[getLayout().getPasswords() + 1];
+		boolean withValues = hasParameters();
+		int count = template.getSlotsCount();
+		int k = 0;
+		String param;
+		StringBuilder sb = new StringBuilder(command.length());
+		for (int i = 0; i < count; i++) {
+			template.appendLiteral(sb, i);
+			param = template.getSlotName(i);
+			if (Constants.PASSWORD.equals(param)) {
+				parts[k++] = sb.toString();
+				sb.setLength(0);
+			} else {
+				template.appendSlot(sb, i,
+						withValues ? getParameterValue(param) : null);
+			}
+		}
+		template.appendLiteral(sb, count);
+		parts[k] = sb.toString();
+		return parts;
+	}
+
+	/**
+	 * Get prepared SMS command to be showed to the user, based on the
+	 * parameters and associated values.
+	 * 
+	 * @return The SMS command to be showed.
+	 */
+	public String getSMSCommandShow() {
+		CommandTemplate template = getTemplate();
+		StringBuilder sb = new StringBuilder(command.length());
+		int count = template.getSlotsCount();
+		String param, value;
+		for (int i = 0; i < count; i++) {
+			template.appendLiteral(sb, i);
+			param = template.getSlotName(i);
+			if (Constants.PASSWORD.equals(param)) {
+				value = Constants.STARS;
+			} else {
+				value = getParameterValue(param);
+			}
+			template.appendSlot(sb, i, value);
+		}
+		template.appendLiteral(sb, count);
+		return sb.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((command == null) ? 0 : command.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		Command other = (Command) obj;
+		if (command == null) {
+			if (other.command != null)
+				return false;
+		} else if (!command.equals(other.command))
+			return false;
+		return true;
+	}
+
+	/**
+	 * Obtain the case folded name used to sort the commands. The key is
+	 * computed once and reused until the name is changed.
+	 * 
+	 * @return The sort key.
+	 */
+	public String getSortKey() {
+		if (sortKey == null) {
+			sortKey = Utilities.foldName(name);
+		}
+		return sortKey;
+	}
+
+	@Override
+	public int compareTo(Command another) {
+		return getSortKey().compareTo(another.getSortKey());
+	}
+
+	/**
+	 * Prepare the parameters list and compile the command template. The
+	 * stored parameters layout is used if is valid, otherwise the command is
+	 * scanned. The values of the parameters still used by the command are
+	 * kept.
+	 */
+	private void prepareParameters() {
+		int[] bounds = ParameterScanner.decode(storedLayout, command);
+		if (bounds == null) {
+			bounds = ParameterScanner.scan(command);
+		}
+		storedLayout = null;
+		ParameterLayout newLayout = ParameterLayout.obtain(ParameterScanner
+				.getNames(command, bounds));
+		template = new CommandTemplate(command, bounds,
+				newLayout.getParameters());
+		setLayout(newLayout);
+	}
+
+	/**
+	 * Obtain the parameters layout, the command is parsed if is needed.
+	 * 
+	 * @return The parameters layout.
+	 */
+	private ParameterLayout getLayout() {
+		if (template == null) {
+			prepareParameters();
+		}
+		return layout;
+	}
+
+	/**
+	 * Change the parameters layout, the values of the parameters still
+	 * present on the new layout are kept.
+	 * 
+	 * @param newLayout
+	 *            The new parameters layout.
+	 */
+	private void setLayout(ParameterLayout newLayout) {
+		if (values != null) {
+			String[] newValues = null;
+			int slot;
+			for (int i = 0; i < values.length; i++) {
+				slot = newLayout.indexOf(layout.getSlotName(i));
+				if (values[i] != null && slot > -1) {
+					if (newValues == null) {
+						newValues = new String[newLayout.getSlotsCount()];
+					}
+					newValues[slot] = values[i];
+				}
+			}
+			values = newValues;
+		}
+		layout = newLayout;
+	}
+
+	/**
+	 * Obtain the compiled command template.
+	 * 
+	 * @return The command template.
+	 */
+	public CommandTemplate getTemplate() {
+		if (template == null) {
+			prepareParameters();
+		}
+		return template;
+	}
+
+	/**
+	 * Obtain the parameters layout to be stored together with the command and
+	 * used on the next load, to avoid parsing the command again.
+	 * 
+	 * @return The encoded parameters layout.
+	 */
+	public String getParametersLayout() {
+		if (template == null && storedLayout != null) {
+			return storedLayout;
+		}
+		return ParameterScanner.encode(getTemplate().getBounds());
+	}
+
+	/**
+	 * Obtain the parameter name based on the position in the list.
+	 * 
+	 * @param parameterPosition
+	 *            The position of the parameter in the list.
+	 * @return The parameter name from the specified position. Null if the
+	 *         position is not correct.
+	 */
+	public String getParameterName(int parameterPosition) {
+		String parameterName = null;
+		String[] parameters = getLayout().getParameters();
+		if (parameterPosition > -1 && parameterPosition < parameters.length) {
+			parameterName = parameters[parameterPosition];
+		}
+		return parameterName;
+	}
+
+	/**
+	 * Returns the number of parameters.
+	 * 
+	 * @return The number of parameters.
+	 */
+	public int getParametersSize() {
+		return getLayout().getParameters().length;
+	}
+
+	/**
+	 * Check if the parameters were modified.
+	 * 
+	 * @return True if the parameters were modified.
+	 */
+	public boolean hasParametersModified() {
+		return parametersModified;
+	}
+
+	/**
+	 * Set the parameters modified flag state.
+	 * 
+	 * @param flag
+	 *            The parameters modified flag state.
+	 */
+	public void setParametersModified(boolean flag) {
+		parametersModified = flag;
+	}
+
+	/**
+	 * Check if the command contain password parameter.
+	 * 
+	 * @return True if the command contain passwords.
+	 */
+	public boolean havePassword() {
+		return getLayout().getPasswords() > 0;
+	}
+
+	@Override
+	public Object clone() {
+		return new Command(name + " (2)", command, description);
+	}
+
+	/**
+	 * Obtain the position of the parameter.
+	 * 
+	 * @param parameterName
+	 *            The parameter name.
+	 * @return The position or -1 if the parameter does not exist.
+	 */
+	public int getParameterPosition(String parameterName) {
+		return getLayout().getPosition(parameterName);
+	}
+
+}
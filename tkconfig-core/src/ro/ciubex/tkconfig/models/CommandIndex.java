@@ -0,0 +1,220 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * In memory search index over the command name, command text and description.
+ * The texts are split in tokens made of letters and digits, which are case
+ * folded and kept on a sorted map, so a typed word is searched as a prefix
+ * range on the map instead of scanning all the commands. The index should be
+ * updated each time a command is added, edited or removed.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class CommandIndex {
+	private static final String[] NO_TOKENS = new String[0];
+
+	private final TreeMap<String, Set<Command>> postings = new TreeMap<String, Set<Command>>();
+	private final Map<Command, String[]> tokens = new IdentityHashMap<Command, String[]>();
+
+	/**
+	 * Index again all the commands.
+	 * 
+	 * @param commands
+	 *            The commands to be indexed.
+	 */
+	public void rebuild(Collection<Command> commands) {
+		postings.clear();
+		tokens.clear();
+		for (Command command : commands) {
+			add(command);
+		}
+	}
+
+	/**
+	 * Add a command to the index.
+	 * 
+	 * @param command
+	 *            The command to be indexed.
+	 */
+	public void add(Command command) {
+		String[] commandTokens = tokenize(command);
+		String[] old = tokens.put(command, commandTokens);
+		if (old != null) {
+			unlink(command, old);
+		}
+		for (String token : commandTokens) {
+			Set<Command> set = postings.get(token);
+			if (set == null) {
+				set = newCommandSet();
+				postings.put(token, set);
+			}
+			set.add(command);
+		}
+	}
+
+	/**
+	 * Index again a command after its texts were edited.
+	 * 
+	 * @param command
+	 *            The edited command.
+	 */
+	public void update(Command command) {
+		add(command);
+	}
+
+	/**
+	 * Remove a command from the index.
+	 * 
+	 * @param command
+	 *            The command to be removed.
+	 */
+	public void remove(Command command) {
+		String[] old = tokens.remove(command);
+		if (old != null) {
+			unlink(command, old);
+		}
+	}
+
+	/**
+	 * Obtain the number of indexed commands.
+	 * 
+	 * @return The number of indexed commands.
+	 */
+	public int size() {
+		return tokens.size();
+	}
+
+	/**
+	 * Search the commands which contain, for each word from the query, a word
+	 * starting with it.
+	 * 
+	 * @param query
+	 *            The searched text.
+	 * @return The found commands, sorted by name. All the indexed commands if
+	 *         the query does not contain any word.
+	 */
+	public List<Command> search(String query) {
+		List<String> words = new ArrayList<String>();
+		tokenize(query, words);
+		List<Command> result;
+		if (words.isEmpty()) {
+			result = new ArrayList<Command>(tokens.keySet());
+		} else {
+			Set<Command> found = newCommandSet();
+			for (Set<Command> set : prefixRange(words.get(0)).values()) {
+				found.addAll(set);
+			}
+			for (int i = 1; i < words.size() && !found.isEmpty(); i++) {
+				Iterator<Command> iterator = found.iterator();
+				while (iterator.hasNext()) {
+					if (!hasPrefix(tokens.get(iterator.next()), words.get(i))) {
+						iterator.remove();
+					}
+				}
+			}
+			result = new ArrayList<Command>(found);
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private SortedMap<String, Set<Command>> prefixRange(String prefix) {
+		return postings.subMap(prefix, prefix + Character.MAX_VALUE);
+	}
+
+	private void unlink(Command command, String[] commandTokens) {
+		for (String token : commandTokens) {
+			Set<Command> set = postings.get(token);
+			if (set != null) {
+				set.remove(command);
+				if (set.isEmpty()) {
+					postings.remove(token);
+				}
+			}
+		}
+	}
+
+	private static boolean hasPrefix(String[] commandTokens, String prefix) {
+		for (String token : commandTokens) {
+			if (token.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Set<Command> newCommandSet() {
+		return Collections
+				.newSetFromMap(new IdentityHashMap<Command, Boolean>());
+	}
+
+	/**
+	 * Obtain the distinct tokens from the command name, text and description.
+	 */
+	private static String[] tokenize(Command command) {
+		List<String> list = new ArrayList<String>();
+		tokenize(command.getName(), list);
+		tokenize(command.getCommand(), list);
+		tokenize(command.getDescription(), list);
+		return list.isEmpty() ? NO_TOKENS : list.toArray(new String[list
+				.size()]);
+	}
+
+	/**
+	 * Split a text in case folded tokens made of letters and digits.
+	 * 
+	 * @param text
+	 *            The text to split.
+	 * @param list
+	 *            The list where are added the distinct tokens.
+	 */
+	private static void tokenize(String text, List<String> list) {
+		if (text != null) {
+			String folded = Utilities.foldName(text);
+			int length = folded.length();
+			int start = -1;
+			for (int i = 0; i <= length; i++) {
+				if (i < length && Character.isLetterOrDigit(folded.charAt(i))) {
+					if (start < 0) {
+						start = i;
+					}
+				} else if (start > -1) {
+					String token = folded.substring(start, i);
+					if (!list.contains(token)) {
+						list.add(token);
+					}
+					start = -1;
+				}
+			}
+		}
+	}
+}
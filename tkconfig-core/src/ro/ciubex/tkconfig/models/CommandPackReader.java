@@ -0,0 +1,145 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for a command pack, a text file with the commands of a
+ * tracker model. Each line contains the command name, the command text and
+ * the description, separated by tabs, where the tab, new line and backslash
+ * characters are escaped as \t, \n and \\. The lines starting with # are
+ * comments and the lines starting with @ are pack properties:
+ * 
+ * <pre>
+ * &#64;model	TK102-2
+ * &#64;extends	tk102
+ * </pre>
+ * 
+ * The extended packs are available after all the commands were read.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class CommandPackReader implements Closeable {
+	private BufferedReader reader;
+	private String model;
+	private List<String> extendedPacks;
+	private int lineNumber;
+
+	public CommandPackReader(Reader reader) {
+		this.reader = new BufferedReader(reader);
+		this.extendedPacks = new ArrayList<String>();
+	}
+
+	/**
+	 * Read the next command from the pack.
+	 * 
+	 * @return The next command or null if there are no more commands.
+	 * @throws IOException
+	 *             If the pack could not be read or a line is not valid.
+	 */
+	public Command next() throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.length() == 0 || line.charAt(0) == '#') {
+				continue;
+			}
+			List<String> fields = split(line);
+			if (line.charAt(0) == '@') {
+				readProperty(fields);
+			} else if (fields.size() < 2 || fields.size() > 3) {
+				throw new IOException("Invalid command on line " + lineNumber);
+			} else {
+				return new Command(fields.get(0), fields.get(1),
+						fields.size() > 2 ? fields.get(2) : "");
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Obtain the tracker model name of this pack.
+	 * 
+	 * @return The model name or null if it was not read yet.
+	 */
+	public String getModel() {
+		return model;
+	}
+
+	/**
+	 * Obtain the packs extended by this pack, which should be loaded
+	 * together with it.
+	 * 
+	 * @return The extended pack names read so far.
+	 */
+	public List<String> getExtendedPacks() {
+		return extendedPacks;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private void readProperty(List<String> fields) throws IOException {
+		if (fields.size() != 2) {
+			throw new IOException("Invalid property on line " + lineNumber);
+		}
+		String key = fields.get(0);
+		if ("@model".equals(key)) {
+			model = fields.get(1);
+		} else if ("@extends".equals(key)) {
+			extendedPacks.add(fields.get(1));
+		}
+	}
+
+	/**
+	 * Split a line on tabs, decoding the escaped characters.
+	 */
+	private List<String> split(String line) throws IOException {
+		List<String> fields = new ArrayList<String>(3);
+		StringBuilder sb = new StringBuilder(line.length());
+		int length = line.length();
+		for (int i = 0; i < length; i++) {
+			char c = line.charAt(i);
+			if (c == '\t') {
+				fields.add(sb.toString());
+				sb.setLength(0);
+			} else if (c == '\\') {
+				if (++i == length) {
+					throw new IOException("Invalid escape on line "
+							+ lineNumber);
+				}
+				c = line.charAt(i);
+				sb.append(c == 't' ? '\t' : c == 'n' ? '\n' : c);
+			} else {
+				sb.append(c);
+			}
+		}
+		fields.add(sb.toString());
+		return fields;
+	}
+}
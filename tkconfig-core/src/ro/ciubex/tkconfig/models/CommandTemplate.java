@@ -0,0 +1,150 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+/**
+ * Compiled form of a command text. The command is split once into literal
+ * segments and parameter slots, so rendering is a sequence of appends without
+ * any regular expression.
+ *
+ * A template with N slots have N + 1 literal segments: literal[0], slot[0],
+ * literal[1], ..., slot[N - 1], literal[N].
+ *
+ * @author Claudiu Ciobotariu
+ *
+ */
+public final class CommandTemplate {
+	private final String command;
+	private final int[] bounds;
+	private final String[] slots;
+
+	/**
+	 * Build the template from the parameter positions found on the command.
+	 *
+	 * @param command
+	 *            The original command text.
+	 * @param bounds
+	 *            For each parameter, the start index of the first ? sign
+	 *            followed by the end index (exclusive) of the last ? sign. The
+	 *            array is not copied and should not be modified.
+	 * @param names
+	 *            The parameter names, in the same order as the bounds. The
+	 *            array is not copied and should not be modified.
+	 */
+	CommandTemplate(String command, int[] bounds, String[] names) {
+		this.command = command;
+		this.bounds = bounds;
+		this.slots = names;
+	}
+
+	/**
+	 * Obtain the number of parameter slots.
+	 *
+	 * @return The number of parameter slots.
+	 */
+	public int getSlotsCount() {
+		return slots.length;
+	}
+
+	/**
+	 * Obtain the parameter name used on the specified slot.
+	 *
+	 * @param slot
+	 *            The slot position.
+	 * @return The parameter name.
+	 */
+	public String getSlotName(int slot) {
+		return slots[slot];
+	}
+
+	/**
+	 * Obtain the parameter bounds, the returned array should not be modified.
+	 *
+	 * @return For each parameter, the start index followed by the end index.
+	 */
+	int[] getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Obtain the length of the command text without parameters, useful to
+	 * reserve the output buffer.
+	 *
+	 * @return The length of all literal segments.
+	 */
+	public int getLiteralsLength() {
+		int length = command.length();
+		for (int i = 0; i < slots.length; i++) {
+			length -= bounds[2 * i + 1] - bounds[2 * i];
+		}
+		return length;
+	}
+
+	/**
+	 * Append to the output a literal segment.
+	 *
+	 * @param out
+	 *            The output buffer.
+	 * @param segment
+	 *            The literal segment position, from 0 to slots count.
+	 */
+	public void appendLiteral(StringBuilder out, int segment) {
+		int from = segment > 0 ? bounds[2 * segment - 1] : 0;
+		int to = segment < slots.length ? bounds[2 * segment] : command
+				.length();
+		out.append(command, from, to);
+	}
+
+	/**
+	 * Append to the output a parameter slot. If the value is null, the
+	 * original ?parameter? text is kept.
+	 *
+	 * @param out
+	 *            The output buffer.
+	 * @param slot
+	 *            The slot position.
+	 * @param value
+	 *            The value used for the slot.
+	 */
+	public void appendSlot(StringBuilder out, int slot, String value) {
+		if (value != null) {
+			out.append(value);
+		} else {
+			out.append(command, bounds[2 * slot], bounds[2 * slot + 1]);
+		}
+	}
+
+	/**
+	 * Render the template into the provided buffer.
+	 *
+	 * @param out
+	 *            The output buffer, the rendered text is appended.
+	 * @param values
+	 *            The values for each slot, a null value keep the original
+	 *            ?parameter? text.
+	 */
+	public void render(StringBuilder out, String[] values) {
+		int count = slots.length;
+		for (int i = 0; i < count; i++) {
+			appendLiteral(out, i);
+			appendSlot(out, i, values[i]);
+		}
+		appendLiteral(out, count);
+	}
+}
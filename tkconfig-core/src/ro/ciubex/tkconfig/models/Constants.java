@@ -18,8 +18,6 @@
  */
 package ro.ciubex.tkconfig.models;
 
-import java.util.regex.Pattern;
-
 /**
  * Here should be defined all constants.
  * 
@@ -31,8 +29,5 @@ public interface Constants {
 	public static final int ERROR = 1;
 	public static final String PASSWORD = "password";
 	public static final String STARS = "******";
-	
-	/** This is the Regular expression used to identify the possible parameters **/
-	public static final Pattern PARAMETERS = Pattern
-			.compile("\\?[\\w\\d-]+\\?");
+	public static final String DEFAULT_TRACKER_MODEL = "tk102-2";
 }
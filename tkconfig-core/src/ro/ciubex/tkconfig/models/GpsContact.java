@@ -29,20 +29,57 @@ import java.io.Serializable;
  */
 public class GpsContact implements Serializable {
 	private static final long serialVersionUID = 7654342853405113225L;
+	private long id;
+	private boolean modified;
 	private String name;
 	private String phone;
 	private String password;
 	private boolean selected;
+	private String model;
 
 	public GpsContact() {
 		this("", "", "", false);
 	}
 
 	public GpsContact(String name, String phone, String password, boolean selected) {
+		this(name, phone, password, selected, Constants.DEFAULT_TRACKER_MODEL);
+	}
+
+	public GpsContact(String name, String phone, String password,
+			boolean selected, String model) {
 		this.name = name;
 		this.phone = phone;
 		this.password = password;
 		this.selected = selected;
+		this.model = model;
+		this.modified = true;
+	}
+
+	/**
+	 * Obtain the storage row id of this contact.
+	 * 
+	 * @return The row id, or 0 if the contact is not stored.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	/**
+	 * Check if this contact was changed since it was loaded or saved. A new
+	 * contact is always modified.
+	 * 
+	 * @return True if the contact should be saved.
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	public void setModified(boolean modified) {
+		this.modified = modified;
 	}
 
 	public String getName() {
@@ -50,7 +87,10 @@ public class GpsContact implements Serializable {
 	}
 
 	public void setName(String name) {
-		this.name = name;
+		if (!same(this.name, name)) {
+			this.name = name;
+			modified = true;
+		}
 	}
 
 	public String getPhone() {
@@ -58,7 +98,10 @@ public class GpsContact implements Serializable {
 	}
 
 	public void setPhone(String phone) {
-		this.phone = phone;
+		if (!same(this.phone, phone)) {
+			this.phone = phone;
+			modified = true;
+		}
 	}
 
 	public boolean isSelected() {
@@ -66,7 +109,10 @@ public class GpsContact implements Serializable {
 	}
 
 	public void setSelected(boolean selected) {
-		this.selected = selected;
+		if (this.selected != selected) {
+			this.selected = selected;
+			modified = true;
+		}
 	}
 	
 	public String getPassword() {
@@ -74,7 +120,31 @@ public class GpsContact implements Serializable {
 	}
 
 	public void setPassword(String password) {
-		this.password = password;
+		if (!same(this.password, password)) {
+			this.password = password;
+			modified = true;
+		}
+	}
+
+	/**
+	 * Obtain the tracker model, which is also the name of the command pack
+	 * used for this tracker.
+	 * 
+	 * @return The tracker model.
+	 */
+	public String getModel() {
+		return model;
+	}
+
+	public void setModel(String model) {
+		if (!same(this.model, model)) {
+			this.model = model;
+			modified = true;
+		}
+	}
+
+	private static boolean same(String a, String b) {
+		return a == null ? b == null : a.equals(b);
 	}
 
 	@Override
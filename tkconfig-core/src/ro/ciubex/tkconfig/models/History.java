@@ -25,6 +25,7 @@ package ro.ciubex.tkconfig.models;
  * 
  */
 public class History {
+	private long id;
 	private long dateTime;
 	private String phoneNumber;
 	private String smsCommand;
@@ -39,6 +40,19 @@ public class History {
 		this.smsCommand = smsCommand;
 	}
 
+	/**
+	 * Obtain the storage row id of this history event.
+	 * 
+	 * @return The row id, or 0 if the event is not stored.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
 	public long getDateTime() {
 		return dateTime;
 	}
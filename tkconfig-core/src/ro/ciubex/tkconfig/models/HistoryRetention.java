@@ -0,0 +1,86 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+/**
+ * The retention policy of the history events. An event is evicted when it is
+ * older than the maximum age, when its tracker has more newer events than the
+ * per tracker limit or when there are more newer events than the maximum
+ * number of entries. The rules are applied in this order and a zero limit
+ * means no limit.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class HistoryRetention {
+	public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	private final int maxEntries;
+	private final int maxAgeDays;
+	private final int maxPerTracker;
+
+	public HistoryRetention(int maxEntries, int maxAgeDays, int maxPerTracker) {
+		this.maxEntries = Math.max(0, maxEntries);
+		this.maxAgeDays = Math.max(0, maxAgeDays);
+		this.maxPerTracker = Math.max(0, maxPerTracker);
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public int getMaxAgeDays() {
+		return maxAgeDays;
+	}
+
+	public int getMaxPerTracker() {
+		return maxPerTracker;
+	}
+
+	/**
+	 * Check if this policy does not evict any event.
+	 * 
+	 * @return True if there are no limits.
+	 */
+	public boolean isUnbounded() {
+		return maxEntries == 0 && maxAgeDays == 0 && maxPerTracker == 0;
+	}
+
+	/**
+	 * Obtain the date time before which the events are evicted.
+	 * 
+	 * @param now
+	 *            The current time, in milliseconds.
+	 * @return The oldest date time kept, or 0 if there is no age limit.
+	 */
+	public long getCutoff(long now) {
+		return maxAgeDays > 0 ? now - maxAgeDays * DAY_MILLIS : 0L;
+	}
+
+	/**
+	 * Obtain how many events can be added after an eviction before another
+	 * eviction is worth to be done.
+	 * 
+	 * @return The number of events added between two evictions.
+	 */
+	public int getSlack() {
+		int limit = maxEntries > 0 ? maxEntries : maxPerTracker;
+		return Math.max(10, limit / 10);
+	}
+}
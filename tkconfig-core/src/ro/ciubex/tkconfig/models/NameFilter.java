@@ -0,0 +1,58 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.util.Locale;
+
+/**
+ * Filter used to check if a name contains a searched text, ignoring the case
+ * of the letters.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class NameFilter {
+	private String filter;
+	private Locale locale;
+
+	public NameFilter(String constraint, Locale locale) {
+		this.locale = locale;
+		filter = constraint.trim().toLowerCase(locale);
+	}
+
+	/**
+	 * Check if the filter text is empty.
+	 * 
+	 * @return True if there is nothing to filter.
+	 */
+	public boolean isEmpty() {
+		return filter.length() == 0;
+	}
+
+	/**
+	 * Check if the name contains the filter text.
+	 * 
+	 * @param name
+	 *            The name to be checked.
+	 * @return True if the name match the filter.
+	 */
+	public boolean matches(String name) {
+		return name != null && name.toLowerCase(locale).indexOf(filter) > -1;
+	}
+}
@@ -0,0 +1,252 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * A windowed view over a large ordered data source. The items are fetched by
+ * pages, only when a position from the page is requested, and only the most
+ * recently used pages are kept in memory.
+ * 
+ * The size and the pages are fetched on the loader executor, a position whose
+ * page is not fetched yet has no item until the page is delivered on the
+ * notifier executor. A page is fetched after the last item of the previous
+ * page (keyset paging) when that item is known, so scrolling finds each page
+ * by the data source index instead of skipping all the items before it. A
+ * page reached by a jump, whose previous page was not fetched, is fetched by
+ * its position. The last item of each fetched page is remembered to be the
+ * key of the next page. The cache must be used only from the thread of the
+ * notifier executor.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public abstract class PageCache<T> {
+	private final int pageSize;
+	private final Executor loader;
+	private final Executor notifier;
+	private final Map<Integer, List<T>> pages;
+	private final Map<Integer, T> lastItems;
+	private final Set<Integer> loading;
+	private int size = -1;
+	private boolean sizeLoading;
+	private int generation;
+
+	/**
+	 * Create a page cache.
+	 * 
+	 * @param pageSize
+	 *            The number of items fetched at once.
+	 * @param maxPages
+	 *            The maximum number of pages kept in memory.
+	 * @param loader
+	 *            The executor on which the data source is read.
+	 * @param notifier
+	 *            The executor on which the fetched items are delivered.
+	 */
+	public PageCache(int pageSize, final int maxPages, Executor loader,
+			Executor notifier) {
+		this.pageSize = pageSize;
+		this.loader = loader;
+		this.notifier = notifier;
+		this.pages = new LinkedHashMap<Integer, List<T>>(maxPages + 1, 1f,
+				true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+				return size() > maxPages;
+			}
+		};
+		this.lastItems = new HashMap<Integer, T>();
+		this.loading = new HashSet<Integer>();
+	}
+
+	/**
+	 * Count the items from the data source. Invoked on the loader executor.
+	 * 
+	 * @return The number of items.
+	 */
+	protected abstract int loadSize();
+
+	/**
+	 * Fetch a page of items from the data source. Invoked on the loader
+	 * executor.
+	 * 
+	 * @param last
+	 *            The last item of the previous page, null for the first page.
+	 * @param limit
+	 *            The maximum number of items.
+	 * @return The items following the last item.
+	 */
+	protected abstract List<T> loadPage(T last, int limit);
+
+	/**
+	 * Fetch a page of items from the data source by its position, used when
+	 * the last item of the previous page is not known. Invoked on the loader
+	 * executor.
+	 * 
+	 * @param offset
+	 *            The position of the first item.
+	 * @param limit
+	 *            The maximum number of items.
+	 * @return The items from the position.
+	 */
+	protected abstract List<T> loadPageAt(int offset, int limit);
+
+	/**
+	 * Invoked on the notifier executor when the number of items was counted.
+	 */
+	protected void onSizeLoaded() {
+	}
+
+	/**
+	 * Invoked on the notifier executor when a page was fetched.
+	 */
+	protected void onPageLoaded() {
+	}
+
+	/**
+	 * Obtain the number of items, counted once until the cache is
+	 * invalidated.
+	 * 
+	 * @return The number of items, 0 until they are counted.
+	 */
+	public int size() {
+		if (size < 0) {
+			requestSize();
+			return 0;
+		}
+		return size;
+	}
+
+	/**
+	 * Check if the number of items was counted.
+	 * 
+	 * @return True if the number of items is known.
+	 */
+	public boolean isSizeLoaded() {
+		return size >= 0;
+	}
+
+	/**
+	 * Obtain the item from a position, requesting its page if is not cached.
+	 * 
+	 * @param position
+	 *            The item position.
+	 * @return The item or null if the position is out of range or its page
+	 *         is not fetched yet.
+	 */
+	public T get(int position) {
+		if (position < 0 || position >= size()) {
+			return null;
+		}
+		Integer page = Integer.valueOf(position / pageSize);
+		List<T> items = pages.get(page);
+		if (items == null) {
+			requestPage(page.intValue());
+			return null;
+		}
+		int index = position % pageSize;
+		return index < items.size() ? items.get(index) : null;
+	}
+
+	/**
+	 * Forget the cached pages and the number of items, to be fetched again
+	 * after the data source was changed. The items being fetched are
+	 * discarded when they are delivered.
+	 */
+	public void invalidate() {
+		generation++;
+		size = -1;
+		sizeLoading = false;
+		pages.clear();
+		lastItems.clear();
+		loading.clear();
+	}
+
+	private void requestSize() {
+		if (sizeLoading) {
+			return;
+		}
+		sizeLoading = true;
+		final int requested = generation;
+		loader.execute(new Runnable() {
+			@Override
+			public void run() {
+				final int loaded = loadSize();
+				notifier.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (requested == generation) {
+							size = loaded;
+							sizeLoading = false;
+							onSizeLoaded();
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Request a page, fetched after the last item of the previous page if it
+	 * is known, otherwise by its position.
+	 */
+	private void requestPage(final int page) {
+		if (!loading.add(Integer.valueOf(page))) {
+			return;
+		}
+		final T last = page > 0 ? lastItems.get(Integer.valueOf(page - 1))
+				: null;
+		final int requested = generation;
+		loader.execute(new Runnable() {
+			@Override
+			public void run() {
+				final List<T> loaded = page > 0 && last == null ? loadPageAt(
+						page * pageSize, pageSize) : loadPage(last, pageSize);
+				notifier.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (requested == generation) {
+							deliverPage(page, loaded);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	private void deliverPage(int page, List<T> items) {
+		Integer key = Integer.valueOf(page);
+		loading.remove(key);
+		pages.put(key, items);
+		if (!items.isEmpty()) {
+			lastItems.put(key, items.get(items.size() - 1));
+		}
+		onPageLoaded();
+	}
+}
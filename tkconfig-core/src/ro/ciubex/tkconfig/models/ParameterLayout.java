@@ -0,0 +1,302 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable description of the parameters used by a command: the parameter
+ * names in the order they appear and the slot of each distinct name. Commands
+ * with the same parameters share the same layout, only the values are kept on
+ * each command, on an array indexed by slot.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public final class ParameterLayout {
+	private static final String[] NO_NAMES = new String[0];
+	private static final int[] NO_INTS = new int[0];
+	/**
+	 * Weak pool of the shared layouts, a layout is released when no command
+	 * uses it anymore, for example after the command text was edited.
+	 */
+	private static final Map<ParameterLayout, WeakReference<ParameterLayout>> LAYOUTS = new WeakHashMap<ParameterLayout, WeakReference<ParameterLayout>>();
+
+	/** The layout of a command without parameters. */
+	public static final ParameterLayout EMPTY = new ParameterLayout(NO_NAMES,
+			NO_NAMES);
+
+	private final String[] parameters;
+	private final String[] names;
+	private final int[] positions;
+	private final int[] table;
+	private final int passwords;
+	private final int hash;
+
+	/**
+	 * Build a layout. The names should be interned.
+	 * 
+	 * @param parameters
+	 *            The parameter names in the order they appear on the command.
+	 * @param extras
+	 *            Parameter names which have values but do not appear on the
+	 *            command.
+	 */
+	private ParameterLayout(String[] parameters, String[] extras) {
+		int count = 0, slot, k = 0;
+		String[] distinct = new String[parameters.length + extras.length];
+		int[] firstPositions = new int[distinct.length];
+		this.parameters = parameters;
+		for (int i = 0; i < parameters.length; i++) {
+			if (Constants.PASSWORD.equals(parameters[i])) {
+				k++;
+			}
+			slot = find(distinct, count, parameters[i]);
+			if (slot < 0) {
+				firstPositions[count] = i;
+				distinct[count++] = parameters[i];
+			}
+		}
+		for (String extra : extras) {
+			if (find(distinct, count, extra) < 0) {
+				firstPositions[count] = -1;
+				distinct[count++] = extra;
+			}
+		}
+		passwords = k;
+		if (count == 0) {
+			names = NO_NAMES;
+			positions = NO_INTS;
+			table = NO_INTS;
+		} else {
+			names = count == distinct.length ? distinct : Arrays.copyOf(
+					distinct, count);
+			positions = Arrays.copyOf(firstPositions, count);
+			int capacity = 4;
+			while (capacity < count * 2) {
+				capacity <<= 1;
+			}
+			table = new int[capacity];
+			int mask = capacity - 1, j;
+			for (int i = 0; i < count; i++) {
+				j = names[i].hashCode() & mask;
+				while (table[j] != 0) {
+					j = (j + 1) & mask;
+				}
+				table[j] = i + 1;
+			}
+		}
+		hash = 31 * Arrays.hashCode(parameters) + Arrays.hashCode(names);
+	}
+
+	/**
+	 * Linear search used only while the layout is built.
+	 */
+	private static int find(String[] names, int count, String name) {
+		for (int i = 0; i < count; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Obtain the shared layout for the provided parameters.
+	 * 
+	 * @param parameters
+	 *            The parameter names in the order they appear on the command.
+	 *            The array is not copied and should not be modified.
+	 * @return The shared layout.
+	 */
+	public static ParameterLayout obtain(String[] parameters) {
+		if (parameters.length == 0) {
+			return EMPTY;
+		}
+		return intern(new ParameterLayout(internNames(parameters), NO_NAMES));
+	}
+
+	/**
+	 * Obtain a layout with one more parameter appended at the end.
+	 * 
+	 * @param name
+	 *            The parameter name.
+	 * @return The shared layout.
+	 */
+	public ParameterLayout withParameter(String name) {
+		String[] list = Arrays.copyOf(parameters, parameters.length + 1);
+		list[parameters.length] = ParameterNames.intern(name);
+		return intern(new ParameterLayout(list, getExtras()));
+	}
+
+	/**
+	 * Obtain a layout with a value slot for a parameter not used on the
+	 * command.
+	 * 
+	 * @param name
+	 *            The parameter name.
+	 * @return The shared layout.
+	 */
+	public ParameterLayout withExtra(String name) {
+		String[] extras = getExtras();
+		extras = Arrays.copyOf(extras, extras.length + 1);
+		extras[extras.length - 1] = ParameterNames.intern(name);
+		return intern(new ParameterLayout(parameters, extras));
+	}
+
+	/**
+	 * Obtain the names which have a slot but do not appear on the command.
+	 */
+	private String[] getExtras() {
+		int count = 0;
+		for (int position : positions) {
+			if (position < 0) {
+				count++;
+			}
+		}
+		if (count == 0) {
+			return NO_NAMES;
+		}
+		String[] extras = new String[count];
+		count = 0;
+		for (int i = 0; i < positions.length; i++) {
+			if (positions[i] < 0) {
+				extras[count++] = names[i];
+			}
+		}
+		return extras;
+	}
+
+	private static String[] internNames(String[] names) {
+		for (int i = 0; i < names.length; i++) {
+			names[i] = ParameterNames.intern(names[i]);
+		}
+		return names;
+	}
+
+	private static ParameterLayout intern(ParameterLayout layout) {
+		synchronized (LAYOUTS) {
+			WeakReference<ParameterLayout> reference = LAYOUTS.get(layout);
+			ParameterLayout shared = reference != null ? reference.get() : null;
+			if (shared == null) {
+				shared = layout;
+				LAYOUTS.put(shared, new WeakReference<ParameterLayout>(shared));
+			}
+			return shared;
+		}
+	}
+
+	/**
+	 * Obtain the parameter names in the order they appear on the command. The
+	 * returned array should not be modified.
+	 * 
+	 * @return The parameter names.
+	 */
+	public String[] getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Obtain the number of value slots.
+	 * 
+	 * @return The number of distinct parameter names.
+	 */
+	public int getSlotsCount() {
+		return names.length;
+	}
+
+	/**
+	 * Obtain the parameter name of a slot.
+	 * 
+	 * @param slot
+	 *            The slot.
+	 * @return The parameter name.
+	 */
+	public String getSlotName(int slot) {
+		return names[slot];
+	}
+
+	/**
+	 * Obtain the number of password parameters.
+	 * 
+	 * @return The number of password parameters.
+	 */
+	public int getPasswords() {
+		return passwords;
+	}
+
+	/**
+	 * Obtain the slot used by a parameter.
+	 * 
+	 * @param name
+	 *            The parameter name.
+	 * @return The slot or -1 if the parameter is not defined.
+	 */
+	public int indexOf(String name) {
+		if (name == null || table.length == 0) {
+			return -1;
+		}
+		int mask = table.length - 1;
+		int i = name.hashCode() & mask;
+		int slot;
+		while ((slot = table[i]) != 0) {
+			String existing = names[slot - 1];
+			if (existing == name || existing.equals(name)) {
+				return slot - 1;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Obtain the position where a parameter first appear on the command.
+	 * 
+	 * @param name
+	 *            The parameter name.
+	 * @return The position or -1 if the parameter does not appear on the
+	 *         command.
+	 */
+	public int getPosition(String name) {
+		int slot = indexOf(name);
+		return slot < 0 ? -1 : positions[slot];
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ParameterLayout other = (ParameterLayout) obj;
+		return hash == other.hash
+				&& Arrays.equals(parameters, other.parameters)
+				&& Arrays.equals(names, other.names);
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of parameter names shared by all commands. The same parameter name,
+ * like "password", is used by many commands and is kept only once in memory.
+ * The pool is weak, a name is released when no command uses it anymore.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public final class ParameterNames {
+	private static final Map<String, WeakReference<String>> NAMES = new WeakHashMap<String, WeakReference<String>>();
+
+	static {
+		NAMES.put(Constants.PASSWORD, new WeakReference<String>(
+				Constants.PASSWORD));
+	}
+
+	private ParameterNames() {
+	}
+
+	/**
+	 * Obtain the shared instance of a parameter name.
+	 * 
+	 * @param name
+	 *            The parameter name.
+	 * @return The shared parameter name, equal with the provided name.
+	 */
+	public static String intern(String name) {
+		if (name == null) {
+			return null;
+		}
+		synchronized (NAMES) {
+			WeakReference<String> reference = NAMES.get(name);
+			String shared = reference != null ? reference.get() : null;
+			if (shared == null) {
+				shared = name;
+				NAMES.put(shared, new WeakReference<String>(shared));
+			}
+			return shared;
+		}
+	}
+
+	/**
+	 * Obtain the number of distinct parameter names.
+	 * 
+	 * @return The number of shared parameter names.
+	 */
+	public static int size() {
+		synchronized (NAMES) {
+			return NAMES.size();
+		}
+	}
+}
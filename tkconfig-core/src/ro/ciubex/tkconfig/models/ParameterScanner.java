@@ -0,0 +1,192 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.util.Arrays;
+
+/**
+ * Scanner used to find the ?parameter-name? parameters of a command. A
+ * parameter name is made from letters, digits, underscore and minus signs.
+ * 
+ * The result of the scanning is an array with the parameter bounds: for each
+ * parameter the index of the first ? sign followed by the index after the last
+ * ? sign. The bounds can be encoded as a short text to be stored together with
+ * the command and reused on the next load.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public final class ParameterScanner {
+	private static final int[] NO_BOUNDS = new int[0];
+
+	private ParameterScanner() {
+	}
+
+	/**
+	 * Scan the command for parameters, in a single pass.
+	 * 
+	 * @param command
+	 *            The command to be scanned.
+	 * @return The parameter bounds.
+	 */
+	public static int[] scan(String command) {
+		int length = command.length();
+		int i = command.indexOf('?');
+		if (i < 0) {
+			return NO_BOUNDS;
+		}
+		int size = 0, j;
+		int[] bounds = new int[8];
+		while (i > -1 && i < length) {
+			j = i + 1;
+			while (j < length && isNameChar(command.charAt(j))) {
+				j++;
+			}
+			if (j < length && j > i + 1 && command.charAt(j) == '?') {
+				if (size == bounds.length) {
+					bounds = Arrays.copyOf(bounds, size * 2);
+				}
+				bounds[size++] = i;
+				bounds[size++] = j + 1;
+				i = command.indexOf('?', j + 1);
+			} else {
+				i = j < length && command.charAt(j) == '?' ? j : command
+						.indexOf('?', j);
+			}
+		}
+		if (size == 0) {
+			return NO_BOUNDS;
+		}
+		return size == bounds.length ? bounds : Arrays.copyOf(bounds, size);
+	}
+
+	/**
+	 * Check if the character can be used on a parameter name.
+	 * 
+	 * @param c
+	 *            The character to be checked.
+	 * @return True if the character is allowed on a parameter name.
+	 */
+	public static boolean isNameChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| (c >= '0' && c <= '9') || c == '_' || c == '-';
+	}
+
+	/**
+	 * Extract the parameter names from the command, based on the bounds.
+	 * 
+	 * @param command
+	 *            The command.
+	 * @param bounds
+	 *            The parameter bounds.
+	 * @return The parameter names.
+	 */
+	public static String[] getNames(String command, int[] bounds) {
+		String[] names = new String[bounds.length / 2];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = command.substring(bounds[2 * i] + 1,
+					bounds[2 * i + 1] - 1);
+		}
+		return names;
+	}
+
+	/**
+	 * Encode the parameter bounds to be stored together with the command.
+	 * 
+	 * @param bounds
+	 *            The parameter bounds.
+	 * @return The encoded bounds, comma separated numbers.
+	 */
+	public static String encode(int[] bounds) {
+		StringBuilder sb = new StringBuilder(bounds.length * 3);
+		for (int i = 0; i < bounds.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(bounds[i]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Decode the stored parameter bounds. The bounds are validated against
+	 * the command, each slot must be a ? sign, a name made from the allowed
+	 * characters and another ? sign, so a stale or corrupted value is
+	 * ignored.
+	 * 
+	 * @param encoded
+	 *            The encoded bounds.
+	 * @param command
+	 *            The command used to validate the bounds.
+	 * @return The parameter bounds or null if the encoded value is not valid
+	 *         for the command.
+	 */
+	public static int[] decode(String encoded, String command) {
+		if (encoded == null) {
+			return null;
+		}
+		int length = encoded.length();
+		if (length == 0) {
+			return command.indexOf('?') < 0 ? NO_BOUNDS : null;
+		}
+		int size = 1;
+		for (int i = 0; i < length; i++) {
+			if (encoded.charAt(i) == ',') {
+				size++;
+			}
+		}
+		if ((size & 1) != 0) {
+			return null;
+		}
+		int[] bounds = new int[size];
+		int k = 0, value = 0, digits = 0, last = -1;
+		char c;
+		for (int i = 0; i <= length; i++) {
+			c = i < length ? encoded.charAt(i) : ',';
+			if (c == ',') {
+				if (digits == 0 || value > command.length()
+						|| ((k & 1) == 0 ? value < last : value <= last)) {
+					return null;
+				}
+				bounds[k++] = value;
+				last = value;
+				value = 0;
+				digits = 0;
+			} else if (c >= '0' && c <= '9' && digits < 9) {
+				value = value * 10 + (c - '0');
+				digits++;
+			} else {
+				return null;
+			}
+		}
+		for (int i = 0; i < size; i += 2) {
+			int start = bounds[i], end = bounds[i + 1] - 1;
+			if (end - start < 2 || command.charAt(start) != '?'
+					|| command.charAt(end) != '?') {
+				return null;
+			}
+			for (int j = start + 1; j < end; j++) {
+				if (!isNameChar(command.charAt(j))) {
+					return null;
+				}
+			}
+		}
+		return bounds;
+	}
+}
@@ -0,0 +1,227 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The application state decoded from a restored backup, detached from the
+ * application: the restored preferences and the restored commands, GPS
+ * contacts and history events. The records are saved in a backup with the
+ * preferences keys of the older versions, one key per field, and are decoded
+ * here without being written anywhere, so a backup which is not valid does
+ * not change the application data. A dataset is restored only if its count
+ * key is found, the datasets not found on the backup are kept.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class RestoredState {
+	private static final String KEY_COMMANDS = "commands";
+	private static final String KEY_CONTACTS = "contacts";
+	private static final String KEY_HISTORIES = "histories";
+	private static final String PREFIX_COMMAND = "command_";
+	private static final String PREFIX_CONTACT = "contact_";
+	private static final String PREFIX_HISTORY = "history_";
+
+	private final Map<String, Object> preferences;
+	private final List<Command> commands;
+	private final List<GpsContact> contacts;
+	private final List<History> histories;
+
+	private RestoredState(Map<String, Object> preferences,
+			List<Command> commands, List<GpsContact> contacts,
+			List<History> histories) {
+		this.preferences = preferences;
+		this.commands = commands;
+		this.contacts = contacts;
+		this.histories = histories;
+	}
+
+	/**
+	 * Obtain the restored preferences, without the keys of the records.
+	 * 
+	 * @return The restored preferences values.
+	 */
+	public Map<String, Object> getPreferences() {
+		return preferences;
+	}
+
+	/**
+	 * Obtain the restored commands.
+	 * 
+	 * @return The commands, or null if the commands were not restored.
+	 */
+	public List<Command> getCommands() {
+		return commands;
+	}
+
+	/**
+	 * Obtain the restored GPS contacts.
+	 * 
+	 * @return The contacts, or null if the contacts were not restored.
+	 */
+	public List<GpsContact> getContacts() {
+		return contacts;
+	}
+
+	/**
+	 * Obtain the restored history events.
+	 * 
+	 * @return The history events, or null if the histories were not restored.
+	 */
+	public List<History> getHistories() {
+		return histories;
+	}
+
+	/**
+	 * Check if a preferences key is a field of a commands, contacts or
+	 * histories record.
+	 * 
+	 * @param key
+	 *            The preferences key.
+	 * @return True if the key belongs to a record.
+	 */
+	public static boolean isRecordKey(String key) {
+		return isCommandKey(key) || isContactKey(key) || isHistoryKey(key);
+	}
+
+	/**
+	 * Check if a preferences key is a record key of a restored dataset. Such
+	 * keys left on the preferences by the older versions are replaced by the
+	 * restored records.
+	 * 
+	 * @param key
+	 *            The preferences key.
+	 * @return True if the key belongs to a restored dataset.
+	 */
+	public boolean isReplaced(String key) {
+		return (commands != null && isCommandKey(key))
+				|| (contacts != null && isContactKey(key))
+				|| (histories != null && isHistoryKey(key));
+	}
+
+	private static boolean isCommandKey(String key) {
+		return KEY_COMMANDS.equals(key)
+				|| (key.startsWith(PREFIX_COMMAND)
+						&& key.length() > PREFIX_COMMAND.length() && Character
+							.isDigit(key.charAt(PREFIX_COMMAND.length())));
+	}
+
+	private static boolean isContactKey(String key) {
+		return KEY_CONTACTS.equals(key) || key.startsWith(PREFIX_CONTACT);
+	}
+
+	private static boolean isHistoryKey(String key) {
+		return KEY_HISTORIES.equals(key) || key.startsWith(PREFIX_HISTORY);
+	}
+
+	/**
+	 * Decode the restored values.
+	 * 
+	 * @param values
+	 *            The values read from the backup files, the later files
+	 *            replacing the values of the earlier ones.
+	 * @return The restored state.
+	 * @throws IOException
+	 *             If a restored record is not complete.
+	 */
+	public static RestoredState decode(Map<String, ?> values)
+			throws IOException {
+		Map<String, Object> preferences = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, ?> entry : values.entrySet()) {
+			if (!isRecordKey(entry.getKey())) {
+				preferences.put(entry.getKey(), entry.getValue());
+			}
+		}
+		List<Command> commands = null;
+		if (values.containsKey(KEY_COMMANDS)) {
+			int count = readCount(values, KEY_COMMANDS);
+			commands = new ArrayList<Command>(count);
+			for (int i = 0; i < count; i++) {
+				String prefix = PREFIX_COMMAND + i;
+				commands.add(new Command(readString(values, prefix + "_name"),
+						readString(values, prefix + "_cmd"), readString(
+								values, prefix + "_desc", ""), readString(
+								values, prefix + "_params", null)));
+			}
+		}
+		List<GpsContact> contacts = null;
+		if (values.containsKey(KEY_CONTACTS)) {
+			int count = readCount(values, KEY_CONTACTS);
+			contacts = new ArrayList<GpsContact>(count);
+			for (int i = 0; i < count; i++) {
+				String prefix = PREFIX_CONTACT + i;
+				Object selected = values.get(prefix + "_selected");
+				GpsContact contact = new GpsContact(readString(values, prefix
+						+ "_name", ""), readString(values, prefix + "_phone"),
+						readString(values, prefix + "_password", ""),
+						Boolean.TRUE.equals(selected), readString(values,
+								prefix + "_model",
+								Constants.DEFAULT_TRACKER_MODEL));
+				contact.setModified(false);
+				contacts.add(contact);
+			}
+		}
+		List<History> histories = null;
+		if (values.containsKey(KEY_HISTORIES)) {
+			int count = readCount(values, KEY_HISTORIES);
+			histories = new ArrayList<History>(count);
+			for (int i = 0; i < count; i++) {
+				String prefix = PREFIX_HISTORY + i;
+				Object dateTime = values.get(prefix + "_dateTime");
+				if (!(dateTime instanceof Number)) {
+					throw new IOException("Missing " + prefix + "_dateTime");
+				}
+				histories.add(new History(((Number) dateTime).longValue(),
+						readString(values, prefix + "_number", ""), readString(
+								values, prefix + "_cmd", "")));
+			}
+		}
+		return new RestoredState(preferences, commands, contacts, histories);
+	}
+
+	private static int readCount(Map<String, ?> values, String key)
+			throws IOException {
+		Object value = values.get(key);
+		if (!(value instanceof Number) || ((Number) value).intValue() < 0) {
+			throw new IOException("Invalid " + key + " count: " + value);
+		}
+		return ((Number) value).intValue();
+	}
+
+	private static String readString(Map<String, ?> values, String key)
+			throws IOException {
+		Object value = values.get(key);
+		if (!(value instanceof String)) {
+			throw new IOException("Missing " + key);
+		}
+		return (String) value;
+	}
+
+	private static String readString(Map<String, ?> values, String key,
+			String defaultValue) {
+		Object value = values.get(key);
+		return value instanceof String ? (String) value : defaultValue;
+	}
+}
@@ -0,0 +1,327 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * List of commands kept sorted by name. The commands are stored on a balanced
+ * tree which keep also the size of the subtrees, so that a command can be
+ * added, removed or obtained by position in O(log n), without shifting the
+ * following elements. A bulk load using {@link #addAll(Collection)} is sorted
+ * only once.
+ * 
+ * A command should not be renamed while is on the list: remove it, change the
+ * name and then add it again.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class SortedCommandList extends AbstractList<Command> {
+	private Node root;
+
+	private static final class Node {
+		Command item;
+		Node left;
+		Node right;
+		int height;
+		int size;
+
+		Node(Command item) {
+			this.item = item;
+			this.height = 1;
+			this.size = 1;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size(root);
+	}
+
+	@Override
+	public Command get(int index) {
+		checkIndex(index);
+		Node node = root;
+		while (true) {
+			int leftSize = size(node.left);
+			if (index < leftSize) {
+				node = node.left;
+			} else if (index > leftSize) {
+				index -= leftSize + 1;
+				node = node.right;
+			} else {
+				return node.item;
+			}
+		}
+	}
+
+	/**
+	 * Add a command on its sorted position, after the commands with the same
+	 * name.
+	 * 
+	 * @param command
+	 *            The command to be added.
+	 * @return Always true.
+	 */
+	@Override
+	public boolean add(Command command) {
+		if (command == null) {
+			throw new NullPointerException();
+		}
+		command.getSortKey();
+		root = insert(root, command);
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Add all the commands, sorting the whole list only once.
+	 * 
+	 * @param collection
+	 *            The commands to be added.
+	 * @return True if the list was changed.
+	 */
+	@Override
+	public boolean addAll(Collection<? extends Command> collection) {
+		int count = collection.size();
+		if (count == 0) {
+			return false;
+		}
+		int size = size();
+		Command[] items = new Command[size + count];
+		collect(root, items, 0);
+		for (Command command : collection) {
+			if (command == null) {
+				throw new NullPointerException();
+			}
+			command.getSortKey();
+			items[size++] = command;
+		}
+		Arrays.sort(items, 0, size);
+		root = build(items, 0, size);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public Command remove(int index) {
+		checkIndex(index);
+		Command command = get(index);
+		root = removeAt(root, index);
+		modCount++;
+		return command;
+	}
+
+	@Override
+	public boolean remove(Object object) {
+		int index = indexOf(object);
+		if (index < 0) {
+			return false;
+		}
+		remove(index);
+		return true;
+	}
+
+	/**
+	 * Obtain the position of a command. The command instance is searched
+	 * first between the commands with the same name, then the list is scanned
+	 * for an equal command.
+	 * 
+	 * @param object
+	 *            The command to search for.
+	 * @return The position of the command or -1 if is not found.
+	 */
+	@Override
+	public int indexOf(Object object) {
+		if (object instanceof Command) {
+			Command command = (Command) object;
+			int size = size();
+			for (int i = lowerBound(command); i < size; i++) {
+				Command item = get(i);
+				if (item == command) {
+					return i;
+				}
+				if (item.compareTo(command) != 0) {
+					break;
+				}
+			}
+		}
+		return super.indexOf(object);
+	}
+
+	@Override
+	public boolean contains(Object object) {
+		return indexOf(object) > -1;
+	}
+
+	@Override
+	public void clear() {
+		root = null;
+		modCount++;
+	}
+
+	/**
+	 * Obtain the height of the tree, used to check the balance.
+	 */
+	int height() {
+		return height(root);
+	}
+
+	/**
+	 * Obtain the position of the first command which is not sorted before the
+	 * specified command.
+	 */
+	private int lowerBound(Command command) {
+		int index = 0;
+		Node node = root;
+		while (node != null) {
+			if (node.item.compareTo(command) < 0) {
+				index += size(node.left) + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return index;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size());
+		}
+	}
+
+	private static int size(Node node) {
+		return node != null ? node.size : 0;
+	}
+
+	private static int height(Node node) {
+		return node != null ? node.height : 0;
+	}
+
+	private static int collect(Node node, Command[] items, int index) {
+		if (node != null) {
+			index = collect(node.left, items, index);
+			items[index++] = node.item;
+			index = collect(node.right, items, index);
+		}
+		return index;
+	}
+
+	private static Node build(Command[] items, int from, int to) {
+		if (from >= to) {
+			return null;
+		}
+		int middle = (from + to) >>> 1;
+		Node node = new Node(items[middle]);
+		node.left = build(items, from, middle);
+		node.right = build(items, middle + 1, to);
+		update(node);
+		return node;
+	}
+
+	private static Node insert(Node node, Command command) {
+		if (node == null) {
+			return new Node(command);
+		}
+		if (command.compareTo(node.item) < 0) {
+			node.left = insert(node.left, command);
+		} else {
+			node.right = insert(node.right, command);
+		}
+		return balance(node);
+	}
+
+	private static Node removeAt(Node node, int index) {
+		int leftSize = size(node.left);
+		if (index < leftSize) {
+			node.left = removeAt(node.left, index);
+		} else if (index > leftSize) {
+			node.right = removeAt(node.right, index - leftSize - 1);
+		} else {
+			if (node.left == null) {
+				return node.right;
+			}
+			if (node.right == null) {
+				return node.left;
+			}
+			Node first = node.right;
+			while (first.left != null) {
+				first = first.left;
+			}
+			first.right = removeFirst(node.right);
+			first.left = node.left;
+			node = first;
+		}
+		return balance(node);
+	}
+
+	private static Node removeFirst(Node node) {
+		if (node.left == null) {
+			return node.right;
+		}
+		node.left = removeFirst(node.left);
+		return balance(node);
+	}
+
+	private static void update(Node node) {
+		node.height = Math.max(height(node.left), height(node.right)) + 1;
+		node.size = size(node.left) + size(node.right) + 1;
+	}
+
+	private static Node balance(Node node) {
+		update(node);
+		int factor = height(node.left) - height(node.right);
+		if (factor > 1) {
+			if (height(node.left.left) < height(node.left.right)) {
+				node.left = rotateLeft(node.left);
+			}
+			return rotateRight(node);
+		}
+		if (factor < -1) {
+			if (height(node.right.right) < height(node.right.left)) {
+				node.right = rotateRight(node.right);
+			}
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	private static Node rotateLeft(Node node) {
+		Node right = node.right;
+		node.right = right.left;
+		right.left = node;
+		update(node);
+		update(right);
+		return right;
+	}
+
+	private static Node rotateRight(Node node) {
+		Node left = node.left;
+		node.left = left.right;
+		left.right = node;
+		update(node);
+		update(left);
+		return left;
+	}
+}
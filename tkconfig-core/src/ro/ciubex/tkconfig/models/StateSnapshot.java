@@ -0,0 +1,221 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A binary snapshot of the application state: the commands and the GPS
+ * contacts. The snapshot is decoded by a single sequential pass over the
+ * bytes, without any key lookup. The format is:
+ * 
+ * <pre>
+ * int magic, int version, int payload length,
+ * payload: int commands count, (long id, name, command, description, layout)*
+ *          int contacts count, (long id, name, phone, password, byte selected, model)*
+ * long CRC32 of the payload
+ * </pre>
+ * 
+ * A string is saved as an int length followed by its UTF-8 bytes, the length
+ * -1 is used for null strings.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class StateSnapshot {
+	public static final int MAGIC = 0x544B534E;
+	public static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+	private static final int TRAILER_SIZE = 8;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final List<Command> commands;
+	private final List<GpsContact> contacts;
+
+	public StateSnapshot(List<Command> commands, List<GpsContact> contacts) {
+		this.commands = commands;
+		this.contacts = contacts;
+	}
+
+	public List<Command> getCommands() {
+		return commands;
+	}
+
+	public List<GpsContact> getContacts() {
+		return contacts;
+	}
+
+	/**
+	 * Encode this snapshot.
+	 * 
+	 * @return The snapshot bytes.
+	 */
+	public byte[] encode() {
+		Encoder out = new Encoder();
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(0);
+		out.writeInt(commands.size());
+		for (Command command : commands) {
+			out.writeLong(command.getId());
+			out.writeString(command.getName());
+			out.writeString(command.getCommand());
+			out.writeString(command.getDescription());
+			out.writeString(command.getParametersLayout());
+		}
+		out.writeInt(contacts.size());
+		for (GpsContact contact : contacts) {
+			out.writeLong(contact.getId());
+			out.writeString(contact.getName());
+			out.writeString(contact.getPhone());
+			out.writeString(contact.getPassword());
+			out.write(contact.isSelected() ? 1 : 0);
+			out.writeString(contact.getModel());
+		}
+		int length = out.size() - HEADER_SIZE;
+		CRC32 crc = new CRC32();
+		crc.update(out.buffer(), HEADER_SIZE, length);
+		out.writeLong(crc.getValue());
+		byte[] data = out.toByteArray();
+		ByteBuffer.wrap(data).putInt(8, length);
+		return data;
+	}
+
+	/**
+	 * Decode a snapshot.
+	 * 
+	 * @param data
+	 *            The snapshot bytes.
+	 * @return The decoded snapshot.
+	 * @throws IOException
+	 *             If the bytes are not a valid snapshot of this version.
+	 */
+	public static StateSnapshot decode(byte[] data) throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(data);
+		try {
+			if (in.getInt() != MAGIC) {
+				throw new IOException("Not a state snapshot");
+			}
+			int version = in.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported snapshot version: "
+						+ version);
+			}
+			int length = in.getInt();
+			if (length < 0 || HEADER_SIZE + length + TRAILER_SIZE != data.length) {
+				throw new IOException("Truncated snapshot");
+			}
+			CRC32 crc = new CRC32();
+			crc.update(data, HEADER_SIZE, length);
+			if (crc.getValue() != in.getLong(HEADER_SIZE + length)) {
+				throw new IOException("Corrupted snapshot");
+			}
+			int count = readCount(in);
+			List<Command> commands = new ArrayList<Command>(count);
+			for (int i = 0; i < count; i++) {
+				long id = in.getLong();
+				Command command = new Command(readString(in), readString(in),
+						readString(in), readString(in));
+				command.setId(id);
+				commands.add(command);
+			}
+			count = readCount(in);
+			List<GpsContact> contacts = new ArrayList<GpsContact>(count);
+			for (int i = 0; i < count; i++) {
+				long id = in.getLong();
+				GpsContact contact = new GpsContact(readString(in),
+						readString(in), readString(in), in.get() != 0, null);
+				String model = readString(in);
+				contact.setModel(model != null ? model
+						: Constants.DEFAULT_TRACKER_MODEL);
+				contact.setId(id);
+				contact.setModified(false);
+				contacts.add(contact);
+			}
+			return new StateSnapshot(commands, contacts);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated snapshot");
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Truncated snapshot");
+		}
+	}
+
+	private static int readCount(ByteBuffer in) throws IOException {
+		int count = in.getInt();
+		if (count < 0 || count > in.remaining()) {
+			throw new IOException("Invalid snapshot count: " + count);
+		}
+		return count;
+	}
+
+	private static String readString(ByteBuffer in) throws IOException {
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > in.remaining()) {
+			throw new IOException("Invalid snapshot string length: " + length);
+		}
+		String value = new String(in.array(), in.position(), length, UTF_8);
+		in.position(in.position() + length);
+		return value;
+	}
+
+	/**
+	 * Output buffer with the big endian primitive writes used by the snapshot.
+	 */
+	private static class Encoder extends ByteArrayOutputStream {
+		Encoder() {
+			super(4096);
+		}
+
+		byte[] buffer() {
+			return buf;
+		}
+
+		void writeInt(int value) {
+			write(value >>> 24);
+			write(value >>> 16);
+			write(value >>> 8);
+			write(value);
+		}
+
+		void writeLong(long value) {
+			writeInt((int) (value >>> 32));
+			writeInt((int) value);
+		}
+
+		void writeString(String value) {
+			if (value == null) {
+				writeInt(-1);
+			} else {
+				byte[] bytes = value.getBytes(UTF_8);
+				writeInt(bytes.length);
+				write(bytes, 0, bytes.length);
+			}
+		}
+	}
+}
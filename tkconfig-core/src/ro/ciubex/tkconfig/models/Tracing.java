@@ -0,0 +1,197 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lightweight tracing of the time spent by the application operations. A
+ * span is measured with {@link #begin()} and {@link #end(String, long)} and
+ * is recorded on a fixed size ring buffer, so only the most recent spans are
+ * kept. When the tracing is disabled, a span costs a volatile read and no
+ * allocation.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public final class Tracing {
+	public static final int CAPACITY = 512;
+
+	private static volatile boolean enabled;
+
+	private static final String[] names = new String[CAPACITY];
+	private static final String[] threads = new String[CAPACITY];
+	private static final long[] threadIds = new long[CAPACITY];
+	private static final long[] starts = new long[CAPACITY];
+	private static final long[] durations = new long[CAPACITY];
+	private static long count;
+
+	/**
+	 * A recorded span.
+	 */
+	public static class Span {
+		public final String name;
+		public final String thread;
+		public final long threadId;
+		public final long start;
+		public final long duration;
+
+		Span(String name, String thread, long threadId, long start,
+				long duration) {
+			this.name = name;
+			this.thread = thread;
+			this.threadId = threadId;
+			this.start = start;
+			this.duration = duration;
+		}
+	}
+
+	private Tracing() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		Tracing.enabled = enabled;
+	}
+
+	/**
+	 * Start a span.
+	 * 
+	 * @return The span start time, in nanoseconds, or 0 if the tracing is
+	 *         disabled.
+	 */
+	public static long begin() {
+		return enabled ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * End a span and record it.
+	 * 
+	 * @param name
+	 *            The span name.
+	 * @param start
+	 *            The value returned by {@link #begin()}.
+	 */
+	public static void end(String name, long start) {
+		if (start != 0L) {
+			long duration = System.nanoTime() - start;
+			Thread thread = Thread.currentThread();
+			record(name, thread.getName(), thread.getId(), start, duration);
+		}
+	}
+
+	private static synchronized void record(String name, String thread,
+			long threadId, long start, long duration) {
+		int index = (int) (count % CAPACITY);
+		names[index] = name;
+		threads[index] = thread;
+		threadIds[index] = threadId;
+		starts[index] = start;
+		durations[index] = duration;
+		count++;
+	}
+
+	/**
+	 * Obtain the recorded spans, the oldest first.
+	 * 
+	 * @return The recorded spans.
+	 */
+	public static synchronized List<Span> getSpans() {
+		int size = (int) Math.min(count, CAPACITY);
+		List<Span> spans = new ArrayList<Span>(size);
+		long first = count - size;
+		for (long i = first; i < count; i++) {
+			int index = (int) (i % CAPACITY);
+			spans.add(new Span(names[index], threads[index],
+					threadIds[index], starts[index], durations[index]));
+		}
+		return spans;
+	}
+
+	/**
+	 * Remove all the recorded spans.
+	 */
+	public static synchronized void clear() {
+		for (int i = 0; i < CAPACITY; i++) {
+			names[i] = null;
+			threads[i] = null;
+		}
+		count = 0;
+	}
+
+	/**
+	 * Write the spans in the Chrome trace event format, which can be opened
+	 * by chrome://tracing or similar viewers. The spans are complete events,
+	 * with the times in microseconds.
+	 * 
+	 * @param spans
+	 *            The spans to be written.
+	 * @param out
+	 *            The writer of the trace file.
+	 * @throws IOException
+	 *             If the trace could not be written.
+	 */
+	public static void writeChromeTrace(List<Span> spans, Writer out)
+			throws IOException {
+		out.write("{\"traceEvents\":[");
+		boolean first = true;
+		for (Span span : spans) {
+			if (!first) {
+				out.write(',');
+			}
+			first = false;
+			out.write("\n{\"name\":");
+			writeString(out, span.name);
+			out.write(",\"cat\":\"tkconfig\",\"ph\":\"X\",\"ts\":");
+			out.write(String.valueOf(span.start / 1000));
+			out.write(",\"dur\":");
+			out.write(String.valueOf(span.duration / 1000));
+			out.write(",\"pid\":1,\"tid\":");
+			out.write(String.valueOf(span.threadId));
+			out.write(",\"args\":{\"thread\":");
+			writeString(out, span.thread);
+			out.write("}}");
+		}
+		out.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+	}
+
+	private static void writeString(Writer out, String value)
+			throws IOException {
+		out.write('"');
+		String text = value != null ? value : "";
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.write('\\');
+				out.write(c);
+			} else if (c < 0x20) {
+				out.write(String.format("\\u%04x", (int) c));
+			} else {
+				out.write(c);
+			}
+		}
+		out.write('"');
+	}
+}
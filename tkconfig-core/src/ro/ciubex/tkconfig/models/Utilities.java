@@ -18,14 +18,8 @@
  */
 package ro.ciubex.tkconfig.models;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Collection;
 
-import ro.ciubex.tkconfig.R;
-import ro.ciubex.tkconfig.TKConfigApplication;
-
 /**
  * Here should be defined utilities methods.
  * 
@@ -35,57 +29,69 @@ import ro.ciubex.tkconfig.TKConfigApplication;
 public class Utilities {
 
 	/**
-	 * Extract the string between ? signs. e.g.: For ?parameter-name? will be
-	 * returned the string: parameter-name
+	 * Compare two names ignoring the case of the letters. A null name is
+	 * considered empty. The order is the same as comparing the keys obtained
+	 * with {@link #foldName(String)}.
 	 * 
-	 * @param originalString
-	 *            The original string used to extract the parameter name.
-	 * @return The computed parameter name.
+	 * @param s1
+	 *            The first name.
+	 * @param s2
+	 *            The second name.
+	 * @return A negative number, zero or a positive number if the first name
+	 *         is less than, equal to or greater than the second name.
 	 */
-	public static String getParameterName(String originalString) {
-		String parameterName = originalString;
-		if (parameterName != null && parameterName.startsWith("?")
-				&& parameterName.endsWith("?")) {
-			parameterName = parameterName.substring(1,
-					parameterName.length() - 1);
+	public static int compareNames(String s1, String s2) {
+		int n1 = s1 != null ? s1.length() : 0;
+		int n2 = s2 != null ? s2.length() : 0;
+		int min = Math.min(n1, n2);
+		for (int i = 0; i < min; i++) {
+			char c1 = s1.charAt(i);
+			char c2 = s2.charAt(i);
+			if (c1 != c2) {
+				c1 = foldChar(c1);
+				c2 = foldChar(c2);
+				if (c1 != c2) {
+					return c1 - c2;
+				}
+			}
 		}
-		return parameterName;
+		return n1 - n2;
 	}
 
 	/**
-	 * Format the date time information into a human readable format.
+	 * Obtain the case folded key of a name, used to sort the names without
+	 * folding the letters on each comparison. A null name is considered
+	 * empty.
 	 * 
-	 * @param dateTime
-	 *            The date time information in milliseconds.
-	 * @return The formated date time.
+	 * @param name
+	 *            The name to be folded.
+	 * @return The folded name.
 	 */
-	public static String formatDateTime(TKConfigApplication application,
-			long dateTime) {
-		Calendar today = Calendar.getInstance();
-		Calendar yesterday = Calendar.getInstance();
-		Calendar calendar = Calendar.getInstance();
-		calendar.setTimeInMillis(dateTime);
-		yesterday.add(Calendar.DATE, -1);
-		DateFormat dateFormatter = new SimpleDateFormat(
-				application.getString(R.string.date_format),
-				application.getDefaultLocale());
-		DateFormat timeFormatter = new SimpleDateFormat(
-				application.getString(R.string.time_format),
-				application.getDefaultLocale());
-		String date = "";
-
-		if (calendar.get(Calendar.YEAR) == today.get(Calendar.YEAR)
-				&& calendar.get(Calendar.DAY_OF_YEAR) == today
-						.get(Calendar.DAY_OF_YEAR)) {
-			date = application.getString(R.string.today);
-		} else if (calendar.get(Calendar.YEAR) == yesterday.get(Calendar.YEAR)
-				&& calendar.get(Calendar.DAY_OF_YEAR) == yesterday
-						.get(Calendar.DAY_OF_YEAR)) {
-			date = application.getString(R.string.yesterday);
-		} else {
-			date = dateFormatter.format(calendar.getTime());
+	public static String foldName(String name) {
+		if (name == null) {
+			return "";
+		}
+		int length = name.length();
+		int i = 0;
+		while (i < length && foldChar(name.charAt(i)) == name.charAt(i)) {
+			i++;
+		}
+		if (i == length) {
+			return name;
 		}
-		return date + " " + timeFormatter.format(calendar.getTime());
+		char[] chars = name.toCharArray();
+		for (; i < length; i++) {
+			chars[i] = foldChar(chars[i]);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Fold the case of a character, the same way as
+	 * String.CASE_INSENSITIVE_ORDER.
+	 */
+	private static char foldChar(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
 	}
 
 	/**
@@ -0,0 +1,294 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the backup writer and reader, for the current indexed format and
+ * the version 2 sequential format, and of the format detection.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class BackupFormatTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recordsAreReadAsWritten() throws IOException {
+		File file = folder.newFile();
+		BackupWriter out = new BackupWriter(new FileOutputStream(file));
+		out.startSection("settings");
+		out.putString("name", "Ţară ✓");
+		out.putString("empty", "");
+		out.putString("missing", null);
+		out.putBoolean("flag", true);
+		out.putInt("count", -5);
+		out.putLong("time", Long.MAX_VALUE);
+		out.putFloat("ratio", 1.5f);
+		assertFalse(out.put("unsupported", new Object()));
+		out.startSection("histories");
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			out.putString("history_" + i + "_cmd", "fix030s005n123456");
+			large.append('x');
+		}
+		out.putString("large", large.toString());
+		out.finish();
+		out.close();
+		assertEquals(2, out.getChecksums().size());
+		List<String> records = read(file, null);
+		assertEquals(Arrays.asList("<settings>", "name=Ţară ✓", "empty=",
+				"missing=null", "flag=true", "count=-5",
+				"time=" + Long.MAX_VALUE, "ratio=1.5", "</settings 7>"),
+				records.subList(0, 9));
+		assertEquals(20000 + 3, records.size() - 9);
+		assertEquals("large=" + large, records.get(records.size() - 2));
+	}
+
+	@Test
+	public void onlyTheChosenSectionsAreRead() throws IOException {
+		File file = folder.newFile();
+		BackupWriter out = new BackupWriter(new FileOutputStream(file));
+		out.startSection("histories");
+		for (int i = 0; i < 10000; i++) {
+			out.putLong("history_" + i + "_dateTime", i * 31L);
+		}
+		out.startSection("settings");
+		out.putString("theme", "dark");
+		out.finish();
+		out.close();
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			BackupReader reader = new BackupReader(input.getChannel());
+			final List<String> records = new ArrayList<String>();
+			reader.read(new Recorder(records), new HashSet<String>(
+					Arrays.asList("settings")));
+			assertEquals(Arrays.asList("<settings>", "theme=dark",
+					"</settings 1>"), records);
+			assertTrue(reader.getPosition() < file.length() / 2);
+		} finally {
+			input.close();
+		}
+	}
+
+	@Test
+	public void sameRecordsHaveTheSameChecksum() throws IOException {
+		BackupWriter first = new BackupWriter(new ByteArrayOutputStream());
+		first.startSection("commands");
+		first.putString("command_0_name", "begin");
+		first.finish();
+		BackupWriter second = new BackupWriter(new ByteArrayOutputStream());
+		second.startSection("settings");
+		second.putInt("theme", 1);
+		second.startSection("commands");
+		second.putString("command_0_name", "begin");
+		second.finish();
+		assertEquals(first.getChecksums().get("commands"), second
+				.getChecksums().get("commands"));
+	}
+
+	@Test
+	public void corruptedBackupsAreRejected() throws IOException {
+		File file = folder.newFile();
+		BackupWriter out = new BackupWriter(new FileOutputStream(file));
+		out.startSection("settings");
+		for (int i = 0; i < 100; i++) {
+			out.putString("key" + i, "value" + i);
+		}
+		out.finish();
+		out.close();
+		byte[] data = readBytes(file);
+		for (int i = BackupFormat.HEADER_SIZE + 1; i < data.length; i += 7) {
+			byte[] corrupted = data.clone();
+			corrupted[i] ^= 0x10;
+			assertRejected(write(corrupted));
+		}
+		assertRejected(write(Arrays.copyOf(data, data.length - 3)));
+		assertRejected(write(Arrays.copyOf(data, 4)));
+	}
+
+	@Test
+	public void sequentialBackupsAreRead() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(BackupFormat.MAGIC);
+		bytes.write(BackupFormat.SEQUENTIAL_VERSION);
+		writeSequentialSection(bytes, "preferences", "theme", "light");
+		writeSequentialSection(bytes, "commands", "command_0_name", "begin");
+		bytes.write(BackupFormat.END);
+		File file = write(bytes.toByteArray());
+		assertEquals(Arrays.asList("<preferences>", "theme=light",
+				"</preferences 1>", "<commands>", "command_0_name=begin",
+				"</commands 1>"), read(file, null));
+		assertEquals(Arrays.asList("<commands>", "command_0_name=begin",
+				"</commands 1>"), read(file, new HashSet<String>(
+				Arrays.asList("commands"))));
+		byte[] corrupted = bytes.toByteArray();
+		corrupted[corrupted.length - 10] ^= 0x01;
+		assertRejected(write(corrupted));
+	}
+
+	@Test
+	public void legacyTextBackupsAreDetected() throws IOException {
+		byte[] text = "appTheme:java.lang.String:dark\n".getBytes("UTF-8");
+		assertFalse(BackupFormat.isBackup(text, text.length));
+		assertFalse(BackupFormat.isBackup(BackupFormat.MAGIC, 2));
+		assertTrue(BackupFormat.isBackup(BackupFormat.MAGIC,
+				BackupFormat.HEADER_SIZE));
+		assertRejected(write(text));
+	}
+
+	/**
+	 * Write a version 2 section with one string record.
+	 */
+	private static void writeSequentialSection(ByteArrayOutputStream bytes,
+			String name, String key, String value) throws IOException {
+		bytes.write(BackupFormat.SECTION);
+		writeString(bytes, name);
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		records.write(BackupFormat.STRING);
+		writeString(records, key);
+		writeString(records, value);
+		records.write(BackupFormat.SECTION_END);
+		CRC32 crc = new CRC32();
+		crc.update(records.toByteArray());
+		records.writeTo(bytes);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(1);
+		out.writeLong(crc.getValue());
+		out.flush();
+	}
+
+	private static void writeString(ByteArrayOutputStream bytes, String value)
+			throws IOException {
+		byte[] data = value.getBytes("UTF-8");
+		bytes.write(data.length + 1);
+		bytes.write(data);
+	}
+
+	private List<String> read(File file, HashSet<String> sections)
+			throws IOException {
+		List<String> records = new ArrayList<String>();
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			new BackupReader(input.getChannel()).read(new Recorder(records),
+					sections);
+		} finally {
+			input.close();
+		}
+		return records;
+	}
+
+	private void assertRejected(File file) throws IOException {
+		try {
+			read(file, null);
+			fail("Invalid backup was read");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private File write(byte[] data) throws IOException {
+		File file = folder.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static byte[] readBytes(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			byte[] data = new byte[(int) input.length()];
+			input.readFully(data);
+			return data;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Handler which records the read records as text.
+	 */
+	private static class Recorder implements BackupReader.Handler {
+		private final List<String> records;
+
+		Recorder(List<String> records) {
+			this.records = records;
+		}
+
+		@Override
+		public void startSection(String name) {
+			records.add("<" + name + ">");
+		}
+
+		@Override
+		public void onString(String key, String value) {
+			records.add(key + "=" + value);
+		}
+
+		@Override
+		public void onBoolean(String key, boolean value) {
+			records.add(key + "=" + value);
+		}
+
+		@Override
+		public void onInt(String key, int value) {
+			records.add(key + "=" + value);
+		}
+
+		@Override
+		public void onLong(String key, long value) {
+			records.add(key + "=" + value);
+		}
+
+		@Override
+		public void onFloat(String key, float value) {
+			records.add(key + "=" + value);
+		}
+
+		@Override
+		public void endSection(String name, int records) {
+			this.records.add("</" + name + " " + records + ">");
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+/**
+ * Tests of the incremental backup chain manifest.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class BackupManifestTest {
+
+	@Test
+	public void manifestIsDecodedAsEncoded() throws IOException {
+		BackupManifest manifest = new BackupManifest();
+		manifest.setBaseLength(1234);
+		manifest.setBaseChecksum(0xCAFEBABEL);
+		manifest.setHistoryCount(5);
+		manifest.setHistoryMark(99);
+		manifest.addIncrement("tkconfig.prefs.1");
+		manifest.addIncrement("tkconfig.prefs.2");
+		manifest.setChecksum("settings", 0xFFFFFFFFL);
+		BackupManifest decoded = BackupManifest.decode(manifest.encode());
+		assertEquals(1234, decoded.getBaseLength());
+		assertEquals(0xCAFEBABEL, decoded.getBaseChecksum());
+		assertEquals(5, decoded.getHistoryCount());
+		assertEquals(99, decoded.getHistoryMark());
+		assertEquals(Arrays.asList("tkconfig.prefs.1", "tkconfig.prefs.2"),
+				decoded.getIncrements());
+		assertEquals(0xFFFFFFFFL, decoded.getChecksum("settings"));
+		assertEquals(-1L, decoded.getChecksum("commands"));
+	}
+
+	@Test
+	public void version1ManifestHasNoBaseChecksum() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(BackupManifest.MAGIC);
+		out.writeInt(1);
+		out.writeLong(1234);
+		out.writeInt(5);
+		out.writeLong(99);
+		out.writeInt(1);
+		out.writeUTF("tkconfig.prefs.1");
+		out.writeInt(0);
+		out.flush();
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeLong(crc.getValue());
+		BackupManifest decoded = BackupManifest.decode(bytes.toByteArray());
+		assertEquals(1234, decoded.getBaseLength());
+		assertEquals(-1L, decoded.getBaseChecksum());
+		assertEquals(5, decoded.getHistoryCount());
+		assertEquals(99, decoded.getHistoryMark());
+		assertEquals(Arrays.asList("tkconfig.prefs.1"),
+				decoded.getIncrements());
+	}
+
+	@Test
+	public void corruptedManifestsAreRejected() throws IOException {
+		BackupManifest manifest = new BackupManifest();
+		manifest.addIncrement("a");
+		byte[] data = manifest.encode();
+		for (int i = 0; i < data.length; i++) {
+			byte[] corrupted = data.clone();
+			corrupted[i] ^= 0x01;
+			assertRejected(corrupted);
+		}
+		assertRejected(Arrays.copyOf(data, 7));
+	}
+
+	private static void assertRejected(byte[] data) {
+		try {
+			BackupManifest.decode(data);
+			fail("Invalid manifest was decoded");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
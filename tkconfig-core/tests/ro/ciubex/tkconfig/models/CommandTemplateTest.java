@@ -0,0 +1,150 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests of the parameter scanner, the command templates and the shared
+ * parameter layouts.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class CommandTemplateTest {
+
+	@Test
+	public void scanFindsParameterBounds() {
+		String command = "fix?time?s?count?n?password?";
+		int[] bounds = ParameterScanner.scan(command);
+		assertArrayEquals(new int[] { 3, 9, 10, 17, 18, 28 }, bounds);
+		assertArrayEquals(new String[] { "time", "count", "password" },
+				ParameterScanner.getNames(command, bounds));
+	}
+
+	@Test
+	public void scanSkipsInvalidNames() {
+		assertEquals(0, ParameterScanner.scan("no parameters").length);
+		assertEquals(0, ParameterScanner.scan("a??b").length);
+		assertEquals(0, ParameterScanner.scan("?not a name?").length);
+		assertArrayEquals(new int[] { 2, 8 },
+				ParameterScanner.scan("? ?name? ?"));
+		assertArrayEquals(new int[] { 1, 6 }, ParameterScanner.scan("??abc??"));
+	}
+
+	@Test
+	public void encodedBoundsAreValidatedAgainstTheCommand() {
+		String command = "apn?apn? user?user?";
+		int[] bounds = ParameterScanner.scan(command);
+		String encoded = ParameterScanner.encode(bounds);
+		assertEquals("3,8,13,19", encoded);
+		assertArrayEquals(bounds, ParameterScanner.decode(encoded, command));
+		assertNull(ParameterScanner.decode(encoded, "apn?apn?"));
+		assertNull(ParameterScanner.decode("3,8,13", command));
+		assertNull(ParameterScanner.decode("8,3", command));
+		assertNull(ParameterScanner.decode("3,x", command));
+		assertNull(ParameterScanner.decode(null, command));
+		assertEquals(0, ParameterScanner.decode("", "begin").length);
+		assertNull(ParameterScanner.decode("", command));
+		assertNull(ParameterScanner.decode("3,14", command));
+		assertNull(ParameterScanner.decode("3,8", "apn?a n? user?user?"));
+	}
+
+	@Test
+	public void renderReplacesOnlyTheSlotsWithValues() {
+		Command command = new Command("speed", "speed?password? ?limit?");
+		CommandTemplate template = command.getTemplate();
+		assertEquals(2, template.getSlotsCount());
+		assertEquals("password", template.getSlotName(0));
+		assertEquals("limit", template.getSlotName(1));
+		assertEquals("speed ".length(), template.getLiteralsLength());
+		StringBuilder out = new StringBuilder();
+		template.render(out, new String[] { "123456", null });
+		assertEquals("speed123456 ?limit?", out.toString());
+	}
+
+	@Test
+	public void smsCommandUsesTheParameterValues() {
+		Command command = new Command("move", "move?password? ?meters?");
+		assertEquals("move?password? ?meters?", command.getSMSCommand());
+		command.setParameterValue("meters", "200");
+		assertEquals("move?password? 200", command.getSMSCommand());
+		StringBuilder out = new StringBuilder();
+		command.buildSMSCommand(out, "000000");
+		assertEquals("move000000 200", out.toString());
+		assertEquals("move" + Constants.STARS + " 200",
+				command.getSMSCommandShow());
+	}
+
+	@Test
+	public void smsCommandsAreRenderedForEachContact() {
+		Command command = new Command("begin", "begin?password?");
+		List<String> result = command.getSMSCommands(Arrays.asList(
+				new GpsContact("a", "1", "111111", true), new GpsContact("b",
+						"2", null, true)));
+		assertEquals(Arrays.asList("begin111111", "begin?password?"), result);
+	}
+
+	@Test
+	public void editedCommandKeepsTheValuesStillUsed() {
+		Command command = new Command("apn", "apn?password? ?apn?");
+		command.setParameterValue("apn", "internet");
+		command.setCommand("apn?password? ?apn? ?user?");
+		assertEquals("internet", command.getParameterValue("apn"));
+		assertNull(command.getParameterValue("user"));
+		command.setCommand("begin?password?");
+		assertNull(command.getParameterValue("apn"));
+	}
+
+	@Test
+	public void storedLayoutIsReused() {
+		Command command = new Command("apn", "apn?password? ?apn?");
+		String layout = command.getParametersLayout();
+		Command loaded = new Command("apn", "apn?password? ?apn?", "", layout);
+		assertEquals(layout, loaded.getParametersLayout());
+		assertEquals(Arrays.asList("password", "apn"), loaded.getParameters());
+		Command stale = new Command("apn", "apn ?apn?", "", layout);
+		assertEquals(Arrays.asList("apn"), stale.getParameters());
+	}
+
+	@Test
+	public void layoutsAreShared() {
+		ParameterLayout first = ParameterLayout.obtain(new String[] {
+				"password", new String("apn") });
+		ParameterLayout second = ParameterLayout.obtain(new String[] {
+				"password", new String("apn") });
+		assertSame(first, second);
+		assertSame(first.getSlotName(1), second.getSlotName(1));
+		assertEquals(1, first.indexOf("apn"));
+		assertEquals(-1, first.indexOf("user"));
+		assertEquals(1, first.getPasswords());
+		ParameterLayout extra = first.withExtra("user");
+		assertEquals(3, extra.getSlotsCount());
+		assertEquals(2, extra.getParameters().length);
+		assertSame(extra, first.withExtra("user"));
+	}
+}
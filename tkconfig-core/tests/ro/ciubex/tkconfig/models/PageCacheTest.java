@@ -0,0 +1,169 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+/**
+ * Tests of the page cache: the pages are fetched only on the loader executor,
+ * by keyset, and the pages of an invalidated cache are discarded.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class PageCacheTest {
+
+	/**
+	 * An executor which runs the tasks only when it is asked to.
+	 */
+	private static class QueueExecutor implements Executor {
+		private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		int runAll() {
+			int count = 0;
+			while (!tasks.isEmpty()) {
+				tasks.removeFirst().run();
+				count++;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * A cache over the numbers from 0 to size - 1, recording the keys of the
+	 * pages fetched by keyset and the offsets of the pages fetched by
+	 * position.
+	 */
+	private static class NumberCache extends PageCache<Integer> {
+		final int count;
+		final List<Integer> keys = new ArrayList<Integer>();
+		final List<Integer> offsets = new ArrayList<Integer>();
+		int loadedPages;
+
+		NumberCache(int count, Executor loader, Executor notifier) {
+			super(10, 2, loader, notifier);
+			this.count = count;
+		}
+
+		@Override
+		protected int loadSize() {
+			return count;
+		}
+
+		@Override
+		protected List<Integer> loadPage(Integer last, int limit) {
+			keys.add(last);
+			List<Integer> page = new ArrayList<Integer>();
+			int next = last == null ? 0 : last.intValue() + 1;
+			for (int i = next; i < count && page.size() < limit; i++) {
+				page.add(Integer.valueOf(i));
+			}
+			return page;
+		}
+
+		@Override
+		protected List<Integer> loadPageAt(int offset, int limit) {
+			offsets.add(Integer.valueOf(offset));
+			List<Integer> page = new ArrayList<Integer>();
+			for (int i = offset; i < count && page.size() < limit; i++) {
+				page.add(Integer.valueOf(i));
+			}
+			return page;
+		}
+
+		@Override
+		protected void onPageLoaded() {
+			loadedPages++;
+		}
+	}
+
+	@Test
+	public void itemsAreDeliveredAfterTheLoaderRuns() {
+		QueueExecutor loader = new QueueExecutor();
+		QueueExecutor notifier = new QueueExecutor();
+		NumberCache cache = new NumberCache(25, loader, notifier);
+		assertEquals(0, cache.size());
+		assertEquals(1, loader.runAll());
+		assertEquals(1, notifier.runAll());
+		assertEquals(25, cache.size());
+		assertNull(cache.get(12));
+		assertNull(cache.get(13));
+		assertEquals(1, loader.runAll());
+		assertEquals(0, cache.loadedPages);
+		notifier.runAll();
+		assertEquals(1, cache.loadedPages);
+		assertEquals(Integer.valueOf(12), cache.get(12));
+		assertEquals(Integer.valueOf(19), cache.get(19));
+	}
+
+	@Test
+	public void jumpsAreFetchedByPositionAndScrollingByKeyset() {
+		Executor direct = new Executor() {
+			@Override
+			public void execute(Runnable task) {
+				task.run();
+			}
+		};
+		NumberCache cache = new NumberCache(100, direct, direct);
+		cache.size();
+		assertNull(cache.get(5));
+		assertEquals(Integer.valueOf(5), cache.get(5));
+		assertEquals(1, cache.keys.size());
+		assertNull(cache.keys.get(0));
+		assertNull(cache.get(75));
+		assertEquals(Integer.valueOf(75), cache.get(75));
+		assertEquals(1, cache.offsets.size());
+		assertEquals(Integer.valueOf(70), cache.offsets.get(0));
+		assertNull(cache.get(85));
+		assertEquals(Integer.valueOf(85), cache.get(85));
+		assertEquals(2, cache.keys.size());
+		assertEquals(Integer.valueOf(79), cache.keys.get(1));
+		assertEquals(1, cache.offsets.size());
+	}
+
+	@Test
+	public void invalidatedPagesAreDiscarded() {
+		QueueExecutor loader = new QueueExecutor();
+		QueueExecutor notifier = new QueueExecutor();
+		NumberCache cache = new NumberCache(25, loader, notifier);
+		cache.size();
+		loader.runAll();
+		notifier.runAll();
+		assertNull(cache.get(3));
+		loader.runAll();
+		cache.invalidate();
+		notifier.runAll();
+		assertEquals(0, cache.loadedPages);
+		assertEquals(0, cache.size());
+		assertNull(cache.get(3));
+	}
+}
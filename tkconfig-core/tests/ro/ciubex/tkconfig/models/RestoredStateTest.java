@@ -0,0 +1,109 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests of the decoding of a restored backup into a detached state.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class RestoredStateTest {
+
+	@Test
+	public void recordsAreSeparatedFromThePreferences() throws IOException {
+		Map<String, Object> values = new HashMap<String, Object>();
+		values.put("command_packs", "tk102");
+		values.put("commands", Integer.valueOf(1));
+		values.put("command_0_name", "Begin");
+		values.put("command_0_cmd", "begin#PASSWORD");
+		values.put("contacts", Integer.valueOf(1));
+		values.put("contact_0_name", "Car");
+		values.put("contact_0_phone", "123");
+		values.put("contact_0_selected", Boolean.TRUE);
+		values.put("histories", Integer.valueOf(1));
+		values.put("history_0_dateTime", Long.valueOf(42L));
+		values.put("history_0_number", "123");
+		values.put("history_0_cmd", "begin123456");
+		RestoredState state = RestoredState.decode(values);
+		assertEquals(1, state.getPreferences().size());
+		assertEquals("tk102", state.getPreferences().get("command_packs"));
+		assertEquals(1, state.getCommands().size());
+		assertEquals("Begin", state.getCommands().get(0).getName());
+		assertEquals("begin#PASSWORD", state.getCommands().get(0)
+				.getCommand());
+		GpsContact contact = state.getContacts().get(0);
+		assertEquals("123", contact.getPhone());
+		assertTrue(contact.isSelected());
+		assertFalse(contact.isModified());
+		assertEquals(Constants.DEFAULT_TRACKER_MODEL, contact.getModel());
+		assertEquals(42L, state.getHistories().get(0).getDateTime());
+	}
+
+	@Test
+	public void missingDatasetsAreNotReplaced() throws IOException {
+		Map<String, Object> values = new HashMap<String, Object>();
+		values.put("contacts", Integer.valueOf(0));
+		values.put("refreshRate", "5");
+		RestoredState state = RestoredState.decode(values);
+		assertNull(state.getCommands());
+		assertNull(state.getHistories());
+		assertEquals(0, state.getContacts().size());
+		assertTrue(state.isReplaced("contact_3_phone"));
+		assertFalse(state.isReplaced("command_3_name"));
+		assertFalse(state.isReplaced("history_0_cmd"));
+		assertFalse(RestoredState.isRecordKey("command_packs"));
+	}
+
+	@Test
+	public void incompleteRecordsAreRejected() {
+		Map<String, Object> values = new HashMap<String, Object>();
+		values.put("histories", Integer.valueOf(2));
+		values.put("history_0_dateTime", Long.valueOf(1L));
+		assertRejected(values);
+		values.clear();
+		values.put("commands", Integer.valueOf(-1));
+		assertRejected(values);
+		values.clear();
+		values.put("commands", Integer.valueOf(1));
+		values.put("command_0_name", "Begin");
+		assertRejected(values);
+	}
+
+	private static void assertRejected(Map<String, Object> values) {
+		try {
+			RestoredState.decode(values);
+			fail("Incomplete backup was decoded");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the sorted tree list of commands: the order, the positions and the
+ * balance of the tree after random inserts and removes.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class SortedCommandListTest {
+
+	@Test
+	public void randomInsertsAndRemovesKeepTheInvariants() {
+		Random random = new Random(42);
+		SortedCommandList list = new SortedCommandList();
+		List<Command> expected = new ArrayList<Command>();
+		for (int i = 0; i < 2000; i++) {
+			if (expected.isEmpty() || random.nextInt(3) > 0) {
+				Command command = new Command("cmd" + random.nextInt(500),
+						"c" + i);
+				list.add(command);
+				expected.add(command);
+			} else {
+				int index = random.nextInt(list.size());
+				Command removed = list.remove(index);
+				assertTrue(expected.remove(removed));
+			}
+			if (i % 100 == 0) {
+				checkInvariants(list, expected);
+			}
+		}
+		checkInvariants(list, expected);
+	}
+
+	@Test
+	public void bulkLoadIsSortedAndBalanced() {
+		List<Command> commands = new ArrayList<Command>();
+		for (int i = 0; i < 1000; i++) {
+			commands.add(new Command("name" + (i * 7919 % 1000), "c"));
+		}
+		SortedCommandList list = new SortedCommandList();
+		list.add(new Command("first", "c"));
+		list.addAll(commands);
+		commands.add(list.get(indexOfName(list, "first")));
+		checkInvariants(list, commands);
+	}
+
+	@Test
+	public void equalNamesKeepTheInsertionOrder() {
+		SortedCommandList list = new SortedCommandList();
+		Command first = new Command("Same", "1");
+		Command second = new Command("same", "2");
+		Command other = new Command("a", "3");
+		list.add(first);
+		list.add(second);
+		list.add(other);
+		assertSame(other, list.get(0));
+		assertSame(first, list.get(1));
+		assertSame(second, list.get(2));
+		assertEquals(2, list.indexOf(second));
+		assertTrue(list.remove(first));
+		assertFalse(list.contains(first));
+		assertEquals(1, list.indexOf(second));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void getOutOfRangeFails() {
+		SortedCommandList list = new SortedCommandList();
+		list.add(new Command("a", "b"));
+		list.get(1);
+	}
+
+	private static void checkInvariants(SortedCommandList list,
+			List<Command> expected) {
+		assertEquals(expected.size(), list.size());
+		for (int i = 1; i < list.size(); i++) {
+			assertTrue(list.get(i - 1).compareTo(list.get(i)) <= 0);
+		}
+		for (Command command : expected) {
+			int index = list.indexOf(command);
+			assertSame(command, list.get(index));
+		}
+		List<Command> sorted = new ArrayList<Command>(expected);
+		Collections.sort(sorted);
+		for (int i = 0; i < sorted.size(); i++) {
+			assertEquals(sorted.get(i).getSortKey(), list.get(i).getSortKey());
+		}
+		double limit = 1.4405 * Math.log(list.size() + 2) / Math.log(2);
+		assertTrue("Unbalanced tree: " + list.height(),
+				list.height() <= limit);
+	}
+
+	private static int indexOfName(List<Command> list, String name) {
+		for (int i = 0; i < list.size(); i++) {
+			if (name.equals(list.get(i).getName())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
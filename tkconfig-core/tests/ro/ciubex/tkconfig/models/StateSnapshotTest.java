@@ -0,0 +1,103 @@
+/**
+ * This file is part of TKConfig application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.tkconfig.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests of the binary state snapshot.
+ * 
+ * @author Claudiu Ciobotariu
+ * 
+ */
+public class StateSnapshotTest {
+
+	@Test
+	public void snapshotIsDecodedAsEncoded() throws IOException {
+		Command command = new Command("Viteză", "speed?password? ?limit?",
+				null);
+		command.setId(7);
+		GpsContact contact = new GpsContact("car", "+40700", "123456", true,
+				"TK102");
+		contact.setId(3);
+		GpsContact other = new GpsContact("bike", "+40701", null, false);
+		other.setId(4);
+		StateSnapshot snapshot = StateSnapshot.decode(new StateSnapshot(
+				Arrays.asList(command), Arrays.asList(contact, other))
+				.encode());
+		assertEquals(1, snapshot.getCommands().size());
+		Command decoded = snapshot.getCommands().get(0);
+		assertEquals(7, decoded.getId());
+		assertEquals("Viteză", decoded.getName());
+		assertEquals("speed?password? ?limit?", decoded.getCommand());
+		assertNull(decoded.getDescription());
+		assertEquals(command.getParametersLayout(),
+				decoded.getParametersLayout());
+		assertEquals(2, snapshot.getContacts().size());
+		GpsContact first = snapshot.getContacts().get(0);
+		assertEquals(3, first.getId());
+		assertEquals("+40700", first.getPhone());
+		assertEquals("123456", first.getPassword());
+		assertEquals(true, first.isSelected());
+		assertEquals("TK102", first.getModel());
+		assertEquals(false, first.isModified());
+		assertNull(snapshot.getContacts().get(1).getPassword());
+	}
+
+	@Test
+	public void emptySnapshot() throws IOException {
+		StateSnapshot snapshot = StateSnapshot.decode(new StateSnapshot(
+				new ArrayList<Command>(), new ArrayList<GpsContact>())
+				.encode());
+		assertEquals(0, snapshot.getCommands().size());
+		assertEquals(0, snapshot.getContacts().size());
+	}
+
+	@Test
+	public void corruptedSnapshotsAreRejected() {
+		List<Command> commands = Arrays.asList(new Command("a", "b"));
+		byte[] data = new StateSnapshot(commands, new ArrayList<GpsContact>())
+				.encode();
+		for (int i = 0; i < data.length; i++) {
+			byte[] corrupted = data.clone();
+			corrupted[i] ^= 0x40;
+			assertRejected(corrupted);
+		}
+		assertRejected(Arrays.copyOf(data, data.length - 1));
+		assertRejected(new byte[0]);
+	}
+
+	private static void assertRejected(byte[] data) {
+		try {
+			StateSnapshot.decode(data);
+			fail("Invalid snapshot was decoded");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}